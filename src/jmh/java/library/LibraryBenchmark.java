@@ -0,0 +1,221 @@
+package library;
+
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.model.LendResult;
+import library.search.SearchCriteria;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the Library hot paths.
+ * Build with: mvn -P benchmark package
+ * Run with:   java -jar target/benchmarks.jar LibraryBenchmark -p catalogSize=1000000 -p copiesPerTitle=10
+ *
+ * The catalog is filled once per trial, so the largest sizes need a big heap (-Xmx) and take a while to set up.
+ * Benchmarks that change the catalog put it back in the same invocation (lend + return, remove + add)
+ * so that every iteration measures the same catalog.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class LibraryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"1000", "100000", "1000000", "10000000"})
+        public int catalogSize;
+
+        @Param({"1", "10", "100"})
+        public int copiesPerTitle;
+
+        LibraryManager library;
+        String[] ids;
+        int titles;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            library = new LibraryManager();
+            ids = new String[catalogSize];
+            titles = Math.max(1, catalogSize / copiesPerTitle);
+            for (int i = 0; i < catalogSize; i++) {
+                int title = i % titles;
+                ids[i] = library.addNewBook(title(title), author(title), year(title));
+            }
+        }
+
+        String randomId() {
+            return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        }
+
+        int randomIndex() {
+            return ThreadLocalRandom.current().nextInt(ids.length);
+        }
+
+        SearchCriteria randomCriteria() {
+            int title = ThreadLocalRandom.current().nextInt(titles);
+            SearchCriteria criteria = new SearchCriteria();
+            criteria.setTitle(title(title));
+            criteria.setAuthor(author(title));
+            criteria.setYear(year(title));
+            return criteria;
+        }
+
+        /**
+         * Author, a 15 year range and availability, the combined query of the bitmap indexes
+         */
+        SearchCriteria randomCombinedCriteria() {
+            int title = ThreadLocalRandom.current().nextInt(titles);
+            SearchCriteria criteria = new SearchCriteria();
+            criteria.setAuthor(author(title));
+            criteria.setYearRange(year(title), year(title) + 15);
+            criteria.setAvailableOnly(true);
+            return criteria;
+        }
+
+        static String title(int title) {
+            return "Title " + title;
+        }
+
+        static String author(int title) {
+            return "Author " + (title % 1000);
+        }
+
+        static int year(int title) {
+            return 1900 + title % 120;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class AddedBooks {
+
+        List<String> ids = new ArrayList<>();
+
+        @TearDown(Level.Iteration)
+        public void removeAdded(Catalog catalog) throws BookNotExistException, BookAlreadyLentException {
+            for (String id : ids) {
+                catalog.library.removeBook(id);
+            }
+            ids.clear();
+        }
+    }
+
+    @Benchmark
+    public void addNewBook(Catalog catalog, AddedBooks added) {
+        int title = ThreadLocalRandom.current().nextInt(catalog.titles);
+        added.ids.add(catalog.library.addNewBook(Catalog.title(title), Catalog.author(title), Catalog.year(title)));
+    }
+
+    @Benchmark
+    public BookDetails getBookById(Catalog catalog) throws BookNotExistException {
+        return catalog.library.getBookById(catalog.randomId());
+    }
+
+    @Benchmark
+    public List<BookDetails> getBookListByCriteria(Catalog catalog) {
+        return catalog.library.getBookListByCriteria(catalog.randomCriteria());
+    }
+
+    @Benchmark
+    public List<BookDetails> getBookListByCombinedCriteria(Catalog catalog) {
+        return catalog.library.getBookListByCriteria(catalog.randomCombinedCriteria());
+    }
+
+    @Benchmark
+    public List<BookDetails> getAllBookDetails(Catalog catalog) {
+        return catalog.library.getAllBookDetails();
+    }
+
+    @Benchmark
+    public void lendBookById(Catalog catalog, Blackhole blackhole) {
+        lendById(catalog, blackhole);
+    }
+
+    @Benchmark
+    public void lendBookByCriteria(Catalog catalog, Blackhole blackhole) {
+        lendByCriteria(catalog, blackhole);
+    }
+
+    /**
+     * Removes a copy and adds it back, the old slot in ids is replaced with the new id
+     */
+    @Benchmark
+    public void removeBook(Catalog catalog, Blackhole blackhole) {
+        int index = catalog.randomIndex();
+        try {
+            BookDetails bookDetails = catalog.library.getBookById(catalog.ids[index]);
+            catalog.library.removeBook(catalog.ids[index]);
+            catalog.ids[index] = catalog.library.addNewBook(bookDetails.getTitle(), bookDetails.getAuthor(), bookDetails.getYear());
+        } catch (BookNotExistException | BookAlreadyLentException e) {
+            // another thread works on the same copy
+            blackhole.consume(e);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BookDetails getBookByIdConcurrent(Catalog catalog) throws BookNotExistException {
+        return catalog.library.getBookById(catalog.randomId());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public List<BookDetails> getBookListByCriteriaConcurrent(Catalog catalog) {
+        return catalog.library.getBookListByCriteria(catalog.randomCriteria());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void lendBookByIdConcurrent(Catalog catalog, Blackhole blackhole) {
+        lendById(catalog, blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void lendBookByCriteriaConcurrent(Catalog catalog, Blackhole blackhole) {
+        lendByCriteria(catalog, blackhole);
+    }
+
+    @Benchmark
+    @Group("readWhileLending")
+    @GroupThreads(3)
+    public List<BookDetails> readWhileLendingSearch(Catalog catalog) {
+        return catalog.library.getBookListByCriteria(catalog.randomCriteria());
+    }
+
+    @Benchmark
+    @Group("readWhileLending")
+    @GroupThreads(1)
+    public void readWhileLendingLend(Catalog catalog, Blackhole blackhole) {
+        lendByCriteria(catalog, blackhole);
+    }
+
+    private static void lendById(Catalog catalog, Blackhole blackhole) {
+        String id = catalog.randomId();
+        try {
+            blackhole.consume(catalog.library.lendBook(id, "Jan Kowalski"));
+            catalog.library.returnBook(id);
+        } catch (BookAlreadyLentException | BookNotExistException e) {
+            // another thread holds the same copy
+            blackhole.consume(e);
+        }
+    }
+
+    private static void lendByCriteria(Catalog catalog, Blackhole blackhole) {
+        LendResult result = catalog.library.tryLendBook(catalog.randomCriteria(), "Jan Kowalski");
+        // other threads may hold all copies of the title
+        if (result.isLent()) {
+            catalog.library.returnBook(result.getBookId());
+        }
+        blackhole.consume(result);
+    }
+}
@@ -0,0 +1,471 @@
+package demo;
+
+import library.Library;
+import library.LibraryManager;
+import library.ShardedLibrary;
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.metrics.LatencyHistogram;
+import library.metrics.Operation;
+import library.model.LendResult;
+import library.search.SearchCriteria;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Load test of any Library: a mix of operations on titles picked by Zipfian popularity,
+ * started at a fixed rate by several clients, for as long as a soak test needs.
+ * > java -cp library-1.0.jar demo.LoadGenerator rate=20000 clients=16 duration=3600 zipf=1.1
+ *
+ * The load is open: operation n is meant to start at n / rate seconds, however long the earlier ones take.
+ * Its latency is measured from that moment, not from when a client got to it, so when the library stalls
+ * the operations waiting behind the stall are counted as slow too (coordinated omission is corrected).
+ * Every report interval throughput, latency percentiles, used heap and garbage collection are printed,
+ * at the end a summary per operation.
+ */
+public class LoadGenerator {
+
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private final LoadGeneratorConfig config;
+    private final ZipfDistribution popularity;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private final EnumMap<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+    private final EnumMap<Operation, LongAdder> misses = new EnumMap<>(Operation.class);
+    private final LongAdder errors = new LongAdder();
+    private final AtomicReference<Throwable> firstError = new AtomicReference<>();
+    private final LatencyHistogram intervalLatency = new LatencyHistogram();
+    private final LatencyHistogram gcPauses = new LatencyHistogram();
+    private final LatencyHistogram intervalGcPauses = new LatencyHistogram();
+
+    /**
+     * slot of every copy added by the generator, title * copiesPerTitle + copy, null after it was removed
+     */
+    private final AtomicReferenceArray<String> copies;
+    private final Queue<String> lent = new ConcurrentLinkedQueue<>();
+
+    public LoadGenerator(LoadGeneratorConfig config) {
+        this.config = config;
+        this.popularity = new ZipfDistribution(config.getTitles(), config.getZipfExponent());
+        this.copies = new AtomicReferenceArray<>(Math.multiplyExact(config.getTitles(), config.getCopiesPerTitle()));
+        List<Operation> mix = new ArrayList<>();
+        List<Integer> cumulative = new ArrayList<>();
+        int sum = 0;
+        for (Map.Entry<Operation, Integer> weight : config.getWeights().entrySet()) {
+            latencies.put(weight.getKey(), new LatencyHistogram());
+            misses.put(weight.getKey(), new LongAdder());
+            if (weight.getValue() > 0) {
+                sum += weight.getValue();
+                mix.add(weight.getKey());
+                cumulative.add(sum);
+            }
+        }
+        if (sum == 0) {
+            throw new IllegalArgumentException("At least one operation must have a positive weight");
+        }
+        this.operations = mix.toArray(new Operation[0]);
+        this.cumulativeWeights = cumulative.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Arguments are name=value pairs: clients, rate, duration, interval (seconds), titles, copies, zipf,
+     * shards (0 runs on one LibraryManager, more on a ShardedLibrary in this process)
+     * and weights add, search, lend, lendByCriteria, return, remove, report
+     */
+    public static void main(String[] args) throws Exception {
+        LoadGeneratorConfig config = new LoadGeneratorConfig();
+        int shards = 0;
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException("Expected name=value but got " + arg);
+            }
+            String name = arg.substring(0, separator);
+            String value = arg.substring(separator + 1);
+            switch (name) {
+                case "clients":
+                    config.setClients(Integer.parseInt(value));
+                    break;
+                case "rate":
+                    config.setRatePerSecond(Double.parseDouble(value));
+                    break;
+                case "duration":
+                    config.setDurationSeconds(Long.parseLong(value));
+                    break;
+                case "interval":
+                    config.setReportIntervalSeconds(Long.parseLong(value));
+                    break;
+                case "titles":
+                    config.setTitles(Integer.parseInt(value));
+                    break;
+                case "copies":
+                    config.setCopiesPerTitle(Integer.parseInt(value));
+                    break;
+                case "zipf":
+                    config.setZipfExponent(Double.parseDouble(value));
+                    break;
+                case "shards":
+                    shards = Integer.parseInt(value);
+                    break;
+                case "add":
+                    config.setWeight(Operation.ADD_NEW_BOOK, Integer.parseInt(value));
+                    break;
+                case "search":
+                    config.setWeight(Operation.GET_BOOK_LIST_BY_CRITERIA, Integer.parseInt(value));
+                    break;
+                case "lend":
+                    config.setWeight(Operation.TRY_LEND_BOOK, Integer.parseInt(value));
+                    break;
+                case "lendByCriteria":
+                    config.setWeight(Operation.TRY_LEND_BOOK_BY_CRITERIA, Integer.parseInt(value));
+                    break;
+                case "return":
+                    config.setWeight(Operation.RETURN_BOOK, Integer.parseInt(value));
+                    break;
+                case "remove":
+                    config.setWeight(Operation.REMOVE_BOOK, Integer.parseInt(value));
+                    break;
+                case "report":
+                    config.setWeight(Operation.GET_INVENTORY, Integer.parseInt(value));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting " + name);
+            }
+        }
+        Library library = shards > 0 ? ShardedLibrary.inProcess(shards) : new LibraryManager();
+        try {
+            new LoadGenerator(config).run(library, System.out);
+        } finally {
+            if (library instanceof Closeable) {
+                ((Closeable) library).close();
+            }
+        }
+    }
+
+    /**
+     * Adds titles * copiesPerTitle copies to the library, then runs the load for the configured duration
+     * @param library
+     * @param out where the reports are printed
+     * @throws InterruptedException
+     */
+    public void run(Library library, PrintStream out) throws InterruptedException {
+        long populateStart = System.nanoTime();
+        populate(library);
+        out.println(String.format(Locale.ROOT, "Added %d copies of %d titles in %d ms",
+                copies.length(), config.getTitles(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - populateStart)));
+
+        Map<NotificationEmitter, NotificationListener> gcListeners = listenToGarbageCollection();
+        try {
+            double intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRatePerSecond();
+            long start = System.nanoTime();
+            long end = start + TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+            AtomicLong tickets = new AtomicLong();
+            List<Thread> clients = new ArrayList<>();
+            for (int i = 0; i < config.getClients(); i++) {
+                Thread client = new Thread(() -> runClient(library, tickets, start, end, intervalNanos), "load-client-" + i);
+                client.setDaemon(true);
+                clients.add(client);
+                client.start();
+            }
+
+            out.println("   time      ops/s  latency ms:   p50      p99    p99.9      max    heap MB   gc count   gc ms  max pause ms");
+            GcTotals gc = new GcTotals();
+            long reportNanos = TimeUnit.SECONDS.toNanos(config.getReportIntervalSeconds());
+            long lastReport = start;
+            for (long next = start + reportNanos; next < end; next += reportNanos) {
+                TimeUnit.NANOSECONDS.sleep(Math.max(0, next - System.nanoTime()));
+                long now = System.nanoTime();
+                report(out, now - start, now - lastReport, gc);
+                lastReport = now;
+            }
+            for (Thread client : clients) {
+                client.join();
+            }
+            long now = System.nanoTime();
+            report(out, now - start, now - lastReport, gc);
+            summary(out, now - start);
+        } finally {
+            for (Map.Entry<NotificationEmitter, NotificationListener> listener : gcListeners.entrySet()) {
+                try {
+                    listener.getKey().removeNotificationListener(listener.getValue());
+                } catch (ListenerNotFoundException e) {
+                    // already removed
+                }
+            }
+        }
+    }
+
+    /**
+     * @return latencies of the operation from when it was meant to start, over the whole run
+     */
+    public LatencyHistogram getLatency(Operation operation) {
+        return latencies.get(operation);
+    }
+
+    /**
+     * @return number of times the operation had nothing to do: no copy to lend, return or remove
+     */
+    public long getMisses(Operation operation) {
+        LongAdder count = misses.get(operation);
+        return isNull(count) ? 0 : count.sum();
+    }
+
+    /**
+     * @return number of operations that failed with an unexpected exception
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    private void populate(Library library) {
+        int copiesPerTitle = config.getCopiesPerTitle();
+        for (int title = 0; title < config.getTitles(); title++) {
+            for (int copy = 0; copy < copiesPerTitle; copy++) {
+                copies.set(title * copiesPerTitle + copy, library.addNewBook(titleOf(title), authorOf(title), yearOf(title)));
+            }
+        }
+    }
+
+    private void runClient(Library library, AtomicLong tickets, long start, long end, double intervalNanos) {
+        Random random = ThreadLocalRandom.current();
+        while (true) {
+            long intended = start + (long) (tickets.getAndIncrement() * intervalNanos);
+            if (intended - end >= 0) {
+                return;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Operation operation = pick(random);
+            try {
+                if (!execute(library, operation, random)) {
+                    misses.get(operation).increment();
+                }
+            } catch (RuntimeException e) {
+                errors.increment();
+                firstError.compareAndSet(null, e);
+            }
+            long latency = System.nanoTime() - intended;
+            latencies.get(operation).record(latency);
+            intervalLatency.record(latency);
+        }
+    }
+
+    private Operation pick(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int index = Arrays.binarySearch(cumulativeWeights, value + 1);
+        return operations[index >= 0 ? index : -index - 1];
+    }
+
+    /**
+     * @return false if there was nothing to do
+     */
+    private boolean execute(Library library, Operation operation, Random random) {
+        int copiesPerTitle = config.getCopiesPerTitle();
+        int title = popularity.sample(random);
+        int slot = title * copiesPerTitle + random.nextInt(copiesPerTitle);
+        switch (operation) {
+            case ADD_NEW_BOOK: {
+                String id = library.addNewBook(titleOf(title), authorOf(title), yearOf(title));
+                // a copy added to a taken slot stays in the library, but is not lent or removed by id
+                copies.compareAndSet(slot, null, id);
+                return true;
+            }
+            case GET_BOOK_LIST_BY_CRITERIA:
+                return !library.getBookListByCriteria(criteriaOf(title)).isEmpty();
+            case TRY_LEND_BOOK: {
+                String id = copies.get(slot);
+                return !isNull(id) && lent(library.tryLendBook(id, patronOf(random)));
+            }
+            case TRY_LEND_BOOK_BY_CRITERIA:
+                return lent(library.tryLendBook(criteriaOf(title), patronOf(random)));
+            case RETURN_BOOK: {
+                String id = lent.poll();
+                return !isNull(id) && library.returnBook(id);
+            }
+            case REMOVE_BOOK: {
+                // any copy may be removed, popular or not
+                int any = random.nextInt(copies.length());
+                String id = copies.getAndSet(any, null);
+                if (isNull(id)) {
+                    return false;
+                }
+                try {
+                    library.removeBook(id);
+                    return true;
+                } catch (BookAlreadyLentException e) {
+                    copies.compareAndSet(any, null, id);
+                    return false;
+                } catch (BookNotExistException e) {
+                    return false;
+                }
+            }
+            case GET_INVENTORY:
+                return !library.getInventory().isEmpty();
+            default:
+                throw new IllegalStateException("Operation " + operation + " is not generated");
+        }
+    }
+
+    private boolean lent(LendResult result) {
+        if (result.isLent()) {
+            lent.add(result.getBookId());
+        }
+        return result.isLent();
+    }
+
+    /**
+     * Prints the interval since the last report and starts a new one. Operations finishing while
+     * the interval is read may be counted in the next one
+     */
+    private void report(PrintStream out, long elapsedNanos, long intervalNanos, GcTotals gc) {
+        long count = intervalLatency.getCount();
+        double seconds = intervalNanos / 1e9;
+        long heapUsed = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        long gcCount = gc.count;
+        long gcMillis = gc.millis;
+        gc.update();
+        out.println(String.format(Locale.ROOT, "%6.0fs %10.0f %19.3f %8.3f %8.3f %8.3f %10d %10d %7d %13.1f",
+                elapsedNanos / 1e9,
+                seconds > 0 ? count / seconds : 0,
+                millis(intervalLatency.getValueAtPercentile(50)),
+                millis(intervalLatency.getValueAtPercentile(99)),
+                millis(intervalLatency.getValueAtPercentile(99.9)),
+                millis(intervalLatency.getMax()),
+                heapUsed / MEGABYTE,
+                gc.count - gcCount,
+                gc.millis - gcMillis,
+                millis(intervalGcPauses.getMax())));
+        intervalLatency.reset();
+        intervalGcPauses.reset();
+    }
+
+    private void summary(PrintStream out, long elapsedNanos) {
+        long total = 0;
+        out.println();
+        out.println("operation                      count     misses  latency ms:   p50      p99    p99.9      max");
+        for (Map.Entry<Operation, LatencyHistogram> operation : latencies.entrySet()) {
+            LatencyHistogram latency = operation.getValue();
+            total += latency.getCount();
+            out.println(String.format(Locale.ROOT, "%-25s %10d %10d %18.3f %8.3f %8.3f %8.3f",
+                    operation.getKey(),
+                    latency.getCount(),
+                    getMisses(operation.getKey()),
+                    millis(latency.getValueAtPercentile(50)),
+                    millis(latency.getValueAtPercentile(99)),
+                    millis(latency.getValueAtPercentile(99.9)),
+                    millis(latency.getMax())));
+        }
+        out.println(String.format(Locale.ROOT, "%d operations at %.0f ops/s (target %.0f), %d errors",
+                total, total / (elapsedNanos / 1e9), config.getRatePerSecond(), errors.sum()));
+        out.println(String.format(Locale.ROOT, "%d garbage collection pauses, p99 %.1f ms, max %.1f ms",
+                gcPauses.getCount(), millis(gcPauses.getValueAtPercentile(99)), millis(gcPauses.getMax())));
+        Throwable error = firstError.get();
+        if (!isNull(error)) {
+            out.println("First error:");
+            error.printStackTrace(out);
+        }
+    }
+
+    /**
+     * Records the duration of every stop-the-world collection. The notifications are sent by HotSpot and OpenJ9,
+     * on other virtual machines only the counts and times of the collector beans are reported
+     */
+    private Map<NotificationEmitter, NotificationListener> listenToGarbageCollection() {
+        Map<NotificationEmitter, NotificationListener> listeners = new HashMap<>();
+        NotificationListener listener = (Notification notification, Object handback) -> {
+            if (!GC_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            CompositeData data = (CompositeData) notification.getUserData();
+            String name = String.valueOf(data.get("gcName"));
+            // concurrent collectors report whole cycles that mostly run beside the application
+            if (name.contains("Concurrent") || name.contains("Cycles")) {
+                return;
+            }
+            CompositeData info = (CompositeData) data.get("gcInfo");
+            long nanos = TimeUnit.MILLISECONDS.toNanos(((Number) info.get("duration")).longValue());
+            gcPauses.record(nanos);
+            intervalGcPauses.record(nanos);
+        };
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (collector instanceof NotificationEmitter) {
+                NotificationEmitter emitter = (NotificationEmitter) collector;
+                emitter.addNotificationListener(listener, null, null);
+                listeners.put(emitter, listener);
+            }
+        }
+        return listeners;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static SearchCriteria criteriaOf(int title) {
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle(titleOf(title));
+        return criteria;
+    }
+
+    private static String titleOf(int title) {
+        return "Title " + title;
+    }
+
+    private static String authorOf(int title) {
+        return "Author " + title % 1000;
+    }
+
+    private static int yearOf(int title) {
+        return 1900 + title % 120;
+    }
+
+    private static String patronOf(Random random) {
+        return "Patron " + random.nextInt(10_000);
+    }
+
+    /**
+     * Collections of all collectors since the start of the virtual machine
+     */
+    private static class GcTotals {
+        private long count;
+        private long millis;
+
+        GcTotals() {
+            update();
+        }
+
+        void update() {
+            count = 0;
+            millis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package demo;
+
+import library.metrics.Operation;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Settings of LoadGenerator
+ */
+public class LoadGeneratorConfig {
+
+    /**
+     * Operations the generator can run
+     */
+    public static final Set<Operation> OPERATIONS = Collections.unmodifiableSet(EnumSet.of(
+            Operation.ADD_NEW_BOOK,
+            Operation.GET_BOOK_LIST_BY_CRITERIA,
+            Operation.TRY_LEND_BOOK,
+            Operation.TRY_LEND_BOOK_BY_CRITERIA,
+            Operation.RETURN_BOOK,
+            Operation.REMOVE_BOOK,
+            Operation.GET_INVENTORY));
+
+    private int clients = 8;
+    private double ratePerSecond = 10_000;
+    private long durationSeconds = 60;
+    private long reportIntervalSeconds = 10;
+    private int titles = 10_000;
+    private int copiesPerTitle = 5;
+    private double zipfExponent = 0.99;
+    private final EnumMap<Operation, Integer> weights = new EnumMap<>(Operation.class);
+
+    public LoadGeneratorConfig() {
+        weights.put(Operation.GET_BOOK_LIST_BY_CRITERIA, 50);
+        weights.put(Operation.TRY_LEND_BOOK, 15);
+        weights.put(Operation.TRY_LEND_BOOK_BY_CRITERIA, 10);
+        weights.put(Operation.RETURN_BOOK, 20);
+        weights.put(Operation.ADD_NEW_BOOK, 2);
+        weights.put(Operation.REMOVE_BOOK, 2);
+        weights.put(Operation.GET_INVENTORY, 1);
+    }
+
+    public int getClients() {
+        return clients;
+    }
+
+    /**
+     * @param clients number of threads sending operations. When all of them are busy the next operations
+     *                start late, and the delay is counted in their latency
+     */
+    public void setClients(int clients) {
+        if (clients <= 0) {
+            throw new IllegalArgumentException("Number of clients must be positive");
+        }
+        this.clients = clients;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    /**
+     * @param ratePerSecond operations started per second by all clients together, whatever the latency
+     */
+    public void setRatePerSecond(double ratePerSecond) {
+        if (!(ratePerSecond > 0)) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        if (durationSeconds <= 0) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        this.durationSeconds = durationSeconds;
+    }
+
+    public long getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    /**
+     * @param reportIntervalSeconds how often throughput, latency, heap and garbage collection are printed
+     */
+    public void setReportIntervalSeconds(long reportIntervalSeconds) {
+        if (reportIntervalSeconds <= 0) {
+            throw new IllegalArgumentException("Report interval must be positive");
+        }
+        this.reportIntervalSeconds = reportIntervalSeconds;
+    }
+
+    public int getTitles() {
+        return titles;
+    }
+
+    /**
+     * @param titles number of different books added before the run
+     */
+    public void setTitles(int titles) {
+        if (titles <= 0) {
+            throw new IllegalArgumentException("Number of titles must be positive");
+        }
+        this.titles = titles;
+    }
+
+    public int getCopiesPerTitle() {
+        return copiesPerTitle;
+    }
+
+    public void setCopiesPerTitle(int copiesPerTitle) {
+        if (copiesPerTitle <= 0) {
+            throw new IllegalArgumentException("Number of copies must be positive");
+        }
+        this.copiesPerTitle = copiesPerTitle;
+    }
+
+    public double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    /**
+     * @param zipfExponent skew of title popularity, 0 picks every title equally often,
+     *                     around 1 a few titles get most of the traffic
+     */
+    public void setZipfExponent(double zipfExponent) {
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("Zipf exponent must not be negative");
+        }
+        this.zipfExponent = zipfExponent;
+    }
+
+    /**
+     * @return relative frequency of every operation of OPERATIONS
+     */
+    public Map<Operation, Integer> getWeights() {
+        return Collections.unmodifiableMap(weights);
+    }
+
+    /**
+     * @param operation one of OPERATIONS
+     * @param weight relative frequency of the operation, 0 turns it off
+     */
+    public void setWeight(Operation operation, int weight) {
+        if (!OPERATIONS.contains(operation)) {
+            throw new IllegalArgumentException("Operation " + operation + " is not generated");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("Weight must not be negative");
+        }
+        weights.put(operation, weight);
+    }
+}
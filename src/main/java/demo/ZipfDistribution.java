@@ -0,0 +1,31 @@
+package demo;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Ranks from 0 to n - 1 where rank k is picked with probability proportional to 1 / (k + 1)^exponent.
+ * The cumulative probabilities are computed once, a sample is a binary search.
+ */
+class ZipfDistribution {
+
+    private final double[] cumulative;
+
+    ZipfDistribution(int n, double exponent) {
+        cumulative = new double[n];
+        double sum = 0;
+        for (int k = 0; k < n; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= sum;
+        }
+    }
+
+    int sample(Random random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        // not found returns -(insertion point) - 1, the first rank with a bigger cumulative probability
+        return Math.min(index >= 0 ? index : -index - 1, cumulative.length - 1);
+    }
+}
@@ -0,0 +1,263 @@
+package library;
+
+import library.model.BookDetails;
+import library.model.LendResult;
+import library.search.SearchCriteria;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Non-blocking facade of LibraryManager, every method returns a CompletableFuture.
+ *
+ * Lend, return and remove requests are queued and applied by a single writer thread in batches.
+ * A batch waits for the write-ahead log once instead of once per request, so many concurrent callers
+ * share one fsync. Reads and additions run on an executor, on virtual threads when the JDK has them.
+ * The futures themselves are completed on the executor, never on the writer thread. Callbacks attached
+ * with thenApply and the like may still run on any thread, e.g. one that attaches them to a completed future
+ * or waits on it; use the async variants with an executor to choose the thread.
+ */
+public class AsyncLibrary implements Closeable {
+
+    private final static Logger logger = Logger.getLogger(AsyncLibrary.class.getName());
+
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final LibraryManager library;
+    private final AsyncLibraryConfig config;
+    private final ExecutorService executor;
+    private final BlockingQueue<Request<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    public AsyncLibrary(LibraryManager library) {
+        this(library, new AsyncLibraryConfig());
+    }
+
+    public AsyncLibrary(LibraryManager library, AsyncLibraryConfig config) {
+        this.library = library;
+        this.config = config;
+        this.executor = createExecutor(config.isVirtualThreads());
+        writer = new Thread(this::writeLoop, "library-async-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public CompletableFuture<String> addNewBook(String title, String author, Integer year) {
+        return CompletableFuture.supplyAsync(() -> library.addNewBook(title, author, year), executor);
+    }
+
+    public CompletableFuture<BookDetails> getBookById(String id) {
+        return call(() -> library.getBookById(id));
+    }
+
+    public CompletableFuture<List<BookDetails>> getBookListByCriteria(SearchCriteria criteria) {
+        return CompletableFuture.supplyAsync(() -> library.getBookListByCriteria(criteria), executor);
+    }
+
+    public CompletableFuture<BookDetails> lendBook(String id, String person) {
+        return submit(() -> library.lendBook(id, person));
+    }
+
+    public CompletableFuture<BookDetails> lendBook(SearchCriteria criteria, String person) {
+        return submit(() -> library.lendBook(criteria, person));
+    }
+
+    /**
+     * Lends or reserves on the writer thread like lendBook. A copy returned later is lent to the reservation
+     * by the thread that returns it, the future is still completed on the executor
+     * @param criteria
+     * @param person
+     * @return future of LendResult with the lent book or NOT_FOUND, cancelling it cancels the reservation
+     */
+    public CompletableFuture<LendResult> reserveBook(SearchCriteria criteria, String person) {
+        CompletableFuture<LendResult> future = new CompletableFuture<>();
+        submit(() -> library.reserveBook(criteria, person)).whenCompleteAsync((reservation, failure) -> {
+            if (!isNull(failure)) {
+                future.completeExceptionally(failure);
+                return;
+            }
+            future.whenComplete((lent, e) -> {
+                if (e instanceof CancellationException) {
+                    reservation.cancel(false);
+                }
+            });
+            reservation.whenCompleteAsync((lent, e) -> {
+                if (!isNull(e)) {
+                    future.completeExceptionally(e);
+                } else if (!future.complete(lent) && lent.isLent()) {
+                    // cancelled after the copy was lent
+                    returnBook(lent.getBookId());
+                }
+            }, executor);
+        }, executor);
+        return future;
+    }
+
+    /**
+     * @param id
+     * @return future of false if the copy doesn't exist or is not lent
+     */
+    public CompletableFuture<Boolean> returnBook(String id) {
+        return submit(() -> library.returnBook(id));
+    }
+
+    public CompletableFuture<Void> removeBook(String id) {
+        return submit(() -> {
+            library.removeBook(id);
+            return null;
+        });
+    }
+
+    /**
+     * Applies the queued requests and stops the writer, requests made after closing fail
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Operation<T> operation) {
+        Request<T> request = new Request<>(operation);
+        if (!running) {
+            request.future.completeExceptionally(new RejectedExecutionException("Library is closed"));
+            return request.future;
+        }
+        queue.offer(request);
+        return request.future;
+    }
+
+    private <T> CompletableFuture<T> call(Operation<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                future.complete(operation.apply());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    private void writeLoop() {
+        List<Request<?>> batch = new ArrayList<>(config.getMaxBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                Request<?> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                fillBatch(batch);
+                applyBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Applying a batch failed", e);
+                batch.forEach(request -> complete(request, null, e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void fillBatch(List<Request<?>> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(config.getMaxBatchDelayMicros());
+        while (batch.size() < config.getMaxBatchSize()) {
+            Request<?> next = queue.poll();
+            if (next == null) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return;
+                }
+                next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (next == null) {
+                    return;
+                }
+            }
+            batch.add(next);
+        }
+    }
+
+    /**
+     * Applies every request, then waits once for the write-ahead log and only then completes the futures,
+     * so a caller never sees a change that could still be lost
+     */
+    private void applyBatch(List<Request<?>> batch) {
+        library.applyBatch(() -> batch.forEach(Request::apply), executor);
+        batch.forEach(request -> complete(request, request.result, request.failure));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void complete(Request<?> request, Object result, Throwable failure) {
+        CompletableFuture<Object> future = (CompletableFuture<Object>) request.future;
+        try {
+            executor.execute(() -> {
+                if (failure == null) {
+                    future.complete(result);
+                } else {
+                    future.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Virtual threads are looked up by reflection, the library is still built for Java 8
+     */
+    private static ExecutorService createExecutor(boolean virtualThreads) {
+        if (virtualThreads) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                logger.fine("Virtual threads are not available, using a thread pool");
+            }
+        }
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "library-async-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private interface Operation<T> {
+        T apply() throws Exception;
+    }
+
+    private static class Request<T> {
+        private final Operation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        // set and read by the writer thread
+        private T result;
+        private Exception failure;
+
+        Request(Operation<T> operation) {
+            this.operation = operation;
+        }
+
+        void apply() {
+            try {
+                result = operation.apply();
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package library;
+
+/**
+ * Settings of AsyncLibrary
+ */
+public class AsyncLibraryConfig {
+
+    private int maxBatchSize = 256;
+    private long maxBatchDelayMicros = 0;
+    private boolean virtualThreads = true;
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize most requests applied together and made durable with one wait for the write-ahead log
+     */
+    public void setMaxBatchSize(int maxBatchSize) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public long getMaxBatchDelayMicros() {
+        return maxBatchDelayMicros;
+    }
+
+    /**
+     * @param maxBatchDelayMicros how long the writer waits for more requests after the first one of a batch.
+     *                            0 applies whatever is queued right away, so a request never waits for others
+     */
+    public void setMaxBatchDelayMicros(long maxBatchDelayMicros) {
+        this.maxBatchDelayMicros = maxBatchDelayMicros;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * @param virtualThreads whether reads and completions run on virtual threads when the JDK has them
+     */
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+}
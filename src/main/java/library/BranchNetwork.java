@@ -0,0 +1,168 @@
+package library;
+
+import library.dao.BookDetailsDAO;
+import library.dao.ConcurrentLongMap;
+import library.search.SearchCriteria;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Branch libraries in one process that share one catalog of book details. The catalog keeps every
+ * BookDetails once, counting the copies of all branches, and drops it when the last copy of any branch is removed.
+ * Each branch is a LibraryManager with its own copies, searches of a branch only return the books it has copies of.
+ *
+ * Which branches have an available copy of a book is kept per book details as a set of branch numbers,
+ * changed by a branch under the lock of the book when its counters go from 0 available copies to more or back.
+ * So a query reads the sets of the matching books and the counters of the branches in them, without asking every branch.
+ */
+public class BranchNetwork {
+
+    private final BookDetailsDAO catalog = new BookDetailsDAO();
+
+    private final List<String> names = new CopyOnWriteArrayList<>();
+    private final List<LibraryManager> branches = new CopyOnWriteArrayList<>();
+    private final Map<String, LibraryManager> branchesByName = new ConcurrentHashMap<>();
+
+    /**
+     * bookDetailsId -> bits of the numbers of the branches with an available copy, replaced as a whole on every change
+     */
+    private final ConcurrentLongMap<long[]> availableBranches = new ConcurrentLongMap<>();
+
+    /**
+     * @return catalog shared by all branches, e.g. to enable its result cache
+     */
+    public BookDetailsDAO getCatalog() {
+        return catalog;
+    }
+
+    /**
+     * @param name
+     * @return new empty branch library
+     */
+    public synchronized LibraryManager addBranch(String name) {
+        if (isNull(name) || branchesByName.containsKey(name)) {
+            throw new IllegalArgumentException("Branch " + name + " already exists or has no name");
+        }
+        int number = branches.size();
+        LibraryManager branch = new LibraryManager(catalog);
+        branch.setAvailabilityListener((bookDetailsId, available) ->
+                availableBranches.compute(bookDetailsId, (id, bits) -> withBit(bits, number, available)));
+        names.add(name);
+        branches.add(branch);
+        branchesByName.put(name, branch);
+        return branch;
+    }
+
+    /**
+     * @param name
+     * @return the branch or null if there is no such branch
+     */
+    public LibraryManager getBranch(String name) {
+        return branchesByName.get(name);
+    }
+
+    /**
+     * @return names of the branches in the order they were added
+     */
+    public List<String> getBranchNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @param criteria
+     * @return names of the branches with an available copy of a book matching the criteria, in the order they were added
+     */
+    public List<String> getBranchesWithAvailableCopy(SearchCriteria criteria) {
+        long[] bits = new long[0];
+        for (int bookDetailsId : catalog.getBookDetailsIdsByParams(criteria)) {
+            long[] branchBits = availableBranches.get(bookDetailsId);
+            if (!isNull(branchBits)) {
+                bits = or(bits, branchBits);
+            }
+        }
+        List<String> result = new ArrayList<>();
+        for (int number = nextBit(bits, 0); number >= 0; number = nextBit(bits, number + 1)) {
+            result.add(names.get(number));
+        }
+        return result;
+    }
+
+    /**
+     * Only the counters of branches that have an available copy are read
+     * @param criteria
+     * @return number of available copies of books matching the criteria by the name of the branch,
+     * for branches that have any, in the order they were added
+     */
+    public Map<String, Integer> getAvailableCopies(SearchCriteria criteria) {
+        int[] counts = new int[branches.size()];
+        for (int bookDetailsId : catalog.getBookDetailsIdsByParams(criteria)) {
+            long[] branchBits = availableBranches.get(bookDetailsId);
+            if (isNull(branchBits)) {
+                continue;
+            }
+            for (int number = nextBit(branchBits, 0); number >= 0 && number < counts.length; number = nextBit(branchBits, number + 1)) {
+                counts[number] += branches.get(number).countAvailableCopies(bookDetailsId);
+            }
+        }
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int number = 0; number < counts.length; number++) {
+            // the last copy may have been lent since the bits were read
+            if (counts[number] > 0) {
+                result.put(names.get(number), counts[number]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return copy of the bits with the bit of the branch set or cleared, null when no bit is left
+     */
+    private static long[] withBit(long[] bits, int number, boolean set) {
+        int word = number >>> 6;
+        long[] result = isNull(bits) ? new long[word + 1] : Arrays.copyOf(bits, Math.max(bits.length, word + 1));
+        if (set) {
+            result[word] |= 1L << number;
+        }
+        else {
+            result[word] &= ~(1L << number);
+        }
+        for (long value : result) {
+            if (value != 0) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static long[] or(long[] a, long[] b) {
+        long[] result = Arrays.copyOf(a, Math.max(a.length, b.length));
+        for (int i = 0; i < b.length; i++) {
+            result[i] |= b[i];
+        }
+        return result;
+    }
+
+    /**
+     * @return the first set bit from the index or -1
+     */
+    private static int nextBit(long[] bits, int from) {
+        int word = from >>> 6;
+        if (word >= bits.length) {
+            return -1;
+        }
+        long value = bits[word] & (-1L << from);
+        while (true) {
+            if (value != 0) {
+                return word * 64 + Long.numberOfTrailingZeros(value);
+            }
+            if (++word == bits.length) {
+                return -1;
+            }
+            value = bits[word];
+        }
+    }
+}
@@ -3,9 +3,18 @@ package library;
 import library.exception.BookAlreadyLentException;
 import library.exception.BookNotExistException;
 import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.search.Page;
+import library.search.PageRequest;
 import library.search.SearchCriteria;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 public interface Library {
 
@@ -18,6 +27,29 @@ public interface Library {
      */
     String addNewBook(String title, String author, Integer year);
 
+    /**
+     * Method that adds one copy of a book for every element of the iterator.
+     * Books are read and added in chunks, so the iterator may be much bigger than memory
+     * @param books
+     * @return number of added copies
+     */
+    long importBooks(Iterator<BookDetails> books);
+
+    /**
+     * Method that adds one copy of a book for every element of the stream
+     * @param books
+     * @return number of added copies
+     */
+    long importBooks(Stream<BookDetails> books);
+
+    /**
+     * Method that adds one copy of a book for every line of a CSV file with columns title, author, year
+     * @param csvFile
+     * @return number of added copies
+     * @throws IOException
+     */
+    long importBooks(Path csvFile) throws IOException;
+
 
     /**
      * Method checks if book with given id exist in library.
@@ -34,6 +66,19 @@ public interface Library {
      */
     List<BookDetails> getAllBookDetails();
 
+    /**
+     * Method that returns all books lazily, nothing is copied until the stream is consumed
+     * @return stream of all books
+     */
+    Stream<BookDetails> streamAllBookDetails();
+
+    /**
+     * Method that returns the number of available and lent copies of every book, ordered by when the book was first added.
+     * Counters are kept up to date with every change, so the cost depends on the number of books, not copies
+     * @return inventory of every book
+     */
+    List<BookInventory> getInventory();
+
     /**
      * Method that display all information about all books in library
      * Information: BookDetails, available amount, lent amount
@@ -55,6 +100,29 @@ public interface Library {
      */
     List<BookDetails> getBookListByCriteria(SearchCriteria criteria);
 
+    /**
+     * Method that returns books by criteria lazily, once per copy like getBookListByCriteria
+     * @param criteria
+     * @return stream of books
+     */
+    Stream<BookDetails> streamBookListByCriteria(SearchCriteria criteria);
+
+    /**
+     * Method that returns books by criteria lazily, every book once however many copies it has
+     * @param criteria
+     * @return stream of books
+     */
+    Stream<BookDetails> streamBookDetailsByCriteria(SearchCriteria criteria);
+
+    /**
+     * Method that returns one page of books by criteria. Only the books of the page are read,
+     * however many books match the criteria
+     * @param criteria
+     * @param pageRequest size of the page, cursor returned with the previous page and whether copies are listed
+     * @return page of books with the cursor of the next page
+     */
+    Page<BookDetails> getBookPageByCriteria(SearchCriteria criteria, PageRequest pageRequest);
+
     /**
      * Method that removes book from library
      * Before removing checks if book exist and is not currently lent
@@ -89,4 +157,37 @@ public interface Library {
      */
     BookDetails lendBook(SearchCriteria criteria, String person) throws BookAlreadyLentException, BookNotExistException;
 
+    /**
+     * Method that lends a book like lendBook, but returns why it could not be lent instead of throwing
+     * @param id
+     * @param person
+     * @return LendResult with the lent book, ALL_LENT when the book is lent or NOT_FOUND
+     */
+    LendResult tryLendBook(String id, String person);
+
+    /**
+     * Method that lends any available book matching the criteria like lendBook, without throwing
+     * @param criteria
+     * @param person
+     * @return LendResult with the lent book, ALL_LENT when all matching books are lent or NOT_FOUND
+     */
+    LendResult tryLendBook(SearchCriteria criteria, String person);
+
+    /**
+     * Method that lends any available book matching the criteria like tryLendBook, or reserves one when all are lent.
+     * A returned copy is lent to the reservations of the book in the order they were made.
+     * Cancelling the future cancels the reservation
+     * @param criteria
+     * @param person
+     * @return future of LendResult with the lent book or NOT_FOUND
+     */
+    CompletableFuture<LendResult> reserveBook(SearchCriteria criteria, String person);
+
+    /**
+     * Method that gives back a lent book, so it can be lent again
+     * @param id
+     * @return false if the book doesn't exist or is not lent
+     */
+    boolean returnBook(String id);
+
 }
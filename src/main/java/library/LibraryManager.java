@@ -1,66 +1,227 @@
 package library;
 
 import library.dao.BookDetailsDAO;
-import library.dao.BookDAO;
+import library.dao.BookDistributorDAO;
+import library.dao.BookDistributorListener;
+import library.dao.IdGenerator;
+import library.dao.MappedSnapshot;
+import library.dao.Reservation;
 import library.exception.BookAlreadyLentException;
 import library.exception.BookNotExistException;
-import library.model.Book;
+import library.io.BookCsvReader;
+import library.model.BookDistributor;
 import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.event.EventStream;
+import library.event.LibraryEvent;
+import library.event.WaitStrategy;
+import library.persistence.LogRecord;
+import library.persistence.WriteAheadLog;
+import library.search.CacheStats;
+import library.search.CriteriaKey;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.ResultCache;
 import library.search.SearchCriteria;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.util.Objects.isNull;
-import static java.util.stream.Collectors.toSet;
 
 public class LibraryManager implements Library {
 
     private final static Logger logger = Logger.getLogger(LibraryManager.class.getName());
 
-    private List<Book> books = new ArrayList<>();
+    private final static int IMPORT_CHUNK_SIZE = 64 * 1024;
+
+    private List<BookDistributor> books = new ArrayList<>();
     private BookDetailsDAO bookDetailsDAO = new BookDetailsDAO();
-    private BookDAO bookDAO = new BookDAO();
+    private BookDistributorDAO bookDistributorDAO = new BookDistributorDAO();
+    private WriteAheadLog writeAheadLog;
+    private volatile ResultCache<CriteriaKey, List<BookDetails>> resultCache;
+
+    /**
+     * Set when the book details are shared with other branches, results are then limited to books with copies here
+     */
+    private boolean sharedCatalog;
+
+    /**
+     * Set while the current thread applies a batch, changes then wait for the write-ahead log once at the end
+     */
+    private final ThreadLocal<Boolean> inBatch = ThreadLocal.withInitial(() -> false);
+
+    /**
+     * Run after the batch of the current thread is durable, e.g. completions of reservations
+     */
+    private final ThreadLocal<List<Runnable>> afterBatch = ThreadLocal.withInitial(ArrayList::new);
+
+    /**
+     * Get every change of copies as a record, e.g. to replicate the library
+     */
+    private final List<Consumer<LogRecord>> changeListeners = new CopyOnWriteArrayList<>();
+
+    private volatile EventStream events;
+
+    public LibraryManager() {
+    }
+
+    /**
+     * Creates a branch library that keeps its book details in a catalog shared with other branches,
+     * only the copies are its own. See BranchNetwork
+     * @param catalog
+     */
+    LibraryManager(BookDetailsDAO catalog) {
+        this.bookDetailsDAO = catalog;
+        this.sharedCatalog = true;
+    }
+
+    /**
+     * Creates a library that restores its books from the write-ahead log
+     * and from now on appends every change to it
+     * @param writeAheadLog
+     * @throws IOException when the log cannot be read
+     */
+    public LibraryManager(WriteAheadLog writeAheadLog) throws IOException {
+        writeAheadLog.replay(this::apply);
+        this.writeAheadLog = writeAheadLog;
+        bookDistributorDAO.setListener(new ChangeListener());
+        writeAheadLog.setSnapshotSource(() -> getSnapshotRecords().iterator());
+    }
+
+    /**
+     * Opens a library from a snapshot written by writeSnapshot. The file is mapped, book details are restored
+     * right away and copies are read from the mapped file the first time they are used
+     * @param snapshot
+     * @return library with the books of the snapshot
+     * @throws IOException when the file is not a snapshot or cannot be read
+     */
+    public static LibraryManager openSnapshot(Path snapshot) throws IOException {
+        LibraryManager libraryManager = new LibraryManager();
+        MappedSnapshot.open(snapshot, libraryManager.bookDetailsDAO, libraryManager.bookDistributorDAO);
+        return libraryManager;
+    }
+
+    /**
+     * Writes all books to a columnar snapshot file, replacing it atomically.
+     * Books changed while it is written may be seen in either state
+     * @param snapshot
+     * @throws IOException
+     */
+    public void writeSnapshot(Path snapshot) throws IOException {
+        MappedSnapshot.write(snapshot, bookDetailsDAO, bookDistributorDAO);
+    }
+
+    /**
+     * Caches results of getBookListByCriteria and ids of book details matching criteria.
+     * Results are dropped as soon as a copy is added or removed, results of criteria
+     * with only available books also when a copy is lent or returned. Cached lists are unmodifiable.
+     * A branch only caches its own results, the ids of a shared catalog are cached through BranchNetwork.getCatalog()
+     * @param maximumWeight maximum number of cached books, and separately of cached ids
+     */
+    public void enableResultCache(long maximumWeight) {
+        if (!sharedCatalog) {
+            bookDetailsDAO.enableResultCache(maximumWeight);
+        }
+        resultCache = new ResultCache<>(maximumWeight, List::size);
+    }
+
+    /**
+     * @return statistics of the cache of getBookListByCriteria or null if it is not enabled
+     */
+    public CacheStats getResultCacheStats() {
+        ResultCache<CriteriaKey, List<BookDetails>> cache = resultCache;
+        return isNull(cache) ? null : cache.getStats();
+    }
 
     @Override
     public String addNewBook(String title, String author, Integer year) {
-        SearchCriteria criteria = new SearchCriteria();
-        criteria.setAuthor(author);
-        criteria.setTitle(title);
-        criteria.setYear(year);
+        int bookDetailsId = bookDetailsDAO.retainBookDetails(new BookDetails(title, author, year));
+        long id = addBook(bookDetailsId);
+        awaitDurable();
+        return IdGenerator.format(id);
+    }
 
-        String bookDetailsId = bookDetailsDAO.getBookDetailsIdByParams(criteria);
-        if(isNull(bookDetailsId)) {
-            BookDetails bookDetails = new BookDetails(title, author, year);
-          bookDetailsId = bookDetailsDAO.addBookDetail(bookDetails);
+
+    @Override
+    public long importBooks(Iterator<BookDetails> books) {
+        long imported = 0;
+        Map<BookDetails, Integer> chunk = new HashMap<>();
+        int chunkSize = 0;
+        while (books.hasNext()) {
+            chunk.merge(books.next(), 1, Integer::sum);
+            if (++chunkSize == IMPORT_CHUNK_SIZE) {
+                imported += importChunk(chunk);
+                chunk.clear();
+                chunkSize = 0;
+            }
+        }
+        imported += importChunk(chunk);
+        if (!isNull(writeAheadLog)) {
+            writeAheadLog.sync();
         }
-      return addBook(bookDetailsId);
+        return imported;
     }
 
+    @Override
+    public long importBooks(Stream<BookDetails> books) {
+        return importBooks(books.iterator());
+    }
+
+    @Override
+    public long importBooks(Path csvFile) throws IOException {
+        try (BookCsvReader reader = new BookCsvReader(csvFile)) {
+            return importBooks(reader);
+        }
+    }
 
     /**
-     * Method that creates an instance of Book,
+     * Adds a chunk of copies, already deduplicated by book details.
+     * Every book of the chunk is retained once and its copies are added together, in parallel for different books
+     * @param chunk
+     * @return number of added copies
+     */
+    private long importChunk(Map<BookDetails, Integer> chunk) {
+        return chunk.entrySet().parallelStream().mapToLong(e -> {
+            int bookDetailsId = bookDetailsDAO.retainBookDetails(e.getKey(), e.getValue());
+            bookDistributorDAO.addBookDistributors(bookDetailsId, e.getValue());
+            return e.getValue();
+        }).sum();
+    }
+
+    /**
+     * Method that creates an instance of BookDistributor,
      * which contains all information about each bookDetails in library.
-     * This instance is added to all bookDetails distrobutors list
+     * This instance is added to all bookDetails distrobutors list.
+     * The bookDetails must already be retained for this copy
      * @param bookDetailsId
      * @return id
      */
-    String addBook(String bookDetailsId) {
-        Book book = new Book(bookDetailsId);
-        String id = bookDAO.addBookDistributor(book);
-        return id;
+    long addBook(int bookDetailsId) {
+        BookDistributor book = new BookDistributor(bookDetailsId);
+        return bookDistributorDAO.addBookDistributor(book);
     }
 
     @Override
     public BookDetails getBookById(String id) throws BookNotExistException {
-
-        if (!checkIfBookExist(id)) {
+        BookDistributor bd = bookDistributorDAO.getBookDistributor(IdGenerator.parse(id));
+        BookDetails bookDetails = isNull(bd) ? null : bookDetailsDAO.getBookDetailsById(bd.getBookDetailsId());
+        if (isNull(bookDetails)) {
             throw new BookNotExistException("This book doesn't exist in library");
         }
-        String bookDetailId = bookDAO.getBookDistributor(id).getBookDetailsId();
-        return bookDetailsDAO.getBookDetailsById(bookDetailId);
+        return bookDetails;
     }
 
     /**
@@ -68,7 +229,15 @@ public class LibraryManager implements Library {
      */
     @Override
     public List<BookDetails> getAllBookDetails() {
-        return bookDetailsDAO.getAllBookDetails();
+        return sharedCatalog ? streamAllBookDetails().collect(Collectors.toList()) : bookDetailsDAO.getAllBookDetails();
+    }
+
+    @Override
+    public Stream<BookDetails> streamAllBookDetails() {
+        if (sharedCatalog) {
+            return streamBookDetailsByCriteria(new SearchCriteria());
+        }
+        return bookDetailsDAO.streamAllBookDetails();
     }
 
     /**
@@ -76,84 +245,186 @@ public class LibraryManager implements Library {
      * Information: BookDetails, available amount, lent amount
      */
     @Override
-    public void displayAllBooksInformation() {
-        Map<String, Set<Book>> result = bookDAO.getAllBookDistributors().stream().collect(Collectors.groupingBy(Book::getBookDetailsId, toSet()));
-        result.forEach((k, v) -> {
-            System.out.println("BookDetails " + bookDetailsDAO.getBookDetailsById(k).getTitle() + " "
-                    + bookDetailsDAO.getBookDetailsById(k).getAuthor() + " "
-                    + bookDetailsDAO.getBookDetailsById(k).getYear());
-            System.out.println("Available amount in library " + v.stream().filter(bd -> !bd.isLent()).count());
-            System.out.println("Lent amount " + v.stream().filter(Book::isLent).count());
+    public List<BookInventory> getInventory() {
+        SortedMap<Integer, BookInventory> inventory = new TreeMap<>();
+        bookDistributorDAO.forEachBookCounts((bookDetailsId, available, lent) -> {
+            BookDetails bookDetails = bookDetailsDAO.getBookDetailsById(bookDetailsId);
+            // details removed concurrently are skipped
+            if (!isNull(bookDetails)) {
+                inventory.put(bookDetailsId, new BookInventory(bookDetails, available, lent));
+            }
         });
+        return new ArrayList<>(inventory.values());
+    }
 
-         }
+    @Override
+    public void displayAllBooksInformation() {
+        getInventory().forEach(inventory -> {
+            BookDetails bookDetails = inventory.getBookDetails();
+            System.out.println("BookDetails " + bookDetails.getTitle() + " "
+                    + bookDetails.getAuthor() + " "
+                    + bookDetails.getYear());
+            System.out.println("Available amount in library " + inventory.getAvailableCount());
+            System.out.println("Lent amount " + inventory.getLentCount());
+        });
+    }
 
 
     @Override
     public void displayBookInformation(String id) throws BookNotExistException {
-        if (!checkIfBookExist(id)) {
-            throw new BookNotExistException("This book doesn't exist in library");
-        }
-
-        Book bd = bookDAO.getBookDistributor(id);
+        BookDistributor bd = bookDistributorDAO.getBookDistributor(IdGenerator.parse(id));
+        BookDetails bookDetails = getBookById(id);
         System.out.println("BookDetails details ");
-        System.out.println(bookDetailsDAO.getBookDetailsById(bd.getBookDetailsId()).toString());
+        System.out.println(bookDetails.toString());
         System.out.println("BookDetails is " + (bd.isLent() ? "lent" : "available"));
         System.out.println("Last person that lent the book " + bd.getLastLenderName());
     }
 
 
-    /**
-     * @param id
-     * @return if book exist
-     */
-    private boolean checkIfBookExist(String id) {
-        return bookDAO.isInLibrary(id);
-        }
-
     /**
      * @param id
      * @return if book is lent
      */
     boolean checkIfBookIsLent(String id) {
-        return bookDAO.checkIfBookIsLent(id);
+        return bookDistributorDAO.checkIfBookIsLent(IdGenerator.parse(id));
     }
 
 
     @Override
     public List<BookDetails> getBookListByCriteria(SearchCriteria criteria) {
-        Stream<Book> stream = bookDAO.getAllBookDistributors().stream();
-        if (!isNull(criteria.getAuthor())) {
-            stream = stream.filter(b -> bookDetailsDAO.getBookDetailsById(b.getBookDetailsId()).getAuthor().equals(criteria.getAuthor()));
-        }
-        if (!isNull(criteria.getTitle())) {
-            stream = stream.filter(b -> bookDetailsDAO.getBookDetailsById(b.getBookDetailsId()).getTitle().equals(criteria.getTitle()));
-        }
-        if (!isNull(criteria.getYear())) {
-            stream = stream.filter(b -> bookDetailsDAO.getBookDetailsById(b.getBookDetailsId()).getYear().equals(criteria.getYear()));
+        ResultCache<CriteriaKey, List<BookDetails>> cache = resultCache;
+        if (isNull(cache)) {
+            return streamBookListByCriteria(criteria).collect(Collectors.toList());
         }
-        return stream.map(b ->bookDetailsDAO.getBookDetailsById(b.getBookDetailsId())).collect(Collectors.toList());
+        // the version is read before the result is computed, see ResultCache.get
+        long version = criteria.isAvailableOnly()
+                ? bookDistributorDAO.getCopiesVersion() + bookDistributorDAO.getAvailabilityVersion()
+                : bookDistributorDAO.getCopiesVersion();
+        return cache.get(CriteriaKey.of(criteria), version,
+                () -> Collections.unmodifiableList(streamBookListByCriteria(criteria).collect(Collectors.toList())));
     }
 
+    @Override
+    public Stream<BookDetails> streamBookListByCriteria(SearchCriteria criteria) {
+        // the catalog is matched first, then every matching book is listed once per copy
+        return matching(criteria, 1)
+                .mapToObj(detailsId -> {
+                    BookDetails bookDetails = bookDetailsDAO.getBookDetailsById(detailsId);
+                    // details removed concurrently are skipped
+                    return isNull(bookDetails) ? Stream.<BookDetails>empty()
+                            : Collections.nCopies(countCopies(criteria, detailsId), bookDetails).stream();
+                })
+                .flatMap(Function.identity());
+    }
 
     @Override
-    public synchronized void removeBook(String id) throws BookNotExistException, BookAlreadyLentException {
-        if (!checkIfBookExist(id)) {
-            throw new BookNotExistException("This book doesn't exist in library");
+    public Stream<BookDetails> streamBookDetailsByCriteria(SearchCriteria criteria) {
+        return matching(criteria, 1)
+                .mapToObj(bookDetailsDAO::getBookDetailsById)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * The cursor is the id of the book details of the next result and, when listing copies,
+     * how many copies of it were already returned. Results are ordered by these two numbers,
+     * so the next page starts right where the previous one stopped.
+     */
+    @Override
+    public Page<BookDetails> getBookPageByCriteria(SearchCriteria criteria, PageRequest pageRequest) {
+        int[] cursor = parseCursor(pageRequest.getCursor());
+        List<BookDetails> items = new ArrayList<>(pageRequest.getPageSize());
+        PrimitiveIterator.OfInt ids = matching(criteria, cursor[0]).iterator();
+        while (ids.hasNext()) {
+            int detailsId = ids.nextInt();
+            BookDetails bookDetails = bookDetailsDAO.getBookDetailsById(detailsId);
+            if (isNull(bookDetails)) {
+                continue;
+            }
+            int count = pageRequest.isDistinct() ? 1 : countCopies(criteria, detailsId);
+            for (int copy = detailsId == cursor[0] ? cursor[1] : 0; copy < count; copy++) {
+                if (items.size() == pageRequest.getPageSize()) {
+                    return new Page<>(items, formatCursor(detailsId, copy));
+                }
+                items.add(bookDetails);
+            }
         }
-        if (checkIfBookIsLent(id)) {
-            throw new BookAlreadyLentException("This book is currently lent");
+        return new Page<>(items, null);
+    }
+
+    /**
+     * @return ids of matching book details, only of those with an available copy if the criteria ask for it
+     */
+    private IntStream matching(SearchCriteria criteria, int fromId) {
+        if (criteria.isAvailableOnly()) {
+            return bookDetailsDAO.streamBookDetailsIdsByParams(criteria, fromId, bookDistributorDAO.getAvailableBooks());
         }
-        Book bd = bookDAO.getBookDistributor(id);
+        return sharedCatalog
+                ? bookDetailsDAO.streamBookDetailsIdsByParams(criteria, fromId, bookDistributorDAO.getHeldBooks())
+                : bookDetailsDAO.streamBookDetailsIdsByParams(criteria, fromId);
+    }
+
+    /**
+     * @return id of the first book details matching the criteria that has copies in this library or NO_ID
+     */
+    private int firstMatching(SearchCriteria criteria) {
+        return sharedCatalog
+                ? bookDetailsDAO.getBookDetailsIdByParams(criteria, bookDistributorDAO.getHeldBooks())
+                : bookDetailsDAO.getBookDetailsIdByParams(criteria);
+    }
+
+    /**
+     * @param bookDetailsId
+     * @return number of available copies of the book, read from its counters
+     */
+    int countAvailableCopies(int bookDetailsId) {
+        return bookDistributorDAO.countAvailableBookDistributors(bookDetailsId);
+    }
+
+    /**
+     * @param listener gets notified when a book gets its first available copy or loses its last one
+     */
+    void setAvailabilityListener(BookDistributorDAO.AvailabilityListener listener) {
+        bookDistributorDAO.setAvailabilityListener(listener);
+    }
 
-        bookDAO.removeBook(id);
-        updateBookDetails();
+    /**
+     * @return number of copies of the book listed in results, only available ones if the criteria ask for it
+     */
+    private int countCopies(SearchCriteria criteria, int detailsId) {
+        return criteria.isAvailableOnly()
+                ? bookDistributorDAO.countAvailableBookDistributors(detailsId)
+                : bookDistributorDAO.countBookDistributors(detailsId);
     }
 
-    private void updateBookDetails(){
-        List<String> ids = bookDAO.getAllBookDistributors().stream().map(b -> b.getBookDetailsId()).collect(Collectors.toList());
-        List<String> idsToRemove = bookDetailsDAO.getKeys().stream().filter(k -> !ids.contains(k)).collect(Collectors.toList());
-        idsToRemove.stream().forEach(i -> bookDetailsDAO.removeBookDetails(i));
+    private static String formatCursor(int detailsId, int copy) {
+        return detailsId + ":" + copy;
+    }
+
+    private static int[] parseCursor(String cursor) {
+        if (isNull(cursor)) {
+            return new int[]{1, 0};
+        }
+        int separator = cursor.indexOf(':');
+        try {
+            return new int[]{Integer.parseInt(cursor.substring(0, separator)), Integer.parseInt(cursor.substring(separator + 1))};
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid cursor " + cursor, e);
+        }
+    }
+
+
+    @Override
+    public void removeBook(String id) throws BookNotExistException, BookAlreadyLentException {
+        long bookId = IdGenerator.parse(id);
+        BookDistributor bd = bookDistributorDAO.getBookDistributor(bookId);
+        if (isNull(bd)) {
+            throw new BookNotExistException("This book doesn't exist in library");
+        }
+        if (!bookDistributorDAO.tryRemoveBook(bookId)) {
+            throwBecauseNotAvailable(bookId);
+        }
+        releaseBookDetails(bd.getBookDetailsId());
+        awaitDurable();
     }
 
    /* private int getAllBookDistributorsByBookDetail(BookDetails bookDetails){
@@ -162,49 +433,341 @@ public class LibraryManager implements Library {
 
 
     @Override
-    public synchronized BookDetails lendBook(String id, String person) throws BookAlreadyLentException, BookNotExistException {
-        if (!checkIfBookExist(id)) {
-            throw new BookNotExistException("This book doesn't exist in library");
+    public BookDetails lendBook(String id, String person) throws BookAlreadyLentException, BookNotExistException {
+        return lent(tryLendBook(id, person), "This book is currently lent");
+    }
+
+    @Override
+    public BookDetails lendBook(SearchCriteria criteria, String person) throws BookNotExistException, BookAlreadyLentException {
+        return lent(tryLendBook(criteria, person), "All books are currently lent");
+    }
+
+    @Override
+    public LendResult tryLendBook(String id, String person) {
+        long bookId = IdGenerator.parse(id);
+        BookDistributor bd = bookDistributorDAO.getBookDistributor(bookId);
+        if (isNull(bd)) {
+            return LendResult.notFound();
         }
-        if (checkIfBookIsLent(id)) {
-            throw new BookAlreadyLentException("This book is currently lent");
+        if (!bookDistributorDAO.tryLendBook(bookId, person)) {
+            // the copy read before the lend may be out of date
+            BookDistributor current = bookDistributorDAO.getBookDistributor(bookId);
+            return isNull(current) || current.isRemoved() ? LendResult.notFound() : LendResult.allLent();
         }
+        awaitDurable();
+        return LendResult.lent(id, bookDetailsDAO.getBookDetailsById(bd.getBookDetailsId()));
+    }
 
-        Book bd = bookDAO.getBookDistributor(id);
-        bd.setLastLenderName(person);
-        bd.setLent(true);
+    @Override
+    public LendResult tryLendBook(SearchCriteria criteria, String person) {
+        // books that have an available copy are tried first, any of them may be lent out in the meantime
+        PrimitiveIterator.OfInt available = bookDetailsDAO
+                .streamBookDetailsIdsByParams(criteria, 1, bookDistributorDAO.getAvailableBooks()).iterator();
+        while (available.hasNext()) {
+            int bookDetailsId = available.nextInt();
+            long bookId = bookDistributorDAO.lendAvailableBook(bookDetailsId, person);
+            if (bookId != IdGenerator.NO_ID) {
+                awaitDurable();
+                return LendResult.lent(IdGenerator.format(bookId), bookDetailsDAO.getBookDetailsById(bookDetailsId));
+            }
+        }
+        if (firstMatching(criteria) == BookDetailsDAO.NO_ID) {
+            return LendResult.notFound();
+        }
+        return LendResult.allLent();
+    }
 
-        return bookDetailsDAO.getBookDetailsById(bd.getBookDetailsId());
+    /**
+     * Lends a copy of a book matching the criteria like tryLendBook. When all copies are lent,
+     * the first book matching the criteria is reserved instead: reservations of a book are served in order,
+     * a returned copy is lent to the first of them right away and the future completes on the thread that returned it,
+     * or on the executor given to applyBatch when the copy was returned in a batch.
+     * Copies added later are not handed to reservations. Cancelling the future cancels the reservation
+     * @param criteria
+     * @param person
+     * @return future of the lent book, NOT_FOUND when no book matches
+     */
+    @Override
+    public CompletableFuture<LendResult> reserveBook(SearchCriteria criteria, String person) {
+        LendResult result = tryLendBook(criteria, person);
+        if (result.getStatus() != LendResult.Status.ALL_LENT) {
+            return CompletableFuture.completedFuture(result);
+        }
+        int bookDetailsId = firstMatching(criteria);
+        PendingLend reservation = new PendingLend(person);
+        if (bookDetailsId == BookDetailsDAO.NO_ID || !bookDistributorDAO.lendOrReserve(bookDetailsId, reservation)) {
+            return CompletableFuture.completedFuture(LendResult.notFound());
+        }
+        reservation.future.whenComplete((lent, e) -> {
+            if (!isNull(e)) {
+                reservation.cancel();
+            }
+        });
+        if (reservation.getBookId() != IdGenerator.NO_ID) {
+            // a copy was returned since the first try
+            completeWhenDurable(reservation);
+        }
+        return reservation.future;
     }
 
+    /**
+     * Method that gives back a lent copy. When the book is reserved, the copy is lent to the first reservation
+     * @param id
+     * @return false if the copy doesn't exist or is not lent
+     */
     @Override
-    public synchronized BookDetails lendBook(SearchCriteria criteria, String person) throws BookNotExistException, BookAlreadyLentException {
-       String detailsId = bookDetailsDAO.getBookDetailsIdByParams(criteria);
-       if(isNull(detailsId)){
-           throw new BookNotExistException("This book doesn't exist in library");
-       }
+    public boolean returnBook(String id) {
+        PendingLend[] handedOver = new PendingLend[1];
+        boolean returned = bookDistributorDAO.tryReturnBook(IdGenerator.parse(id),
+                reservation -> handedOver[0] = (PendingLend) reservation);
+        awaitDurable();
+        if (!isNull(handedOver[0])) {
+            completeWhenDurable(handedOver[0]);
+        }
+        return returned;
+    }
 
-       List<Book> listOfBooks = bookDAO.getBookDistibutorsByBookDetail(detailsId);
-       Book bd = getFirstAvailableBook(listOfBooks);
+    /**
+     * Passes every following change of copies to the listener, in the order the changes of each copy happened.
+     * The listener is called under the lock of the book, so it must be fast and must not call back into the library
+     * @param listener
+     */
+    public void addChangeListener(Consumer<LogRecord> listener) {
+        changeListeners.add(listener);
+        bookDistributorDAO.setListener(new ChangeListener());
+    }
 
-        if (isNull(bd)) {
-            throw new BookAlreadyLentException("All books are currently lent");
+    public void removeChangeListener(Consumer<LogRecord> listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Publishes every following change of the library as an event, consumers subscribe to the returned stream.
+     * Events of each copy are published in the order the changes happened. Publishing waits while
+     * the slowest consumer is a whole buffer behind
+     * @param bufferSize number of events kept for consumers
+     * @param waitStrategy how consumers wait for events
+     * @return stream of the events
+     */
+    public EventStream enableEvents(int bufferSize, WaitStrategy waitStrategy) {
+        EventStream stream = new EventStream(bufferSize, waitStrategy);
+        events = stream;
+        bookDistributorDAO.setListener(new ChangeListener());
+        return stream;
+    }
+
+    /**
+     * Applies one change read from the write-ahead log or received from another library.
+     * Records of copies that were removed later are skipped
+     * @param record
+     */
+    public void apply(LogRecord record) {
+        BookDistributor bd = bookDistributorDAO.getBookDistributor(record.getBookId());
+        switch (record.getType()) {
+            case BOOK_ADDED:
+                if (isNull(bd)) {
+                    int bookDetailsId = bookDetailsDAO.retainBookDetails(record.getBookDetails());
+                    bookDistributorDAO.putBookDistributor(record.getBookId(), new BookDistributor(bookDetailsId));
+                }
+                break;
+            case BOOK_AVAILABLE:
+            case BOOK_LENT:
+                bookDistributorDAO.restoreBookState(record.getBookId(), record.getType() == LogRecord.Type.BOOK_LENT,
+                        record.getLastLenderName());
+                break;
+            case BOOK_REMOVED:
+                if (!isNull(bd)) {
+                    bookDistributorDAO.removeBook(record.getBookId());
+                    releaseBookDetails(bd.getBookDetailsId());
+                }
+                break;
+            case IDS_RESERVED:
+                bookDistributorDAO.reserveIds(record.getBookId());
+                break;
+        }
+    }
+
+    /**
+     * @return records that rebuild the current state of the library, used to compact the write-ahead log
+     * and to start a replica. The stream is lazy, copies changed while it is read may be seen in either state.
+     * It starts with the last id given out, removed copies are left out but their ids are not given out again
+     */
+    public Stream<LogRecord> getSnapshotRecords() {
+        LogRecord idsReserved = LogRecord.idsReserved(bookDistributorDAO.getLastCopyId());
+        return Stream.concat(Stream.of(idsReserved), bookDistributorDAO.getBookDistributorEntries()
+                .filter(e -> !e.getValue().isRemoved())
+                .flatMap(e -> {
+                    BookDistributor bd = e.getValue();
+                    BookDetails bookDetails = bookDetailsDAO.getBookDetailsById(bd.getBookDetailsId());
+                    if (isNull(bookDetails)) {
+                        return Stream.empty();
+                    }
+                    LogRecord added = LogRecord.bookAdded(e.getKey(), bookDetails);
+                    if (!bd.isLent() && isNull(bd.getLastLenderName())) {
+                        return Stream.of(added);
+                    }
+                    return Stream.of(added, toLogRecord(e.getKey(), bd));
+                }));
+    }
+
+    private static LogRecord toLogRecord(long id, BookDistributor bd) {
+        if (bd.isRemoved()) {
+            return LogRecord.bookRemoved(id);
+        }
+        if (bd.isLent()) {
+            return LogRecord.bookLent(id, bd.getLastLenderName());
+        }
+        return LogRecord.bookAvailable(id, bd.getLastLenderName());
+    }
+
+    /**
+     * Runs several changes and waits for the write-ahead log once, after the last of them.
+     * Records of one thread are written in order, so the last one being durable covers the whole batch.
+     * Futures of reservations lent a copy in the batch are completed on the executor
+     * @param batch
+     * @param executor
+     */
+    void applyBatch(Runnable batch, Executor executor) {
+        inBatch.set(true);
+        try {
+            batch.run();
+        } finally {
+            inBatch.set(false);
+        }
+        awaitDurable();
+        List<Runnable> completions = afterBatch.get();
+        if (!completions.isEmpty()) {
+            List<Runnable> current = new ArrayList<>(completions);
+            completions.clear();
+            for (Runnable complete : current) {
+                try {
+                    executor.execute(complete);
+                } catch (RejectedExecutionException e) {
+                    complete.run();
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases one copy of the book details and publishes TITLE_REMOVED when it was the last one
+     */
+    private void releaseBookDetails(int bookDetailsId) {
+        EventStream stream = events;
+        BookDetails bookDetails = isNull(stream) ? null : bookDetailsDAO.getBookDetailsById(bookDetailsId);
+        if (bookDetailsDAO.releaseBookDetails(bookDetailsId) && !isNull(stream)) {
+            stream.publish(LibraryEvent.Type.TITLE_REMOVED, IdGenerator.NO_ID, bookDetails, null);
+        }
+    }
+
+    private void awaitDurable() {
+        if (!isNull(writeAheadLog) && !inBatch.get()) {
+            writeAheadLog.awaitDurable();
+        }
+    }
+
+    /**
+     * Completes the future of the reservation once the lend is durable, at the end of the batch
+     * when the current thread applies one. A future cancelled in the meantime gives the copy back
+     */
+    private void completeWhenDurable(PendingLend reservation) {
+        long bookId = reservation.getBookId();
+        BookDistributor bd = bookDistributorDAO.getBookDistributor(bookId);
+        BookDetails bookDetails = isNull(bd) ? null : bookDetailsDAO.getBookDetailsById(bd.getBookDetailsId());
+        LendResult result = LendResult.lent(IdGenerator.format(bookId), bookDetails);
+        Runnable complete = () -> {
+            if (!reservation.future.complete(result)) {
+                returnBook(result.getBookId());
+            }
+        };
+        if (inBatch.get()) {
+            afterBatch.get().add(complete);
+        } else {
+            awaitDurable();
+            complete.run();
         }
+    }
 
-        bd.setLastLenderName(person);
-        bd.setLent(true);
+    private static BookDetails lent(LendResult result, String allLentMessage) throws BookAlreadyLentException, BookNotExistException {
+        switch (result.getStatus()) {
+            case LENT:
+                return result.getBookDetails();
+            case ALL_LENT:
+                throw new BookAlreadyLentException(allLentMessage);
+            default:
+                throw new BookNotExistException("This book doesn't exist in library");
+        }
+    }
 
-        return bookDetailsDAO.getBookDetailsById(bd.getBookDetailsId());
+    /**
+     * Reservation made by reserveBook, completed when a copy is lent to it
+     */
+    private static class PendingLend extends Reservation {
+        private final CompletableFuture<LendResult> future = new CompletableFuture<>();
+
+        PendingLend(String person) {
+            super(person);
+        }
     }
 
-    private Book getFirstAvailableBook(List<Book> list){
-        Optional<Book> available = list.stream().filter(b -> !b.isLent()).findFirst();
-        if(!isNull(available)){
-          return available.get();
+    /**
+     * Appends every change of copies to the write-ahead log, passes it to the change listeners
+     * and publishes it as an event
+     */
+    private class ChangeListener implements BookDistributorListener {
+
+        @Override
+        public void bookAdded(long id, BookDistributor bookDistributor) {
+            changed(LogRecord.bookAdded(id, bookDetailsDAO.getBookDetailsById(bookDistributor.getBookDetailsId())), bookDistributor);
         }
-        else{
-            return null;
+
+        @Override
+        public void bookStateChanged(long id, BookDistributor bookDistributor) {
+            changed(toLogRecord(id, bookDistributor), bookDistributor);
+        }
+
+        private void changed(LogRecord record, BookDistributor bookDistributor) {
+            if (!isNull(writeAheadLog)) {
+                writeAheadLog.append(record);
+            }
+            for (Consumer<LogRecord> listener : changeListeners) {
+                listener.accept(record);
+            }
+            EventStream stream = events;
+            if (!isNull(stream)) {
+                BookDetails bookDetails = record.getType() == LogRecord.Type.BOOK_ADDED
+                        ? record.getBookDetails() : bookDetailsDAO.getBookDetailsById(bookDistributor.getBookDetailsId());
+                stream.publish(toEventType(record.getType()), record.getBookId(), bookDetails, record.getLastLenderName());
+            }
+        }
+    }
+
+    private static LibraryEvent.Type toEventType(LogRecord.Type type) {
+        switch (type) {
+            case BOOK_ADDED:
+                return LibraryEvent.Type.BOOK_ADDED;
+            case BOOK_LENT:
+                return LibraryEvent.Type.BOOK_LENT;
+            case BOOK_AVAILABLE:
+                return LibraryEvent.Type.BOOK_RETURNED;
+            default:
+                return LibraryEvent.Type.BOOK_REMOVED;
+        }
+    }
+
+    /**
+     * Called when the state change of a copy lost the race with another thread.
+     * The copy is read again, the one read before the change may be out of date
+     * @param bookId
+     * @throws BookNotExistException when the copy was removed in the meantime
+     * @throws BookAlreadyLentException when the copy is lent
+     */
+    private void throwBecauseNotAvailable(long bookId) throws BookNotExistException, BookAlreadyLentException {
+        BookDistributor bd = bookDistributorDAO.getBookDistributor(bookId);
+        if (isNull(bd) || bd.isRemoved()) {
+            throw new BookNotExistException("This book doesn't exist in library");
         }
+        throw new BookAlreadyLentException("This book is currently lent");
     }
 
 }
@@ -0,0 +1,386 @@
+package library;
+
+import library.dao.IdGenerator;
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.io.BookCsvReader;
+import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.search.MatchMode;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.SearchCriteria;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Library that splits books between several libraries by the hash of the title, so every copy of a title
+ * is kept by one shard. Shards may be LibraryManagers in this process or RemoteLibraries in other ones.
+ * The id of a copy is the id given by its shard times the number of shards plus the number of the shard,
+ * so operations on one copy go straight to its shard. Operations on an exact title go to one shard,
+ * other searches ask all shards in parallel and return the results shard by shard.
+ */
+public class ShardedLibrary implements Library, Closeable {
+
+    private final static int IMPORT_CHUNK_SIZE = 64 * 1024;
+
+    private final List<Library> shards;
+    private final ExecutorService executor;
+
+    /**
+     * @param shards libraries that keep the books, the same shards must always be passed in the same order
+     */
+    public ShardedLibrary(List<? extends Library> shards) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.shards = new ArrayList<>(shards);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "library-shard-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @param shardCount
+     * @return library split between new LibraryManagers in this process
+     */
+    public static ShardedLibrary inProcess(int shardCount) {
+        List<Library> shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new LibraryManager());
+        }
+        return new ShardedLibrary(shards);
+    }
+
+    @Override
+    public String addNewBook(String title, String author, Integer year) {
+        int shard = shardOf(title);
+        return globalId(shards.get(shard).addNewBook(title, author, year), shard);
+    }
+
+    @Override
+    public long importBooks(Iterator<BookDetails> books) {
+        long imported = 0;
+        List<List<BookDetails>> chunks = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            chunks.add(new ArrayList<>());
+        }
+        int chunkSize = 0;
+        while (books.hasNext()) {
+            BookDetails bookDetails = books.next();
+            chunks.get(shardOf(bookDetails.getTitle())).add(bookDetails);
+            if (++chunkSize == IMPORT_CHUNK_SIZE) {
+                imported += importChunks(chunks);
+                chunkSize = 0;
+            }
+        }
+        return imported + importChunks(chunks);
+    }
+
+    @Override
+    public long importBooks(Stream<BookDetails> books) {
+        return importBooks(books.iterator());
+    }
+
+    @Override
+    public long importBooks(Path csvFile) throws IOException {
+        try (BookCsvReader reader = new BookCsvReader(csvFile)) {
+            return importBooks(reader);
+        }
+    }
+
+    @Override
+    public BookDetails getBookById(String id) throws BookNotExistException {
+        long globalId = parseId(id);
+        return shardOf(globalId).getBookById(localId(globalId));
+    }
+
+    @Override
+    public List<BookDetails> getAllBookDetails() {
+        return gather(allShards(), shard -> shards.get(shard).getAllBookDetails());
+    }
+
+    @Override
+    public Stream<BookDetails> streamAllBookDetails() {
+        return shards.stream().flatMap(Library::streamAllBookDetails);
+    }
+
+    @Override
+    public List<BookInventory> getInventory() {
+        return gather(allShards(), shard -> shards.get(shard).getInventory());
+    }
+
+    @Override
+    public void displayAllBooksInformation() {
+        shards.forEach(Library::displayAllBooksInformation);
+    }
+
+    @Override
+    public void displayBookInformation(String id) throws BookNotExistException {
+        long globalId = parseId(id);
+        shardOf(globalId).displayBookInformation(localId(globalId));
+    }
+
+    @Override
+    public List<BookDetails> getBookListByCriteria(SearchCriteria criteria) {
+        return gather(shardsFor(criteria), shard -> shards.get(shard).getBookListByCriteria(criteria));
+    }
+
+    @Override
+    public Stream<BookDetails> streamBookListByCriteria(SearchCriteria criteria) {
+        return shardsFor(criteria).stream().flatMap(shard -> shards.get(shard).streamBookListByCriteria(criteria));
+    }
+
+    @Override
+    public Stream<BookDetails> streamBookDetailsByCriteria(SearchCriteria criteria) {
+        return shardsFor(criteria).stream().flatMap(shard -> shards.get(shard).streamBookDetailsByCriteria(criteria));
+    }
+
+    /**
+     * Shards are paged one after another. The cursor is the number of the shard
+     * and the cursor of that shard, separated by a slash.
+     */
+    @Override
+    public Page<BookDetails> getBookPageByCriteria(SearchCriteria criteria, PageRequest pageRequest) {
+        int shard = 0;
+        String shardCursor = null;
+        if (!isNull(pageRequest.getCursor())) {
+            int separator = pageRequest.getCursor().indexOf('/');
+            try {
+                shard = Integer.parseInt(pageRequest.getCursor().substring(0, Math.max(separator, 0)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor " + pageRequest.getCursor());
+            }
+            shardCursor = separator + 1 < pageRequest.getCursor().length() ? pageRequest.getCursor().substring(separator + 1) : null;
+        }
+        List<Integer> candidates = shardsFor(criteria);
+        List<BookDetails> items = new ArrayList<>(pageRequest.getPageSize());
+        for (int shardNumber : candidates) {
+            if (shardNumber < shard) {
+                continue;
+            }
+            PageRequest shardRequest = new PageRequest(pageRequest.getPageSize() - items.size());
+            shardRequest.setDistinct(pageRequest.isDistinct());
+            shardRequest.setCursor(shardNumber == shard ? shardCursor : null);
+            Page<BookDetails> page = shards.get(shardNumber).getBookPageByCriteria(criteria, shardRequest);
+            items.addAll(page.getItems());
+            if (page.hasNext()) {
+                return new Page<>(items, shardNumber + "/" + page.getNextCursor());
+            }
+            if (items.size() == pageRequest.getPageSize()) {
+                int next = candidates.indexOf(shardNumber) + 1;
+                return next == candidates.size() ? new Page<>(items, null) : new Page<>(items, candidates.get(next) + "/");
+            }
+        }
+        return new Page<>(items, null);
+    }
+
+    @Override
+    public void removeBook(String id) throws BookNotExistException, BookAlreadyLentException {
+        long globalId = parseId(id);
+        shardOf(globalId).removeBook(localId(globalId));
+    }
+
+    @Override
+    public BookDetails lendBook(String id, String person) throws BookAlreadyLentException, BookNotExistException {
+        long globalId = parseId(id);
+        return shardOf(globalId).lendBook(localId(globalId), person);
+    }
+
+    @Override
+    public BookDetails lendBook(SearchCriteria criteria, String person) throws BookAlreadyLentException, BookNotExistException {
+        LendResult result = tryLendBook(criteria, person);
+        if (result.getStatus() == LendResult.Status.ALL_LENT) {
+            throw new BookAlreadyLentException("All books are currently lent");
+        }
+        if (result.getStatus() == LendResult.Status.NOT_FOUND) {
+            throw new BookNotExistException("This book doesn't exist in library");
+        }
+        return result.getBookDetails();
+    }
+
+    @Override
+    public LendResult tryLendBook(String id, String person) {
+        long globalId = IdGenerator.parse(id);
+        if (globalId == IdGenerator.NO_ID) {
+            return LendResult.notFound();
+        }
+        return toGlobal(shardOf(globalId).tryLendBook(localId(globalId), person), (int) (globalId % shards.size()));
+    }
+
+    /**
+     * Shards are tried one after another, starting from a random one so concurrent lends don't all queue on the first
+     */
+    @Override
+    public LendResult tryLendBook(SearchCriteria criteria, String person) {
+        List<Integer> candidates = shardsFor(criteria);
+        int start = ThreadLocalRandom.current().nextInt(candidates.size());
+        boolean anyLent = false;
+        for (int i = 0; i < candidates.size(); i++) {
+            int shard = candidates.get((start + i) % candidates.size());
+            LendResult result = shards.get(shard).tryLendBook(criteria, person);
+            if (result.isLent()) {
+                return toGlobal(result, shard);
+            }
+            anyLent |= result.getStatus() == LendResult.Status.ALL_LENT;
+        }
+        return anyLent ? LendResult.allLent() : LendResult.notFound();
+    }
+
+    /**
+     * Shards are tried like tryLendBook. When all copies are lent, the book is reserved on the first shard tried
+     * that has copies, so the reservation waits for copies of that shard only
+     */
+    @Override
+    public CompletableFuture<LendResult> reserveBook(SearchCriteria criteria, String person) {
+        List<Integer> candidates = shardsFor(criteria);
+        int start = ThreadLocalRandom.current().nextInt(candidates.size());
+        int reserveOn = -1;
+        for (int i = 0; i < candidates.size(); i++) {
+            int shard = candidates.get((start + i) % candidates.size());
+            LendResult result = shards.get(shard).tryLendBook(criteria, person);
+            if (result.isLent()) {
+                return CompletableFuture.completedFuture(toGlobal(result, shard));
+            }
+            if (reserveOn < 0 && result.getStatus() == LendResult.Status.ALL_LENT) {
+                reserveOn = shard;
+            }
+        }
+        if (reserveOn < 0) {
+            return CompletableFuture.completedFuture(LendResult.notFound());
+        }
+        int shard = reserveOn;
+        CompletableFuture<LendResult> reservation = shards.get(shard).reserveBook(criteria, person);
+        CompletableFuture<LendResult> future = reservation.thenApply(result -> toGlobal(result, shard));
+        future.whenComplete((lent, e) -> {
+            if (e instanceof CancellationException && !reservation.cancel(false)) {
+                // cancelled after the copy was lent
+                LendResult result = reservation.isCompletedExceptionally() ? null : reservation.getNow(null);
+                if (!isNull(result) && result.isLent()) {
+                    shards.get(shard).returnBook(result.getBookId());
+                }
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public boolean returnBook(String id) {
+        long globalId = IdGenerator.parse(id);
+        return globalId != IdGenerator.NO_ID && shardOf(globalId).returnBook(localId(globalId));
+    }
+
+    /**
+     * Stops the threads of the library and closes the shards that can be closed
+     */
+    @Override
+    public void close() throws IOException {
+        executor.shutdown();
+        for (Library shard : shards) {
+            if (shard instanceof Closeable) {
+                ((Closeable) shard).close();
+            }
+        }
+    }
+
+    private long importChunks(List<List<BookDetails>> chunks) {
+        List<Integer> nonEmpty = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            if (!chunks.get(i).isEmpty()) {
+                nonEmpty.add(i);
+            }
+        }
+        long imported = gather(nonEmpty, shard -> Collections.singletonList(shards.get(shard).importBooks(chunks.get(shard).stream())))
+                .stream().mapToLong(Long::longValue).sum();
+        chunks.forEach(List::clear);
+        return imported;
+    }
+
+    /**
+     * Calls the shards in parallel and concatenates the results in the order of the shards
+     */
+    private <T> List<T> gather(List<Integer> shardNumbers, IntFunction<List<T>> call) {
+        if (shardNumbers.size() == 1) {
+            return call.apply(shardNumbers.get(0));
+        }
+        List<CompletableFuture<List<T>>> results = shardNumbers.stream()
+                .map(shard -> CompletableFuture.supplyAsync(() -> call.apply(shard), executor))
+                .collect(Collectors.toList());
+        List<T> gathered = new ArrayList<>();
+        try {
+            results.forEach(result -> gathered.addAll(result.join()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return gathered;
+    }
+
+    /**
+     * @return numbers of the shards that can have books matching the criteria, only one for an exact title
+     */
+    private List<Integer> shardsFor(SearchCriteria criteria) {
+        if (!isNull(criteria.getTitle()) && criteria.getTitleMatchMode() == MatchMode.EXACT) {
+            return Collections.singletonList(shardOf(criteria.getTitle()));
+        }
+        return allShards();
+    }
+
+    private List<Integer> allShards() {
+        List<Integer> all = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            all.add(i);
+        }
+        return all;
+    }
+
+    private int shardOf(String title) {
+        int hash = isNull(title) ? 0 : title.hashCode();
+        return (hash & 0x7fffffff) % shards.size();
+    }
+
+    private Library shardOf(long globalId) {
+        return shards.get((int) (globalId % shards.size()));
+    }
+
+    private String localId(long globalId) {
+        return IdGenerator.format(globalId / shards.size());
+    }
+
+    private String globalId(String localId, int shard) {
+        return IdGenerator.format(IdGenerator.parse(localId) * shards.size() + shard);
+    }
+
+    private LendResult toGlobal(LendResult result, int shard) {
+        return result.isLent() ? LendResult.lent(globalId(result.getBookId(), shard), result.getBookDetails()) : result;
+    }
+
+    private static long parseId(String id) throws BookNotExistException {
+        long globalId = IdGenerator.parse(id);
+        if (globalId == IdGenerator.NO_ID) {
+            throw new BookNotExistException("This book doesn't exist in library");
+        }
+        return globalId;
+    }
+}
@@ -0,0 +1,99 @@
+package library.dao;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Columns of the catalog, one row per book details. Title and author are stored as dictionary codes
+ * and the year as a primitive, so a row takes four ints instead of a BookDetails with its own Strings
+ * and a boxed Integer. Rows are kept in fixed size pages, growing the catalog never copies existing rows.
+ * Row numbers are never reused. A row is live while it has references, the reference count
+ * is the only column written after the row is added and is read with volatile semantics.
+ */
+class BookCatalog {
+
+    static final int NO_YEAR = Integer.MIN_VALUE;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private volatile Page[] pages = new Page[1];
+
+    /**
+     * Writes a new row and makes it live. The row number must not have been used before.
+     * @param row
+     * @param title
+     * @param author
+     * @param year
+     * @param references
+     */
+    void add(int row, int title, int author, int year, int references){
+        Page page = page(row);
+        int i = row & (PAGE_SIZE - 1);
+        page.titles[i] = title;
+        page.authors[i] = author;
+        page.years[i] = year;
+        // publishes the columns written above
+        page.references.set(i, references);
+    }
+
+    boolean isLive(int row){
+        Page page = pageIfPresent(row);
+        return !isNull(page) && page.references.get(row & (PAGE_SIZE - 1)) > 0;
+    }
+
+    int getTitle(int row){
+        return pageIfPresent(row).titles[row & (PAGE_SIZE - 1)];
+    }
+
+    int getAuthor(int row){
+        return pageIfPresent(row).authors[row & (PAGE_SIZE - 1)];
+    }
+
+    int getYear(int row){
+        return pageIfPresent(row).years[row & (PAGE_SIZE - 1)];
+    }
+
+    int getReferences(int row){
+        Page page = pageIfPresent(row);
+        return isNull(page) ? 0 : page.references.get(row & (PAGE_SIZE - 1));
+    }
+
+    /**
+     * Sets the reference count of a live row, 0 makes the row dead for good
+     * @param row
+     * @param references
+     */
+    void setReferences(int row, int references){
+        pageIfPresent(row).references.set(row & (PAGE_SIZE - 1), Math.max(references, 0));
+    }
+
+    private Page pageIfPresent(int row){
+        Page[] current = pages;
+        int page = row >>> PAGE_BITS;
+        return row > 0 && page < current.length ? current[page] : null;
+    }
+
+    private synchronized Page page(int row){
+        int page = row >>> PAGE_BITS;
+        Page[] current = pages;
+        if(page >= current.length){
+            Page[] grown = new Page[Math.max(page + 1, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        }
+        if(isNull(current[page])){
+            current[page] = new Page();
+        }
+        pages = current;
+        return current[page];
+    }
+
+    private static class Page {
+        private final int[] titles = new int[PAGE_SIZE];
+        private final int[] authors = new int[PAGE_SIZE];
+        private final int[] years = new int[PAGE_SIZE];
+        private final AtomicIntegerArray references = new AtomicIntegerArray(PAGE_SIZE);
+    }
+}
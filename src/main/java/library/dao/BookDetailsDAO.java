@@ -1,10 +1,23 @@
 package library.dao;
 
 import library.model.BookDetails;
+import library.search.BitmapQuery;
+import library.search.BitmapSource;
+import library.search.CacheStats;
+import library.search.CompressedBitmap;
+import library.search.CriteriaKey;
+import library.search.InvertedIndex;
+import library.search.MatchMode;
+import library.search.QueryEngine;
+import library.search.ResultCache;
 import library.search.SearchCriteria;
+import library.search.TextQuery;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.util.Objects.isNull;
@@ -12,53 +25,338 @@ import static java.util.Objects.isNull;
 
 public class BookDetailsDAO {
 
-    private Map<String, BookDetails> mapOfBookDetails = new HashMap<>();
+    public static final int NO_ID = -1;
 
-    public String addBookDetail(BookDetails bookDetails){
-        String id = UUID.randomUUID().toString();
-        mapOfBookDetails.put(id, bookDetails);
-        return id;
+    private static final int LOCK_STRIPES = 64;
+
+    private AtomicInteger lastId = new AtomicInteger();
+
+    /**
+     * Grows after every book details added or removed, the only changes that change which details match criteria
+     */
+    private AtomicLong version = new AtomicLong();
+
+    /**
+     * Optional cache of matching ids, for criteria without extra filters
+     */
+    private volatile ResultCache<CriteriaKey, int[]> resultCache;
+
+    /**
+     * Book details stored by column with titles and authors dictionary encoded, the id of the details
+     * is its row. BookDetails objects are only built when they are asked for.
+     * Details are dropped as soon as the last copy is released.
+     */
+    private BookCatalog catalog = new BookCatalog();
+    private StringDictionary titles = new StringDictionary();
+    private StringDictionary authors = new StringDictionary();
+
+    /**
+     * Bitmaps of the ids of the book details by title code, author code and year
+     */
+    private QueryEngine queryEngine = new QueryEngine();
+
+    /**
+     * Words of titles and authors for criteria that don't match the whole field exactly
+     */
+    private InvertedIndex textIndexByTitle = new InvertedIndex();
+    private InvertedIndex textIndexByAuthor = new InvertedIndex();
+
+    /**
+     * Retaining and releasing the same book details is serialized on one of these locks, chosen by the title,
+     * so a copy added concurrently with removal of the last copy never points at dropped details.
+     */
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    public BookDetailsDAO(){
+        for(int i = 0; i < LOCK_STRIPES; i++){
+            locks[i] = new Object();
+        }
     }
 
-    public BookDetails getBookDetailsById(String id){
-        return mapOfBookDetails.get(id);
+    /**
+     * Caches ids of book details matching criteria, entries are dropped as soon as details are added or removed
+     * @param maximumWeight maximum number of cached ids
+     */
+    public void enableResultCache(long maximumWeight){
+        resultCache = new ResultCache<>(maximumWeight, ids -> ids.length);
     }
 
-    public List<BookDetails> getAllBookDetails(){
-        return mapOfBookDetails.values().stream().collect(Collectors.toList());
+    /**
+     * @return statistics of the result cache or null if it is not enabled
+     */
+    public CacheStats getResultCacheStats(){
+        ResultCache<CriteriaKey, int[]> cache = resultCache;
+        return isNull(cache) ? null : cache.getStats();
     }
 
-    public String getBookDetailsIdByParams(SearchCriteria criteria){
-        Optional<Map.Entry<String, BookDetails>> result = getBookDetailsByParams(criteria);
-        if(result.isPresent()){
-            return result.get().getKey();
+    /**
+     * @param id
+     * @return view of the book details or null if there are no such details
+     */
+    public BookDetails getBookDetailsById(int id){
+        if(!catalog.isLive(id)){
+            return null;
         }
-        else{
+        String title = titles.valueOf(catalog.getTitle(id));
+        String author = authors.valueOf(catalog.getAuthor(id));
+        int year = catalog.getYear(id);
+        // the codes could have been released if the details were removed in the meantime
+        if(!catalog.isLive(id)){
             return null;
         }
+        return new BookDetails(title, author, year == BookCatalog.NO_YEAR ? null : year);
+    }
+
+    public List<BookDetails> getAllBookDetails(){
+        return streamAllBookDetails().collect(Collectors.toList());
+    }
+
+    /**
+     * @return lazy stream of all book details, ordered by id
+     */
+    public Stream<BookDetails> streamAllBookDetails(){
+        return IntStream.rangeClosed(1, lastId.get())
+                .mapToObj(this::getBookDetailsById)
+                .filter(Objects::nonNull);
+    }
+
+    /**
+     * @param criteria
+     * @param filters sets of ids the result must be in, e.g. books that have available copies
+     * @return id of the first matching book details or NO_ID
+     */
+    public int getBookDetailsIdByParams(SearchCriteria criteria, BitmapSource... filters){
+        return matching(criteria, 1, filters).findFirst().orElse(NO_ID);
+    }
+
+    public Optional<Map.Entry<Integer, BookDetails>> getBookDetailsByParams(SearchCriteria criteria){
+        return matching(criteria, 1)
+                .mapToObj(id -> new AbstractMap.SimpleImmutableEntry<>(id, getBookDetailsById(id)))
+                .filter(e -> !isNull(e.getValue()))
+                .<Map.Entry<Integer, BookDetails>>map(e -> e)
+                .findFirst();
+    }
+
+    /**
+     * @param criteria
+     * @param filters sets of ids the result must be in
+     * @return ids of all matching book details
+     */
+    public int[] getBookDetailsIdsByParams(SearchCriteria criteria, BitmapSource... filters){
+        return matching(criteria, 1, filters).toArray();
+    }
+
+    /**
+     * @param criteria
+     * @param fromId smallest id to return
+     * @param filters sets of ids the result must be in
+     * @return lazy stream of ids of matching book details in ascending order, starting at fromId
+     */
+    public IntStream streamBookDetailsIdsByParams(SearchCriteria criteria, int fromId, BitmapSource... filters){
+        return matching(criteria, Math.max(fromId, 1), filters);
+    }
+
+    /**
+     * Registers one more copy of the book details, adding the details if it is the first copy
+     * @param bookDetails
+     * @return id of the book details
+     */
+    public int retainBookDetails(BookDetails bookDetails){
+        return retainBookDetails(bookDetails, 1);
+    }
+
+    /**
+     * Registers several copies of the book details at once
+     * @param bookDetails
+     * @param copies
+     * @return id of the book details
+     */
+    public int retainBookDetails(BookDetails bookDetails, int copies){
+        synchronized (lockFor(bookDetails.getTitle())) {
+            int id = findExact(bookDetails);
+            if(id != NO_ID){
+                catalog.setReferences(id, catalog.getReferences(id) + copies);
+                return id;
+            }
+            id = lastId.incrementAndGet();
+            addRow(id, bookDetails, copies);
+            return id;
+        }
+    }
+
+    /**
+     * Adds details under an id they had before, e.g. in a snapshot. The details must not be in the catalog yet
+     * @param id
+     * @param bookDetails
+     * @param references number of copies of the details
+     */
+    void restoreBookDetails(int id, BookDetails bookDetails, int references){
+        synchronized (lockFor(bookDetails.getTitle())) {
+            lastId.accumulateAndGet(id, Math::max);
+            addRow(id, bookDetails, references);
+        }
+    }
+
+    /**
+     * @return the highest id of book details so far
+     */
+    int getLastId(){
+        return lastId.get();
     }
 
-    public Optional<Map.Entry<String, BookDetails>> getBookDetailsByParams(SearchCriteria criteria){
+    /**
+     * @param id
+     * @return number of copies of the details, 0 if there are no such details
+     */
+    int getReferences(int id){
+        return catalog.getReferences(id);
+    }
 
-        Stream<Map.Entry<String, BookDetails>> resultStream = mapOfBookDetails.entrySet().stream();
+    /**
+     * Unregisters one copy of the book details and removes the details when no copy is left
+     * @param id
+     * @return true if the details were removed
+     */
+    public boolean releaseBookDetails(int id){
+        if(!catalog.isLive(id)){
+            return false;
+        }
+        synchronized (lockFor(titles.valueOf(catalog.getTitle(id)))) {
+            if(!catalog.isLive(id)){
+                return false;
+            }
+            int references = catalog.getReferences(id) - 1;
+            if(references <= 0){
+                removeBookDetails(id);
+                return true;
+            }
+            catalog.setReferences(id, references);
+            return false;
+        }
+    }
 
-         if(!isNull(criteria.getTitle())){
-           resultStream =  resultStream.filter(b -> b.getValue().getTitle().equals(criteria.getTitle()));
-         }
+    public void removeBookDetails(int id){
+        if(!catalog.isLive(id)){
+            return;
+        }
+        synchronized (lockFor(titles.valueOf(catalog.getTitle(id)))) {
+            if(!catalog.isLive(id)){
+                return;
+            }
+            int title = catalog.getTitle(id);
+            int author = catalog.getAuthor(id);
+            // the row is dead before its codes are released, see getBookDetailsById
+            catalog.setReferences(id, 0);
+            queryEngine.remove(id, title, author, catalog.getYear(id));
+            textIndexByTitle.remove(id, titles.valueOf(title));
+            textIndexByAuthor.remove(id, authors.valueOf(author));
+            titles.release(title);
+            authors.release(author);
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Takes the ids from the result cache when it is enabled and there are no extra filters, otherwise selects them
+     */
+    private IntStream matching(SearchCriteria criteria, int fromId, BitmapSource... filters){
+        ResultCache<CriteriaKey, int[]> cache = resultCache;
+        if(!isNull(cache) && filters.length == 0){
+            int[] ids = cache.get(CriteriaKey.of(criteria), version.get(), () -> select(criteria, 1).toArray());
+            int start = Arrays.binarySearch(ids, fromId);
+            // a removal may not have bumped the version yet
+            return Arrays.stream(ids, start >= 0 ? start : -start - 1, ids.length).filter(catalog::isLive);
+        }
+        return select(criteria, fromId, filters);
+    }
+
+    /**
+     * Resolves the Strings of the criteria to codes once and selects the ids from the bitmap indexes.
+     * Fields that are not matched exactly are looked up in the text indexes and checked on the candidates only.
+     * Candidates are in ascending order of id, so a page of results starts where the previous one stopped.
+     */
+    private IntStream select(SearchCriteria criteria, int fromId, BitmapSource... filters){
+        boolean exactTitle = criteria.getTitleMatchMode() == MatchMode.EXACT;
+        boolean exactAuthor = criteria.getAuthorMatchMode() == MatchMode.EXACT;
+        int title = exactTitle ? titles.codeOf(criteria.getTitle()) : StringDictionary.NULL_CODE;
+        int author = exactAuthor ? authors.codeOf(criteria.getAuthor()) : StringDictionary.NULL_CODE;
+        if(title == StringDictionary.NO_CODE || author == StringDictionary.NO_CODE){
+            return IntStream.empty();
+        }
+        TextQuery titleQuery = exactTitle || isNull(criteria.getTitle()) ? null : new TextQuery(criteria.getTitle(), criteria.getTitleMatchMode());
+        TextQuery authorQuery = exactAuthor || isNull(criteria.getAuthor()) ? null : new TextQuery(criteria.getAuthor(), criteria.getAuthorMatchMode());
+
+        BitmapQuery query = new BitmapQuery();
+        if(!isNull(criteria.getTitle())){
+            if(exactTitle){
+                query.setTitle(title);
+            }
+            else{
+                query.addOperand(BitmapSource.of(CompressedBitmap.of(textIndexByTitle.search(titleQuery))));
+            }
+        }
         if(!isNull(criteria.getAuthor())){
-            resultStream =  resultStream.filter(b -> b.getValue().getAuthor().equals(criteria.getAuthor()));
+            if(exactAuthor){
+                query.setAuthor(author);
+            }
+            else{
+                query.addOperand(BitmapSource.of(CompressedBitmap.of(textIndexByAuthor.search(authorQuery))));
+            }
         }
+        Integer yearFrom = criteria.getYearFrom();
+        Integer yearTo = criteria.getYearTo();
         if(!isNull(criteria.getYear())){
-            resultStream =  resultStream.filter(b -> b.getValue().getYear().equals(criteria.getYear()));
+            yearFrom = isNull(yearFrom) ? criteria.getYear() : Math.max(yearFrom, criteria.getYear());
+            yearTo = isNull(yearTo) ? criteria.getYear() : Math.min(yearTo, criteria.getYear());
         }
-        return resultStream.findFirst();
+        query.setYearRange(yearFrom, yearTo);
+        for(BitmapSource filter : filters){
+            query.addOperand(filter);
+        }
+
+        CompressedBitmap selected = queryEngine.select(query);
+        IntStream candidates = isNull(selected) ? IntStream.rangeClosed(fromId, lastId.get()) : selected.stream(fromId);
+        // ids of details removed after the selection are still in it
+        return candidates.filter(id -> catalog.isLive(id)
+                && (isNull(authorQuery) || authorQuery.matches(authors.valueOf(catalog.getAuthor(id))))
+                && (isNull(titleQuery) || titleQuery.matches(titles.valueOf(catalog.getTitle(id)))));
+    }
+
+    /**
+     * Must be called under the lock of the title
+     */
+    private void addRow(int id, BookDetails bookDetails, int references){
+        int title = titles.retain(bookDetails.getTitle());
+        int author = authors.retain(bookDetails.getAuthor());
+        int year = isNull(bookDetails.getYear()) ? BookCatalog.NO_YEAR : bookDetails.getYear();
+        catalog.add(id, title, author, year, references);
+        queryEngine.add(id, title, author, year);
+        textIndexByTitle.add(id, bookDetails.getTitle());
+        textIndexByAuthor.add(id, bookDetails.getAuthor());
+        version.incrementAndGet();
     }
 
-    public Set<String> getKeys(){
-        return mapOfBookDetails.keySet();
+    /**
+     * Must be called under the lock of the title
+     * @return id of the details with exactly the same fields or NO_ID
+     */
+    private int findExact(BookDetails bookDetails){
+        int title = titles.codeOf(bookDetails.getTitle());
+        int author = authors.codeOf(bookDetails.getAuthor());
+        if(title == StringDictionary.NO_CODE || author == StringDictionary.NO_CODE){
+            return NO_ID;
+        }
+        int year = isNull(bookDetails.getYear()) ? BookCatalog.NO_YEAR : bookDetails.getYear();
+        BitmapQuery query = new BitmapQuery();
+        query.setTitle(title);
+        query.setAuthor(author);
+        query.setYearRange(year, year);
+        return queryEngine.select(query).stream(1).filter(catalog::isLive).findFirst().orElse(NO_ID);
     }
 
-    public void removeBookDetails(String id){
-        mapOfBookDetails.remove(id);
+    private Object lockFor(String title){
+        int hash = isNull(title) ? 0 : title.hashCode();
+        return locks[(hash & 0x7fffffff) % LOCK_STRIPES];
     }
+
 }
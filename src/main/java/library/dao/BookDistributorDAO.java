@@ -1,47 +1,737 @@
 package library.dao;
 
 import library.model.BookDistributor;
+import library.search.BitmapSource;
+import library.search.ConcurrentBitmap;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static java.util.Objects.isNull;
 
 public class BookDistributorDAO {
 
-    private Map<String, BookDistributor> mapOfBook = new HashMap<>();
+    private static final int NO_LENDER = -1;
+
+    private IdGenerator idGenerator = new IdGenerator();
+
+    /**
+     * Book details, state and last lender of every copy, packed by copy id
+     */
+    private CopyTable copyTable = new CopyTable();
+
+    /**
+     * Names of lenders, stored in the copy table as codes
+     */
+    private StringDictionary lenders = new StringDictionary();
+
+    /**
+     * bookDetailsId -> ids of all copies of that book and ids of copies that are not lent.
+     * Copies of one book are only changed under the lock of its BookCopies, so updates of one title
+     * are serialized while different titles don't block each other.
+     */
+    private ConcurrentLongMap<BookCopies> copiesByBookDetails = new ConcurrentLongMap<>();
+
+    /**
+     * Ids of book details that have at least one available copy, changed with the counters of the book
+     */
+    private ConcurrentBitmap availableBooks = new ConcurrentBitmap();
+
+    /**
+     * Ids of book details that have at least one copy, needed when the book details are shared with other libraries
+     */
+    private ConcurrentBitmap heldBooks = new ConcurrentBitmap();
+
+    /**
+     * Grow after every change of the number of copies and of the number of available copies of any book,
+     * so cached results that depend on them can tell they are out of date
+     */
+    private AtomicLong copiesVersion = new AtomicLong();
+    private AtomicLong availabilityVersion = new AtomicLong();
+
+    private volatile BookDistributorListener listener = BookDistributorListener.NONE;
+    private volatile AvailabilityListener availabilityListener;
+
+    /**
+     * Copies restored from a mapped snapshot, copies of a book are read from it the first time the book is used.
+     * A book details id is set in unloaded until then, and its counters are taken from the snapshot.
+     */
+    private volatile MappedSnapshot.Copies snapshot;
+    private AtomicIntegerArray unloaded;
+
+    /**
+     * Callback of forEachBookCounts
+     */
+    public interface BookCountsConsumer {
+        void accept(int bookDetailsId, int available, int lent);
+    }
+
+    /**
+     * Gets notified when a book gets its first available copy or loses its last one.
+     * Called under the lock of the book in the order the changes happened, so it must be fast
+     */
+    public interface AvailabilityListener {
+        void availabilityChanged(int bookDetailsId, boolean available);
+    }
+
+    public void setAvailabilityListener(AvailabilityListener availabilityListener){
+        this.availabilityListener = availabilityListener;
+    }
+
+    public void setListener(BookDistributorListener listener){
+        this.listener = isNull(listener) ? BookDistributorListener.NONE : listener;
+    }
 
     public List<BookDistributor> getAllBookDistributors(){
-        return mapOfBook.values().stream().collect(Collectors.toList());
+        return getBookDistributorEntries().map(Map.Entry::getValue).collect(Collectors.toList());
     }
 
-    public String addBookDistributor(BookDistributor bookDistributor){
-        String id = UUID.randomUUID().toString();
-        mapOfBook.put(id, bookDistributor);
+    public long addBookDistributor(BookDistributor bookDistributor){
+        long id = idGenerator.nextId();
+        putBookDistributor(id, bookDistributor);
         return id;
     }
 
-    public BookDistributor getBookDistributor(String id){
-        return mapOfBook.get(id);
+    /**
+     * Adds a copy under an already known id, e.g. when the library is restored
+     * @param id
+     * @param bookDistributor
+     */
+    public void putBookDistributor(long id, BookDistributor bookDistributor){
+        idGenerator.reserve(id);
+        int state = bookDistributor.isLent() ? CopyTable.LENT : CopyTable.AVAILABLE;
+        copyTable.add(id, bookDistributor.getBookDetailsId(), CopyTable.pack(state, lenderCode(bookDistributor.getLastLenderName())));
+        withCopies(bookDistributor.getBookDetailsId(), true, copies -> {
+            copies.all.add(id);
+            notifyAdded(id);
+            updateAvailability(copies, id);
+            return null;
+        });
+    }
+
+    /**
+     * Adds several available copies of one book, updating the indexes of the book once
+     * @param bookDetailsId
+     * @param count
+     */
+    public void addBookDistributors(int bookDetailsId, int count){
+        long firstId = idGenerator.nextIds(count);
+        for(long id = firstId; id < firstId + count; id++){
+            copyTable.add(id, bookDetailsId, CopyTable.AVAILABLE);
+        }
+        withCopies(bookDetailsId, true, copies -> {
+            for(long id = firstId; id < firstId + count; id++){
+                copies.all.add(id);
+                copies.available.add(id);
+                notifyAdded(id);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * @param id
+     * @return the copy as it is now or null if there is no such copy
+     */
+    public BookDistributor getBookDistributor(long id){
+        return toBookDistributor(id, copyTable.get(id));
+    }
+
+    /**
+     * @return lazy stream of all copies with their ids, in ascending order of id
+     */
+    public Stream<Map.Entry<Long, BookDistributor>> getBookDistributorEntries(){
+        return copyTable.ids()
+                .mapToObj(id -> new AbstractMap.SimpleImmutableEntry<>(id, getBookDistributor(id)))
+                .filter(e -> !isNull(e.getValue()))
+                .map(e -> e);
+    }
+
+    public boolean isInLibrary(long id){
+        return copyTable.get(id) != CopyTable.NO_COPY;
+    }
+
+    public boolean checkIfBookIsLent(long id){
+        return CopyTable.stateOf(copyTable.get(id)) == CopyTable.LENT;
+    }
+
+    /**
+     * Removes the copy whatever its state, e.g. when the library is restored
+     * @param id
+     */
+    public void removeBook(long id){
+        if(!isInLibrary(id)){
+            return;
+        }
+        withCopies(copyTable.getBookDetailsId(id), false, copies -> {
+            int word = copyTable.get(id);
+            if(word == CopyTable.NO_COPY){
+                return null;
+            }
+            copyTable.set(id, CopyTable.pack(CopyTable.REMOVED, CopyTable.lenderOf(word)));
+            notifyStateChanged(id);
+            copyTable.set(id, CopyTable.NO_COPY);
+            if(!isNull(copies)){
+                copies.all.remove(id);
+                copies.available.remove(id);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Removes the copy only if it is not lent. The check and the removal are atomic,
+     * so a concurrent lend either happens before and the removal fails, or fails itself.
+     * @param id
+     * @return false if the copy doesn't exist or is lent
+     */
+    public boolean tryRemoveBook(long id){
+        if(!changeState(id, CopyTable.AVAILABLE, CopyTable.REMOVED, NO_LENDER)){
+            return false;
+        }
+        withCopies(copyTable.getBookDetailsId(id), false, copies -> {
+            notifyStateChanged(id);
+            copyTable.set(id, CopyTable.NO_COPY);
+            if(!isNull(copies)){
+                copies.all.remove(id);
+                copies.available.remove(id);
+            }
+            return null;
+        });
+        return true;
+    }
+
+    public List<BookDistributor> getBookDistibutorsByBookDetail(int bookDetailsId){
+        long[] ids = withCopies(bookDetailsId, false, copies -> isNull(copies) ? new long[0] : copies.all.toArray());
+        List<BookDistributor> result = new ArrayList<>(ids.length);
+        for(long id : ids){
+            BookDistributor bookDistributor = getBookDistributor(id);
+            if(!isNull(bookDistributor)){
+                result.add(bookDistributor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param bookDetailsId
+     * @return number of copies of the book
+     */
+    public int countBookDistributors(int bookDetailsId){
+        long counts = countsOf(bookDetailsId);
+        return available(counts) + lent(counts);
+    }
+
+    /**
+     * @param bookDetailsId
+     * @return number of copies of the book that are not lent
+     */
+    public int countAvailableBookDistributors(int bookDetailsId){
+        return available(countsOf(bookDetailsId));
+    }
+
+    /**
+     * @return ids of book details that have at least one copy that is not lent, for queries
+     */
+    public BitmapSource getAvailableBooks(){
+        return availableBooks;
+    }
+
+    /**
+     * @return ids of book details with at least one copy, available or lent
+     */
+    public BitmapSource getHeldBooks(){
+        return heldBooks;
+    }
+
+    public long getCopiesVersion(){
+        return copiesVersion.get();
+    }
+
+    public long getAvailabilityVersion(){
+        return availabilityVersion.get();
+    }
+
+    /**
+     * Passes the number of available and lent copies of every book to the consumer.
+     * Counters are read without locking, each pair is consistent as of the last change of its book.
+     * @param consumer
+     */
+    public void forEachBookCounts(BookCountsConsumer consumer){
+        MappedSnapshot.Copies current = snapshot;
+        int restored = isNull(current) ? 0 : current.getMaxBookDetailsId();
+        for(int bookDetailsId = 1; bookDetailsId <= restored; bookDetailsId++){
+            long counts = countsOf(bookDetailsId);
+            if(available(counts) + lent(counts) > 0){
+                consumer.accept(bookDetailsId, available(counts), lent(counts));
+            }
+        }
+        copiesByBookDetails.forEach((bookDetailsId, copies) -> {
+            if(bookDetailsId <= restored){
+                return;
+            }
+            long counts = copies.counts;
+            if(available(counts) + lent(counts) > 0){
+                consumer.accept((int) bookDetailsId, available(counts), lent(counts));
+            }
+        });
+    }
+
+    /**
+     * Lends any available copy of the book
+     * @param bookDetailsId
+     * @param person
+     * @return id of the lent copy, or IdGenerator.NO_ID if all copies are lent
+     */
+    public long lendAvailableBook(int bookDetailsId, String person){
+        int lender = lenderCode(person);
+        return withCopies(bookDetailsId, false, copies -> isNull(copies) ? IdGenerator.NO_ID : lendAvailable(copies, lender));
+    }
+
+    /**
+     * Lends any available copy of the book to the person of the reservation, or puts the reservation
+     * at the end of the queue of the book when all copies are lent. Both happen under the lock of the book,
+     * so a copy returned concurrently either is lent here or goes to the reservation.
+     * @param bookDetailsId
+     * @param reservation gets the id of the copy when one is lent right away
+     * @return false if the book has no copies
+     */
+    public boolean lendOrReserve(int bookDetailsId, Reservation reservation){
+        int lender = lenderCode(reservation.getPerson());
+        return withCopies(bookDetailsId, false, copies -> {
+            if(isNull(copies)){
+                return false;
+            }
+            long id = lendAvailable(copies, lender);
+            if(id != IdGenerator.NO_ID){
+                reservation.lend(id);
+            }
+            else{
+                copies.reserve(reservation);
+            }
+            return true;
+        });
     }
 
-    public boolean isInLibrary(String id){
-        return mapOfBook.containsKey(id);
+    /**
+     * Marks the copy as lent by the given person and takes it out of the available pool
+     * @param id
+     * @param person
+     * @return false if the copy doesn't exist, is lent or was removed
+     */
+    public boolean tryLendBook(long id, String person){
+        if(!changeState(id, CopyTable.AVAILABLE, CopyTable.LENT, lenderCode(person))){
+            return false;
+        }
+        updateAvailability(id);
+        return true;
     }
 
-    public boolean checkIfBookIsLent(String id){
-        return mapOfBook.get(id).isLent();
+    /**
+     * Marks the copy as not lent and puts it back to the available pool
+     * @param id
+     * @return false if the copy doesn't exist or is not lent
+     */
+    public boolean tryReturnBook(long id){
+        return tryReturnBook(id, reservation -> {});
     }
 
-    public void removeBook(String id){
-        mapOfBook.remove(id);
+    /**
+     * Marks the copy as not lent. When the book is reserved, the copy is lent to the first waiting reservation
+     * under the same lock of the book, otherwise it goes back to the available pool.
+     * @param id
+     * @param handedOver gets the reservation the copy was lent to, after the lock of the book is released
+     * @return false if the copy doesn't exist or is not lent
+     */
+    public boolean tryReturnBook(long id, Consumer<Reservation> handedOver){
+        if(!changeState(id, CopyTable.LENT, CopyTable.AVAILABLE, NO_LENDER)){
+            return false;
+        }
+        Reservation reservation = withCopies(copyTable.getBookDetailsId(id), false, copies -> {
+            notifyStateChanged(id);
+            if(isNull(copies)){
+                return null;
+            }
+            Reservation next = handOver(copies, id);
+            updateAvailability(copies, id);
+            return next;
+        });
+        if(!isNull(reservation)){
+            handedOver.accept(reservation);
+        }
+        return true;
     }
 
-    public List<BookDistributor> getBookDistibutorsByBookDetail(String bookDetailsId){
-       return mapOfBook.entrySet().stream().filter(b -> b.getValue().getBookDetailsId().equals(bookDetailsId))
-               .map(k -> k.getValue()).collect(Collectors.toList());
+    /**
+     * Sets the state of a copy without any checks, e.g. when the library is restored
+     * @param id
+     * @param lent
+     * @param lastLenderName
+     */
+    public void restoreBookState(long id, boolean lent, String lastLenderName){
+        if(!isInLibrary(id)){
+            return;
+        }
+        copyTable.set(id, CopyTable.pack(lent ? CopyTable.LENT : CopyTable.AVAILABLE, lenderCode(lastLenderName)));
+        updateAvailability(id);
+    }
+
+    /**
+     * Starts from the copies of a snapshot, the DAO must be empty.
+     * Only the counters of the books are read now, the copies are read when they are used
+     * @param copies
+     */
+    void restore(MappedSnapshot.Copies copies){
+        String[] lenderNames = copies.getLenderNames();
+        int[] lenderCodes = new int[lenderNames.length];
+        for(int i = 1; i < lenderNames.length; i++){
+            lenderCodes[i] = lenderCode(lenderNames[i]);
+        }
+        copies.setLenderCodes(lenderCodes);
+        idGenerator.reserve(copies.getLastId());
+        unloaded = new AtomicIntegerArray(copies.getMaxBookDetailsId() + 1);
+        for(int bookDetailsId = 1; bookDetailsId <= copies.getMaxBookDetailsId(); bookDetailsId++){
+            if(copies.getAvailable(bookDetailsId) + copies.getLent(bookDetailsId) > 0){
+                unloaded.set(bookDetailsId, 1);
+                heldBooks.add(bookDetailsId);
+            }
+            if(copies.getAvailable(bookDetailsId) > 0){
+                availableBooks.add(bookDetailsId);
+            }
+        }
+        copyTable.setSource(copies);
+        snapshot = copies;
+    }
+
+    /**
+     * @return the highest id of a copy given out so far, removed copies included
+     */
+    public long getLastCopyId(){
+        return idGenerator.getLastId();
+    }
+
+    /**
+     * Makes sure no id up to lastId is given to a new copy, e.g. ids of copies removed before a snapshot
+     * @param lastId
+     */
+    public void reserveIds(long lastId){
+        idGenerator.reserve(lastId);
+    }
+
+    /**
+     * @return packed state of the copy, see CopyTable
+     */
+    int getCopyWord(long id){
+        return copyTable.get(id);
+    }
+
+    int getCopyBookDetailsId(long id){
+        return copyTable.getBookDetailsId(id);
+    }
+
+    String getLenderName(int code){
+        return lenders.valueOf(code);
+    }
+
+    /**
+     * Called under the lock of the book
+     * @return id of the lent copy, or IdGenerator.NO_ID if all copies are lent
+     */
+    private long lendAvailable(BookCopies copies, int lender){
+        for(long id = copies.available.any(); id != 0; id = copies.available.any()){
+            if(changeState(id, CopyTable.AVAILABLE, CopyTable.LENT, lender)){
+                notifyStateChanged(id);
+                copies.available.remove(id);
+                return id;
+            }
+            // lent by id in the meantime, its own update of the pool is still waiting for the lock
+            copies.available.remove(id);
+        }
+        return IdGenerator.NO_ID;
+    }
+
+    /**
+     * Lends the returned copy to the first reservation that still waits, called under the lock of the book
+     * @return the reservation or null if none waits or the copy was lent by id in the meantime
+     */
+    private Reservation handOver(BookCopies copies, long id){
+        for(Reservation reservation = copies.nextReservation(); !isNull(reservation); reservation = copies.nextReservation()){
+            int word = copyTable.get(id);
+            if(CopyTable.stateOf(word) != CopyTable.AVAILABLE){
+                copies.reservations.addFirst(reservation);
+                return null;
+            }
+            int lent = CopyTable.pack(CopyTable.LENT, lenderCode(reservation.getPerson()));
+            if(!copyTable.compareAndSet(id, word, lent)){
+                copies.reservations.addFirst(reservation);
+                continue;
+            }
+            if(reservation.lend(id)){
+                notifyStateChanged(id);
+                return reservation;
+            }
+            // cancelled in the meantime, the copy goes to the next one
+            copyTable.compareAndSet(id, lent, word);
+        }
+        return null;
+    }
+
+    /**
+     * Atomically moves the copy from one state to another
+     * @param lender code of the new last lender or NO_LENDER to keep the last lender
+     * @return false if the copy is not in the expected state
+     */
+    private boolean changeState(long id, int from, int to, int lender){
+        while(true){
+            int word = copyTable.get(id);
+            if(CopyTable.stateOf(word) != from){
+                return false;
+            }
+            int updated = CopyTable.pack(to, lender == NO_LENDER ? CopyTable.lenderOf(word) : lender);
+            if(copyTable.compareAndSet(id, word, updated)){
+                return true;
+            }
+        }
+    }
+
+    private int lenderCode(String person){
+        int code = lenders.intern(person);
+        if(code > CopyTable.MAX_LENDER_CODE){
+            throw new IllegalStateException("Too many different lenders");
+        }
+        return code;
+    }
+
+    private BookDistributor toBookDistributor(long id, int word){
+        if(word == CopyTable.NO_COPY){
+            return null;
+        }
+        int state = CopyTable.stateOf(word);
+        return new BookDistributor(copyTable.getBookDetailsId(id), state == CopyTable.LENT, state == CopyTable.REMOVED,
+                lenders.valueOf(CopyTable.lenderOf(word)));
+    }
+
+    /**
+     * Copies are only turned into objects for the listener when there is one
+     */
+    private void notifyAdded(long id){
+        BookDistributorListener current = listener;
+        BookDistributor bookDistributor = current == BookDistributorListener.NONE ? null : getBookDistributor(id);
+        if(!isNull(bookDistributor)){
+            current.bookAdded(id, bookDistributor);
+        }
+    }
+
+    /**
+     * A copy removed in the meantime was already reported by its removal
+     */
+    private void notifyStateChanged(long id){
+        BookDistributorListener current = listener;
+        BookDistributor bookDistributor = current == BookDistributorListener.NONE ? null : getBookDistributor(id);
+        if(!isNull(bookDistributor)){
+            current.bookStateChanged(id, bookDistributor);
+        }
+    }
+
+    /**
+     * Brings the available pool in line with the current state of the copy and notifies the listener.
+     * The state is read under the lock of the book, so whichever state change
+     * comes last also decides last about the pool and is the last one the listener sees.
+     */
+    private void updateAvailability(long id){
+        withCopies(copyTable.getBookDetailsId(id), false, copies -> {
+            notifyStateChanged(id);
+            if(!isNull(copies)){
+                updateAvailability(copies, id);
+            }
+            return null;
+        });
+    }
+
+    private void updateAvailability(BookCopies copies, long id){
+        if(CopyTable.stateOf(copyTable.get(id)) == CopyTable.AVAILABLE){
+            copies.available.add(id);
+        }
+        else{
+            copies.available.remove(id);
+        }
+    }
+
+    /**
+     * Runs the action under the lock of the copies of the book and drops them when the last copy is gone
+     * @param bookDetailsId
+     * @param create whether to create the copies of a book that has none
+     * @param action gets null when the book has no copies and create is false
+     * @return result of the action
+     */
+    private <T> T withCopies(int bookDetailsId, boolean create, Function<BookCopies, T> action){
+        while(true){
+            BookCopies copies = copiesByBookDetails.get(bookDetailsId);
+            if(isNull(copies) && (create || isUnloaded(bookDetailsId))){
+                copies = copiesByBookDetails.compute(bookDetailsId,
+                        (k, current) -> isNull(current) ? newCopies(bookDetailsId, create) : current);
+            }
+            if(isNull(copies)){
+                return action.apply(null);
+            }
+            synchronized (copies) {
+                if(copies.dropped){
+                    // the last copy was removed while we were waiting for the lock
+                    continue;
+                }
+                T result = action.apply(copies);
+                long before = copies.counts;
+                copies.updateCounts();
+                long after = copies.counts;
+                if(available(before) + lent(before) != available(after) + lent(after)){
+                    copiesVersion.incrementAndGet();
+                    if(available(after) + lent(after) == 0){
+                        heldBooks.remove(bookDetailsId);
+                    }
+                    else if(available(before) + lent(before) == 0){
+                        heldBooks.add(bookDetailsId);
+                    }
+                }
+                if(available(before) != available(after)){
+                    availabilityVersion.incrementAndGet();
+                }
+                boolean wasAvailable = available(before) > 0;
+                boolean isAvailable = available(after) > 0;
+                if(isAvailable != wasAvailable){
+                    if(isAvailable){
+                        availableBooks.add(bookDetailsId);
+                    }
+                    else{
+                        availableBooks.remove(bookDetailsId);
+                    }
+                    AvailabilityListener current = availabilityListener;
+                    if(!isNull(current)){
+                        current.availabilityChanged(bookDetailsId, isAvailable);
+                    }
+                }
+                if(copies.all.isEmpty() && !copies.hasReservations()){
+                    copies.dropped = true;
+                    copiesByBookDetails.remove(bookDetailsId, copies);
+                }
+                return result;
+            }
+        }
+    }
+
+    /**
+     * Called under the lock of the map
+     * @return copies of a book read from the snapshot, new empty copies or null
+     */
+    private BookCopies newCopies(int bookDetailsId, boolean create){
+        if(isUnloaded(bookDetailsId) && unloaded.compareAndSet(bookDetailsId, 1, 0)){
+            MappedSnapshot.Copies current = snapshot;
+            BookCopies copies = new BookCopies();
+            for(long id : current.getCopyIds(bookDetailsId)){
+                int state = CopyTable.stateOf(copyTable.get(id));
+                if(state != CopyTable.NO_COPY){
+                    copies.all.add(id);
+                }
+                if(state == CopyTable.AVAILABLE){
+                    copies.available.add(id);
+                }
+            }
+            // the counters the available books were built from, the first update catches up with later changes
+            copies.counts = counts(current.getAvailable(bookDetailsId), current.getLent(bookDetailsId));
+            return copies;
+        }
+        return create ? new BookCopies() : null;
+    }
+
+    private boolean isUnloaded(int bookDetailsId){
+        MappedSnapshot.Copies current = snapshot;
+        return !isNull(current) && bookDetailsId > 0 && bookDetailsId <= current.getMaxBookDetailsId()
+                && unloaded.get(bookDetailsId) == 1;
+    }
+
+    /**
+     * Counters of a book without reading its copies from the snapshot
+     */
+    private long countsOf(int bookDetailsId){
+        BookCopies copies = copiesByBookDetails.get(bookDetailsId);
+        if(isNull(copies) && isUnloaded(bookDetailsId)){
+            MappedSnapshot.Copies current = snapshot;
+            return counts(current.getAvailable(bookDetailsId), current.getLent(bookDetailsId));
+        }
+        if(isNull(copies)){
+            // read from the snapshot in the meantime
+            copies = copiesByBookDetails.get(bookDetailsId);
+        }
+        return isNull(copies) ? 0 : copies.counts;
+    }
+
+    private static long counts(int available, int lent){
+        return ((long) available << 32) | lent;
+    }
+
+    private static int available(long counts){
+        return (int) (counts >>> 32);
+    }
+
+    private static int lent(long counts){
+        return (int) counts;
+    }
+
+    private static class BookCopies {
+        private final LongHashSet all = new LongHashSet();
+        private final LongHashSet available = new LongHashSet();
+        private boolean dropped;
+
+        /**
+         * People waiting for a returned copy, created with the first reservation.
+         * Cancelled reservations are skipped when they get to the head of the queue
+         */
+        private ArrayDeque<Reservation> reservations;
+
+        /**
+         * Available copies in the high and lent copies in the low half, in one field so both are read together.
+         * Copies that are not available are lent, removed copies leave all right away.
+         */
+        private volatile long counts;
+
+        private void updateCounts(){
+            int availableCount = available.size();
+            counts = counts(availableCount, all.size() - availableCount);
+        }
+
+        private void reserve(Reservation reservation){
+            if(isNull(reservations)){
+                reservations = new ArrayDeque<>();
+            }
+            reservations.add(reservation);
+        }
+
+        /**
+         * @return the first waiting reservation taken out of the queue or null
+         */
+        private Reservation nextReservation(){
+            while(!isNull(reservations) && !reservations.isEmpty()){
+                Reservation reservation = reservations.poll();
+                if(reservation.isWaiting()){
+                    return reservation;
+                }
+            }
+            return null;
+        }
 
+        private boolean hasReservations(){
+            while(!isNull(reservations) && !reservations.isEmpty()){
+                if(reservations.peek().isWaiting()){
+                    return true;
+                }
+                reservations.poll();
+            }
+            return false;
+        }
     }
 
 }
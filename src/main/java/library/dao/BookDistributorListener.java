@@ -0,0 +1,31 @@
+package library.dao;
+
+import library.model.BookDistributor;
+
+/**
+ * Gets notified about every change of copies in BookDistributorDAO.
+ * Notifications about one book are made under the lock of that book in the order the changes happened,
+ * so listeners must be fast and must not call back into the DAO.
+ */
+public interface BookDistributorListener {
+
+    BookDistributorListener NONE = new BookDistributorListener() {
+        @Override
+        public void bookAdded(long id, BookDistributor bookDistributor) {
+        }
+
+        @Override
+        public void bookStateChanged(long id, BookDistributor bookDistributor) {
+        }
+    };
+
+    /**
+     * Called when a copy is added, before it can be lent
+     */
+    void bookAdded(long id, BookDistributor bookDistributor);
+
+    /**
+     * Called after a copy was lent, returned or removed, the copy already has its new state
+     */
+    void bookStateChanged(long id, BookDistributor bookDistributor);
+}
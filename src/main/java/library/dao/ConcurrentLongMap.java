@@ -0,0 +1,368 @@
+package library.dao;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Concurrent map with primitive long keys, so neither keys nor their hash codes are boxed objects.
+ * Keys are spread over segments, each one an open-addressing table with linear probing guarded
+ * by its own StampedLock. Reads are optimistic and take no lock unless they race with a write
+ * to the same segment. Key 0 is reserved and can't be stored.
+ * @param <V>
+ */
+public class ConcurrentLongMap<V> {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+    public ConcurrentLongMap(){
+        for(int i = 0; i < segments.length; i++){
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Callback of forEach, takes the key without boxing
+     * @param <V>
+     */
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    /**
+     * Function of compute, takes the key without boxing
+     * @param <V>
+     */
+    public interface Remapping<V> {
+        V apply(long key, V value);
+    }
+
+    public V get(long key){
+        if(key == 0){
+            return null;
+        }
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.tryOptimisticRead();
+        Object value = segment.table.find(key, hash);
+        if(!segment.lock.validate(stamp)){
+            stamp = segment.lock.readLock();
+            try {
+                value = segment.table.find(key, hash);
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return cast(value);
+    }
+
+    public boolean containsKey(long key){
+        return !isNull(get(key));
+    }
+
+    /**
+     * @return previous value or null
+     */
+    public V put(long key, V value){
+        checkKey(key);
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            return cast(segment.put(key, hash, value));
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the value of the key, creating it with the function when it is missing.
+     * The function is called under the lock of the segment, so it must not use this map
+     */
+    public V computeIfAbsent(long key, LongFunction<V> function){
+        V value = get(key);
+        if(!isNull(value)){
+            return value;
+        }
+        checkKey(key);
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            value = cast(segment.table.find(key, hash));
+            if(isNull(value)){
+                value = function.apply(key);
+                segment.put(key, hash, value);
+            }
+            return value;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Replaces the value of the key with the result of the function, null removes the key.
+     * The function is called under the lock of the segment, so it must not use this map
+     * @return new value or null
+     */
+    public V compute(long key, Remapping<V> function){
+        checkKey(key);
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            V value = function.apply(key, cast(segment.table.find(key, hash)));
+            if(isNull(value)){
+                segment.remove(key, hash, null);
+            }
+            else{
+                segment.put(key, hash, value);
+            }
+            return value;
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return removed value or null
+     */
+    public V remove(long key){
+        if(key == 0){
+            return null;
+        }
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            return cast(segment.remove(key, hash, null));
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the key only if it is mapped to the given value, the same instance and not just an equal one
+     * @return true if removed
+     */
+    public boolean remove(long key, V value){
+        if(key == 0){
+            return false;
+        }
+        long hash = hash(key);
+        Segment segment = segmentFor(hash);
+        long stamp = segment.lock.writeLock();
+        try {
+            return !isNull(segment.remove(key, hash, value));
+        } finally {
+            segment.lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size(){
+        int size = 0;
+        for(Segment segment : segments){
+            long stamp = segment.lock.readLock();
+            try {
+                size += segment.size;
+            } finally {
+                segment.lock.unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Passes every entry to the consumer. Every segment is copied under its lock and visited without it,
+     * so the consumer may use this map
+     */
+    public void forEach(EntryConsumer<V> consumer){
+        for(Segment segment : segments){
+            Table table = segment.copy();
+            for(int i = 0; i < table.keys.length; i++){
+                if(table.keys[i] != 0){
+                    consumer.accept(table.keys[i], cast(table.values[i]));
+                }
+            }
+        }
+    }
+
+    public List<V> values(){
+        List<V> values = new ArrayList<>();
+        forEach((k, v) -> values.add(v));
+        return values;
+    }
+
+    /**
+     * @return lazy stream of entries, one segment is copied at a time
+     */
+    public Stream<Map.Entry<Long, V>> entries(){
+        return Arrays.stream(segments).flatMap(segment -> {
+            Table table = segment.copy();
+            List<Map.Entry<Long, V>> entries = new ArrayList<>();
+            for(int i = 0; i < table.keys.length; i++){
+                if(table.keys[i] != 0){
+                    entries.add(new AbstractMap.SimpleImmutableEntry<>(table.keys[i], cast(table.values[i])));
+                }
+            }
+            return entries.stream();
+        });
+    }
+
+    private Segment segmentFor(long hash){
+        return segments[(int) (hash >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static long hash(long key){
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int slot(long hash, int mask){
+        return (int) (hash ^ (hash >>> 29)) & mask;
+    }
+
+    private static void checkKey(long key){
+        if(key == 0){
+            throw new IllegalArgumentException("Key 0 is reserved");
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V cast(Object value){
+        return (V) value;
+    }
+
+    /**
+     * Keys and values replaced together on resize, so an optimistic reader never mixes two generations
+     */
+    private static class Table {
+        private final long[] keys;
+        private final Object[] values;
+
+        Table(int capacity){
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+
+        Object find(long key, long hash){
+            int mask = keys.length - 1;
+            int i = slot(hash, mask);
+            // bounded, an optimistic read may see the table in the middle of a change
+            for(int probes = 0; probes < keys.length; probes++){
+                long k = keys[i];
+                if(k == key){
+                    return values[i];
+                }
+                if(k == 0){
+                    return null;
+                }
+                i = (i + 1) & mask;
+            }
+            return null;
+        }
+    }
+
+    private static class Segment {
+        private final StampedLock lock = new StampedLock();
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+        private int size;
+
+        Object put(long key, long hash, Object value){
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int i = slot(hash, mask);
+            while(t.keys[i] != 0){
+                if(t.keys[i] == key){
+                    Object previous = t.values[i];
+                    t.values[i] = value;
+                    return previous;
+                }
+                i = (i + 1) & mask;
+            }
+            t.values[i] = value;
+            t.keys[i] = key;
+            if(++size * 4 > t.keys.length * 3){
+                resize(t.keys.length * 2);
+            }
+            return null;
+        }
+
+        /**
+         * Removes with backward shift, so the table never holds tombstones
+         */
+        Object remove(long key, long hash, Object expected){
+            Table t = table;
+            int mask = t.keys.length - 1;
+            int i = slot(hash, mask);
+            while(t.keys[i] != key){
+                if(t.keys[i] == 0){
+                    return null;
+                }
+                i = (i + 1) & mask;
+            }
+            Object previous = t.values[i];
+            if(!isNull(expected) && previous != expected){
+                return null;
+            }
+            int j = i;
+            while(true){
+                j = (j + 1) & mask;
+                long k = t.keys[j];
+                if(k == 0){
+                    break;
+                }
+                int ideal = slot(hash(k), mask);
+                boolean stays = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+                if(!stays){
+                    t.keys[i] = k;
+                    t.values[i] = t.values[j];
+                    i = j;
+                }
+            }
+            t.keys[i] = 0;
+            t.values[i] = null;
+            size--;
+            return previous;
+        }
+
+        Table copy(){
+            long stamp = lock.readLock();
+            try {
+                Table copy = new Table(table.keys.length);
+                System.arraycopy(table.keys, 0, copy.keys, 0, copy.keys.length);
+                System.arraycopy(table.values, 0, copy.values, 0, copy.values.length);
+                return copy;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private void resize(int capacity){
+            Table old = table;
+            Table resized = new Table(capacity);
+            int mask = capacity - 1;
+            for(int i = 0; i < old.keys.length; i++){
+                long k = old.keys[i];
+                if(k != 0){
+                    int j = slot(hash(k), mask);
+                    while(resized.keys[j] != 0){
+                        j = (j + 1) & mask;
+                    }
+                    resized.keys[j] = k;
+                    resized.values[j] = old.values[i];
+                }
+            }
+            table = resized;
+        }
+    }
+}
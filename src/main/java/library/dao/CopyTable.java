@@ -0,0 +1,173 @@
+package library.dao;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.stream.LongStream;
+
+import static java.util.Objects.isNull;
+
+/**
+ * State of every copy packed into int columns indexed by the copy id, so a copy takes two ints
+ * instead of a map entry and an object of its own, and the garbage collector has nothing to scan.
+ * Ids are dense, rows are kept in fixed size pages and growing the table never copies existing rows.
+ * The state column holds the state in the lowest bits and the dictionary code of the last lender above them,
+ * so a lend changes both with one compare and set. A row without a copy has state NO_COPY.
+ * The details column is written before the state, which publishes it.
+ * A table opened from a snapshot reads every page from the snapshot the first time the page is used.
+ */
+class CopyTable {
+
+    static final int NO_COPY = 0;
+    static final int AVAILABLE = 1;
+    static final int LENT = 2;
+    static final int REMOVED = 3;
+
+    static final int MAX_LENDER_CODE = Integer.MAX_VALUE >>> 2;
+
+    private static final int STATE_BITS = 2;
+    private static final int STATE_MASK = (1 << STATE_BITS) - 1;
+
+    private static final int PAGE_BITS = 14;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private volatile Page[] pages = new Page[1];
+
+    private volatile Source source;
+
+    /**
+     * Rows a table starts with, e.g. columns of a mapped snapshot
+     */
+    interface Source {
+
+        long getLastId();
+
+        /**
+         * Fills the columns with the rows from firstId on, rows after the last id are left empty
+         * @param firstId
+         * @param bookDetailsIds
+         * @param words
+         */
+        void load(long firstId, int[] bookDetailsIds, int[] words);
+    }
+
+    /**
+     * Must be set before the table is used
+     * @param source
+     */
+    void setSource(Source source){
+        this.source = source;
+    }
+
+    static int pack(int state, int lenderCode){
+        return lenderCode << STATE_BITS | state;
+    }
+
+    static int stateOf(int word){
+        return word & STATE_MASK;
+    }
+
+    static int lenderOf(int word){
+        return word >>> STATE_BITS;
+    }
+
+    /**
+     * Writes a new row
+     * @param id
+     * @param bookDetailsId
+     * @param word packed state of the copy
+     */
+    void add(long id, int bookDetailsId, int word){
+        Page page = pageIfPresent(id);
+        if(isNull(page)){
+            page = page(id);
+        }
+        int i = (int) id & (PAGE_SIZE - 1);
+        page.bookDetailsIds[i] = bookDetailsId;
+        page.words.set(i, word);
+    }
+
+    /**
+     * @param id
+     * @return packed state of the copy, NO_COPY if there is no such copy
+     */
+    int get(long id){
+        Page page = pageIfPresent(id);
+        return isNull(page) ? NO_COPY : page.words.get((int) id & (PAGE_SIZE - 1));
+    }
+
+    /**
+     * Only meaningful after get returned a state other than NO_COPY
+     */
+    int getBookDetailsId(long id){
+        return pageIfPresent(id).bookDetailsIds[(int) id & (PAGE_SIZE - 1)];
+    }
+
+    boolean compareAndSet(long id, int expected, int word){
+        Page page = pageIfPresent(id);
+        return !isNull(page) && page.words.compareAndSet((int) id & (PAGE_SIZE - 1), expected, word);
+    }
+
+    void set(long id, int word){
+        Page page = pageIfPresent(id);
+        if(!isNull(page)){
+            page.words.set((int) id & (PAGE_SIZE - 1), word);
+        }
+    }
+
+    /**
+     * @return lazy stream of the ids of all copies, in ascending order
+     */
+    LongStream ids(){
+        Source current = source;
+        long end = Math.max((long) pages.length << PAGE_BITS, isNull(current) ? 0 : current.getLastId() + 1);
+        return LongStream.range(1, end).filter(id -> get(id) != NO_COPY);
+    }
+
+    private Page pageIfPresent(long id){
+        Page[] current = pages;
+        long page = id >>> PAGE_BITS;
+        Page result = id > 0 && page < current.length ? current[(int) page] : null;
+        if(isNull(result) && id > 0){
+            Source rows = source;
+            if(!isNull(rows) && id <= rows.getLastId()){
+                return page(id);
+            }
+        }
+        return result;
+    }
+
+    private synchronized Page page(long id){
+        int page = Math.toIntExact(id >>> PAGE_BITS);
+        Page[] current = pages;
+        if(page >= current.length){
+            Page[] grown = new Page[Math.max(page + 1, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+        }
+        if(isNull(current[page])){
+            current[page] = newPage((long) page << PAGE_BITS);
+        }
+        pages = current;
+        return current[page];
+    }
+
+    private Page newPage(long firstId){
+        Source current = source;
+        if(isNull(current) || firstId > current.getLastId()){
+            return new Page(new int[PAGE_SIZE], new AtomicIntegerArray(PAGE_SIZE));
+        }
+        int[] bookDetailsIds = new int[PAGE_SIZE];
+        int[] words = new int[PAGE_SIZE];
+        current.load(firstId, bookDetailsIds, words);
+        return new Page(bookDetailsIds, new AtomicIntegerArray(words));
+    }
+
+    private static class Page {
+        private final int[] bookDetailsIds;
+        private final AtomicIntegerArray words;
+
+        Page(int[] bookDetailsIds, AtomicIntegerArray words){
+            this.bookDetailsIds = bookDetailsIds;
+            this.words = words;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package library.dao;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates dense numeric ids starting from 1. Outside of the library ids are passed
+ * as their decimal String, format and parse convert between the two.
+ */
+public class IdGenerator {
+
+    public static final long NO_ID = -1;
+
+    private final AtomicLong lastId = new AtomicLong();
+
+    public long nextId(){
+        return lastId.incrementAndGet();
+    }
+
+    /**
+     * Reserves a block of consecutive ids
+     * @param count
+     * @return first id of the block
+     */
+    public long nextIds(int count){
+        return lastId.getAndAdd(count) + 1;
+    }
+
+    /**
+     * Makes sure an id that was given out before, e.g. restored from a log, is never generated again
+     * @param id
+     */
+    public void reserve(long id){
+        lastId.accumulateAndGet(id, Math::max);
+    }
+
+    /**
+     * @return the highest id given out or reserved so far, 0 if none
+     */
+    public long getLastId(){
+        return lastId.get();
+    }
+
+    public static String format(long id){
+        return Long.toString(id);
+    }
+
+    /**
+     * @param id
+     * @return numeric id or NO_ID if the String is not an id generated by this class
+     */
+    public static long parse(String id){
+        if(id == null || id.isEmpty() || id.length() > 19){
+            return NO_ID;
+        }
+        long value = 0;
+        for(int i = 0; i < id.length(); i++){
+            char c = id.charAt(i);
+            if(c < '0' || c > '9'){
+                return NO_ID;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value > 0 ? value : NO_ID;
+    }
+}
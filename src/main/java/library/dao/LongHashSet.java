@@ -0,0 +1,148 @@
+package library.dao;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive long values in an open-addressing table with linear probing. Not thread-safe,
+ * callers guard it with their own lock. Value 0 is reserved and can't be stored.
+ */
+public class LongHashSet {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] values = new long[MIN_CAPACITY];
+    private int size;
+    private int cursor;
+
+    public boolean add(long value){
+        if(value == 0){
+            throw new IllegalArgumentException("Value 0 is reserved");
+        }
+        int mask = values.length - 1;
+        int i = slot(value, mask);
+        while(values[i] != 0){
+            if(values[i] == value){
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        values[i] = value;
+        if(++size * 4 > values.length * 3){
+            rehash(values.length * 2);
+        }
+        return true;
+    }
+
+    public boolean contains(long value){
+        if(value == 0){
+            return false;
+        }
+        int mask = values.length - 1;
+        int i = slot(value, mask);
+        while(values[i] != 0){
+            if(values[i] == value){
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean remove(long value){
+        if(value == 0){
+            return false;
+        }
+        int mask = values.length - 1;
+        int i = slot(value, mask);
+        while(values[i] != value){
+            if(values[i] == 0){
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        int j = i;
+        while(true){
+            j = (j + 1) & mask;
+            long v = values[j];
+            if(v == 0){
+                break;
+            }
+            int ideal = slot(v, mask);
+            boolean stays = i <= j ? (i < ideal && ideal <= j) : (i < ideal || ideal <= j);
+            if(!stays){
+                values[i] = v;
+                i = j;
+            }
+        }
+        values[i] = 0;
+        size--;
+        // keeps any() cheap after many removals
+        if(size * 8 < values.length && values.length > MIN_CAPACITY){
+            rehash(values.length / 2);
+        }
+        return true;
+    }
+
+    /**
+     * @return any value of the set or 0 if the set is empty. Scanning starts where the previous call
+     * stopped, so repeated calls followed by remove don't rescan the same empty slots
+     */
+    public long any(){
+        if(size == 0){
+            return 0;
+        }
+        int mask = values.length - 1;
+        for(int probes = 0; probes < values.length; probes++){
+            cursor = (cursor + 1) & mask;
+            if(values[cursor] != 0){
+                return values[cursor];
+            }
+        }
+        return 0;
+    }
+
+    public int size(){
+        return size;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public long[] toArray(){
+        long[] result = new long[size];
+        int n = 0;
+        for(long value : values){
+            if(value != 0){
+                result[n++] = value;
+            }
+        }
+        return result;
+    }
+
+    private void rehash(int capacity){
+        long[] old = values;
+        values = new long[Math.max(capacity, MIN_CAPACITY)];
+        int mask = values.length - 1;
+        for(long value : old){
+            if(value != 0){
+                int i = slot(value, mask);
+                while(values[i] != 0){
+                    i = (i + 1) & mask;
+                }
+                values[i] = value;
+            }
+        }
+        cursor = 0;
+    }
+
+    private static int slot(long value, int mask){
+        long hash = value * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 29)) & mask;
+    }
+
+    @Override
+    public String toString(){
+        return Arrays.toString(toArray());
+    }
+}
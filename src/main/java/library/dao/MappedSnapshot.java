@@ -0,0 +1,342 @@
+package library.dao;
+
+import library.model.BookDetails;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Binary snapshot of the catalog and the copies, stored by column so it can be opened by mapping the file
+ * instead of replaying every copy.
+ *
+ * The file is: int magic, int version, the table of titles and authors, the table of lenders,
+ * the columns of book details indexed by their id (title, author, year, copies, available copies, lent copies
+ * and the offset of their copies), the columns of copies indexed by their id (book details id, packed state)
+ * and the ids of the copies grouped by book details. Numbers are big-endian, Strings are UTF-8.
+ *
+ * Opening restores the book details right away, one row per title. Columns of the copies stay in the mapped file:
+ * pages of the copy table and copies of a title are only read from it the first time they are used,
+ * so opening takes time in the number of titles and memory in the number of copies actually used.
+ */
+public final class MappedSnapshot {
+
+    private static final int MAGIC = 0x4C494253;
+    private static final int VERSION = 1;
+
+    private MappedSnapshot() {
+    }
+
+    /**
+     * Writes the current state of the DAOs to the file, replacing it atomically.
+     * Copies changed while the snapshot is written may be seen in either state
+     * @param file
+     * @param bookDetailsDAO
+     * @param bookDistributorDAO
+     * @throws IOException
+     */
+    public static void write(Path file, BookDetailsDAO bookDetailsDAO, BookDistributorDAO bookDistributorDAO) throws IOException {
+        int maxBookDetailsId = bookDetailsDAO.getLastId();
+        int[] titles = new int[maxBookDetailsId + 1];
+        int[] authors = new int[maxBookDetailsId + 1];
+        int[] years = new int[maxBookDetailsId + 1];
+        int[] available = new int[maxBookDetailsId + 1];
+        int[] lent = new int[maxBookDetailsId + 1];
+        boolean[] live = new boolean[maxBookDetailsId + 1];
+        StringTable strings = new StringTable();
+        for(int id = 1; id <= maxBookDetailsId; id++){
+            BookDetails bookDetails = bookDetailsDAO.getReferences(id) > 0 ? bookDetailsDAO.getBookDetailsById(id) : null;
+            if(!isNull(bookDetails)){
+                live[id] = true;
+                titles[id] = strings.indexOf(bookDetails.getTitle());
+                authors[id] = strings.indexOf(bookDetails.getAuthor());
+                years[id] = isNull(bookDetails.getYear()) ? BookCatalog.NO_YEAR : bookDetails.getYear();
+            }
+        }
+
+        int lastCopyId = toColumnIndex(bookDistributorDAO.getLastCopyId());
+        int[] copyBookDetailsIds = new int[lastCopyId + 1];
+        int[] copyWords = new int[lastCopyId + 1];
+        StringTable lenders = new StringTable();
+        for(int id = 1; id <= lastCopyId; id++){
+            int word = bookDistributorDAO.getCopyWord(id);
+            int state = CopyTable.stateOf(word);
+            if(state != CopyTable.AVAILABLE && state != CopyTable.LENT){
+                continue;
+            }
+            int bookDetailsId = bookDistributorDAO.getCopyBookDetailsId(id);
+            // details added after they were read above
+            if(bookDetailsId > maxBookDetailsId || !live[bookDetailsId]){
+                continue;
+            }
+            copyBookDetailsIds[id] = bookDetailsId;
+            copyWords[id] = CopyTable.pack(state, lenders.indexOf(bookDistributorDAO.getLenderName(CopyTable.lenderOf(word))));
+            if(state == CopyTable.AVAILABLE){
+                available[bookDetailsId]++;
+            }
+            else{
+                lent[bookDetailsId]++;
+            }
+        }
+
+        int[] offsets = new int[maxBookDetailsId + 2];
+        for(int id = 1; id <= maxBookDetailsId; id++){
+            offsets[id + 1] = offsets[id] + available[id] + lent[id];
+        }
+        long[] copyIds = new long[offsets[maxBookDetailsId + 1]];
+        int[] next = offsets.clone();
+        for(int id = 1; id <= lastCopyId; id++){
+            if(copyWords[id] != CopyTable.NO_COPY){
+                copyIds[next[copyBookDetailsIds[id]]++] = id;
+            }
+        }
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            strings.writeTo(out);
+            lenders.writeTo(out);
+            out.writeInt(maxBookDetailsId);
+            for(int[] column : new int[][]{titles, authors, years, available, lent}){
+                writeInts(out, column);
+            }
+            writeInts(out, offsets);
+            out.writeLong(lastCopyId);
+            writeInts(out, copyBookDetailsIds);
+            writeInts(out, copyWords);
+            for(long id : copyIds){
+                out.writeLong(id);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Restores the DAOs from the file, they must be empty
+     * @param file
+     * @param bookDetailsDAO
+     * @param bookDistributorDAO
+     * @throws IOException when the file is not a snapshot or is truncated
+     */
+    public static void open(Path file, BookDetailsDAO bookDetailsDAO, BookDistributorDAO bookDistributorDAO) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = map(channel, 0, 8);
+            if(header.getInt() != MAGIC){
+                throw new IOException("Not a library snapshot: " + file);
+            }
+            int version = header.getInt();
+            if(version != VERSION){
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long position = 8;
+            long stringsSize = map(channel, position, 8).getLong();
+            String[] strings = StringTable.read(map(channel, position + 8, stringsSize));
+            position += 8 + stringsSize;
+            long lendersSize = map(channel, position, 8).getLong();
+            String[] lenders = StringTable.read(map(channel, position + 8, lendersSize));
+            position += 8 + lendersSize;
+
+            int maxBookDetailsId = map(channel, position, 4).getInt();
+            position += 4;
+            IntBuffer[] details = new IntBuffer[6];
+            for(int i = 0; i < details.length; i++){
+                int length = i == details.length - 1 ? maxBookDetailsId + 2 : maxBookDetailsId + 1;
+                details[i] = map(channel, position, 4L * length).asIntBuffer();
+                position += 4L * length;
+            }
+            IntBuffer titles = details[0], authors = details[1], years = details[2], available = details[3], lent = details[4];
+            for(int id = 1; id <= maxBookDetailsId; id++){
+                int copies = available.get(id) + lent.get(id);
+                if(copies > 0){
+                    int year = years.get(id);
+                    BookDetails bookDetails = new BookDetails(strings[titles.get(id)], strings[authors.get(id)],
+                            year == BookCatalog.NO_YEAR ? null : year);
+                    bookDetailsDAO.restoreBookDetails(id, bookDetails, copies);
+                }
+            }
+
+            int lastCopyId = toColumnIndex(map(channel, position, 8).getLong());
+            position += 8;
+            IntBuffer copyBookDetailsIds = map(channel, position, 4L * (lastCopyId + 1)).asIntBuffer();
+            position += 4L * (lastCopyId + 1);
+            IntBuffer copyWords = map(channel, position, 4L * (lastCopyId + 1)).asIntBuffer();
+            position += 4L * (lastCopyId + 1);
+            int copyCount = details[5].get(maxBookDetailsId + 1);
+            LongBuffer copyIds = map(channel, position, 8L * copyCount).asLongBuffer();
+
+            bookDistributorDAO.restore(new Copies(lastCopyId, copyBookDetailsIds, copyWords, maxBookDetailsId,
+                    available, lent, details[5], copyIds, lenders));
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        if(position + size > channel.size()){
+            throw new IOException("Truncated snapshot");
+        }
+        if(size > Integer.MAX_VALUE){
+            throw new IOException("Snapshot column larger than 2GB");
+        }
+        // the mapping stays valid after the channel is closed
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+    }
+
+    private static int toColumnIndex(long id) throws IOException {
+        // a column of 8 byte values must fit in one mapping
+        if(id >= Integer.MAX_VALUE / 8){
+            throw new IOException("Too many copies for a snapshot");
+        }
+        return (int) id;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] column) throws IOException {
+        for(int value : column){
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Strings numbered from 1 in order of appearance, 0 stands for null
+     */
+    private static class StringTable {
+        private final Map<String, Integer> indexes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int indexOf(String value){
+            if(isNull(value)){
+                return 0;
+            }
+            return indexes.computeIfAbsent(value, v -> {
+                values.add(v);
+                return values.size();
+            });
+        }
+
+        /**
+         * Writes the size of the table in bytes, the number of Strings and every String as its length and bytes
+         */
+        void writeTo(DataOutputStream out) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream table = new DataOutputStream(bytes);
+            table.writeInt(values.size());
+            for(String value : values){
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                table.writeInt(encoded.length);
+                table.write(encoded);
+            }
+            out.writeLong(bytes.size());
+            bytes.writeTo(out);
+        }
+
+        static String[] read(ByteBuffer buffer){
+            String[] values = new String[buffer.getInt() + 1];
+            for(int i = 1; i < values.length; i++){
+                byte[] encoded = new byte[buffer.getInt()];
+                buffer.get(encoded);
+                values[i] = new String(encoded, StandardCharsets.UTF_8);
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Mapped columns of the copies. Reading is thread safe, the buffers are only read by absolute index.
+     */
+    static final class Copies implements CopyTable.Source {
+        private final long lastId;
+        private final IntBuffer bookDetailsIds;
+        private final IntBuffer words;
+        private final int maxBookDetailsId;
+        private final IntBuffer available;
+        private final IntBuffer lent;
+        private final IntBuffer offsets;
+        private final LongBuffer copyIds;
+        private final String[] lenderNames;
+        private volatile int[] lenderCodes;
+
+        private Copies(long lastId, IntBuffer bookDetailsIds, IntBuffer words, int maxBookDetailsId, IntBuffer available,
+                       IntBuffer lent, IntBuffer offsets, LongBuffer copyIds, String[] lenderNames) {
+            this.lastId = lastId;
+            this.bookDetailsIds = bookDetailsIds;
+            this.words = words;
+            this.maxBookDetailsId = maxBookDetailsId;
+            this.available = available;
+            this.lent = lent;
+            this.offsets = offsets;
+            this.copyIds = copyIds;
+            this.lenderNames = lenderNames;
+        }
+
+        @Override
+        public long getLastId() {
+            return lastId;
+        }
+
+        @Override
+        public void load(long firstId, int[] bookDetailsIds, int[] words) {
+            int[] codes = lenderCodes;
+            for(int i = 0; i < words.length && firstId + i <= lastId; i++){
+                int id = (int) (firstId + i);
+                int word = this.words.get(id);
+                if(id > 0 && word != CopyTable.NO_COPY){
+                    bookDetailsIds[i] = this.bookDetailsIds.get(id);
+                    words[i] = CopyTable.pack(CopyTable.stateOf(word), codes[CopyTable.lenderOf(word)]);
+                }
+            }
+        }
+
+        int getMaxBookDetailsId() {
+            return maxBookDetailsId;
+        }
+
+        int getAvailable(int bookDetailsId) {
+            return available.get(bookDetailsId);
+        }
+
+        int getLent(int bookDetailsId) {
+            return lent.get(bookDetailsId);
+        }
+
+        long[] getCopyIds(int bookDetailsId) {
+            int from = offsets.get(bookDetailsId);
+            long[] ids = new long[offsets.get(bookDetailsId + 1) - from];
+            for(int i = 0; i < ids.length; i++){
+                ids[i] = copyIds.get(from + i);
+            }
+            return ids;
+        }
+
+        /**
+         * Names of lenders by their index in the snapshot, 0 is null
+         */
+        String[] getLenderNames() {
+            return lenderNames;
+        }
+
+        /**
+         * Must be set before rows are loaded
+         * @param lenderCodes codes of the lenders in the dictionary of the DAO, by their index in the snapshot
+         */
+        void setLenderCodes(int[] lenderCodes) {
+            this.lenderCodes = lenderCodes;
+        }
+    }
+}
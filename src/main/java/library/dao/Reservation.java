@@ -0,0 +1,53 @@
+package library.dao;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Place of a person in the queue of a book. Reservations of a book are served in the order they were made,
+ * a returned copy is lent to the first one that still waits.
+ */
+public class Reservation {
+
+    private static final int WAITING = 0;
+    private static final int LENT = 1;
+    private static final int CANCELLED = 2;
+
+    private final String person;
+    private final AtomicInteger state = new AtomicInteger(WAITING);
+    private volatile long bookId = IdGenerator.NO_ID;
+
+    public Reservation(String person) {
+        this.person = person;
+    }
+
+    public String getPerson() {
+        return person;
+    }
+
+    /**
+     * @return id of the copy lent to the person or IdGenerator.NO_ID while waiting
+     */
+    public long getBookId() {
+        return state.get() == LENT ? bookId : IdGenerator.NO_ID;
+    }
+
+    public boolean isWaiting() {
+        return state.get() == WAITING;
+    }
+
+    /**
+     * Takes the reservation out of the queue
+     * @return false if a copy was already lent to the person
+     */
+    public boolean cancel() {
+        return state.compareAndSet(WAITING, CANCELLED) || state.get() == CANCELLED;
+    }
+
+    /**
+     * @return false if the reservation was cancelled
+     */
+    boolean lend(long id) {
+        bookId = id;
+        return state.compareAndSet(WAITING, LENT);
+    }
+}
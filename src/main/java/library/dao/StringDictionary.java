@@ -0,0 +1,134 @@
+package library.dao;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Maps Strings that repeat across the catalog, like authors, to int codes, so every occurrence
+ * is stored as an int and compared without looking at the characters. Codes are reference counted,
+ * a String is dropped when its last user releases it. Codes are never reused, so a code read
+ * before a concurrent release can't start to mean another String. Code 0 stands for null.
+ */
+class StringDictionary {
+
+    static final int NULL_CODE = 0;
+    static final int NO_CODE = -1;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private final ConcurrentHashMap<String, Entry> codes = new ConcurrentHashMap<>();
+
+    private volatile AtomicReferenceArray<String>[] pages = newPages(1);
+
+    // guarded by this
+    private int lastCode;
+
+    /**
+     * @param value
+     * @return code of the String or NO_CODE if it is not in the dictionary
+     */
+    int codeOf(String value){
+        if(isNull(value)){
+            return NULL_CODE;
+        }
+        Entry entry = codes.get(value);
+        return isNull(entry) ? NO_CODE : entry.code;
+    }
+
+    /**
+     * @param code
+     * @return the String or null if the code was released
+     */
+    String valueOf(int code){
+        if(code <= NULL_CODE){
+            return null;
+        }
+        AtomicReferenceArray<String>[] current = pages;
+        int page = code >>> PAGE_BITS;
+        return page < current.length && !isNull(current[page]) ? current[page].get(code & (PAGE_SIZE - 1)) : null;
+    }
+
+    /**
+     * Registers one more user of the String, adding it if it is new
+     * @param value
+     * @return code of the String
+     */
+    synchronized int retain(String value){
+        if(isNull(value)){
+            return NULL_CODE;
+        }
+        Entry entry = codes.get(value);
+        if(isNull(entry)){
+            entry = new Entry(++lastCode);
+            page(entry.code).set(entry.code & (PAGE_SIZE - 1), value);
+            codes.put(value, entry);
+        }
+        entry.references++;
+        return entry.code;
+    }
+
+    /**
+     * Adds the String for good, for values that are never released like names of lenders.
+     * Known Strings are looked up without locking
+     * @param value
+     * @return code of the String
+     */
+    int intern(String value){
+        Entry entry = isNull(value) ? null : codes.get(value);
+        return isNull(entry) ? retain(value) : entry.code;
+    }
+
+    /**
+     * Unregisters one user of the String and drops it when no user is left
+     * @param code
+     */
+    synchronized void release(int code){
+        String value = valueOf(code);
+        if(isNull(value)){
+            return;
+        }
+        Entry entry = codes.get(value);
+        if(--entry.references <= 0){
+            codes.remove(value);
+            page(code).set(code & (PAGE_SIZE - 1), null);
+        }
+    }
+
+    int size(){
+        return codes.size();
+    }
+
+    private AtomicReferenceArray<String> page(int code){
+        int page = code >>> PAGE_BITS;
+        AtomicReferenceArray<String>[] current = pages;
+        if(page >= current.length){
+            AtomicReferenceArray<String>[] grown = newPages(Math.max(page + 1, current.length * 2));
+            System.arraycopy(current, 0, grown, 0, current.length);
+            pages = current = grown;
+        }
+        if(isNull(current[page])){
+            current[page] = new AtomicReferenceArray<>(PAGE_SIZE);
+            // publishes the new page to readers that don't take the lock
+            pages = current;
+        }
+        return current[page];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static AtomicReferenceArray<String>[] newPages(int count){
+        return new AtomicReferenceArray[count];
+    }
+
+    private static class Entry {
+        private final int code;
+        // guarded by the dictionary
+        private int references;
+
+        Entry(int code){
+            this.code = code;
+        }
+    }
+}
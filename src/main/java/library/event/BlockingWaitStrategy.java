@@ -0,0 +1,50 @@
+package library.event;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks the consumer until the publisher signals. The publisher only takes the lock
+ * when a consumer is waiting, so while consumers keep up publishing takes no lock.
+ */
+class BlockingWaitStrategy implements WaitStrategy {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        if (ready.getAsBoolean()) {
+            return;
+        }
+        lock.lock();
+        try {
+            // a publisher that misses the counter has already made the condition true
+            waiting.incrementAndGet();
+            try {
+                while (!ready.getAsBoolean()) {
+                    published.await();
+                }
+            } finally {
+                waiting.decrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void signalAll() {
+        if (waiting.get() > 0) {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package library.event;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Checks for the next event in a loop, for consumers that have a core of their own
+ */
+class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    @Override
+    public void signalAll() {
+    }
+}
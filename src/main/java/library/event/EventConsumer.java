@@ -0,0 +1,13 @@
+package library.event;
+
+/**
+ * Consumer of the events of an EventStream, called on a thread of its own
+ */
+public interface EventConsumer {
+
+    /**
+     * @param event valid only until the method returns
+     * @param endOfBatch whether there are no more events published right now, e.g. to flush a batch of work
+     */
+    void onEvent(LibraryEvent event, boolean endOfBatch);
+}
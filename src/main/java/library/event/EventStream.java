@@ -0,0 +1,195 @@
+package library.event;
+
+import library.model.BookDetails;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Events of a library kept in a ring buffer of preallocated slots, read by any number of consumers,
+ * each on its own thread and at its own pace. A publisher claims the next sequence, fills its slot
+ * and marks it published, without locks and without allocating. A slot is only reused once every
+ * consumer has read it, so a slow consumer makes publishers wait instead of letting a queue grow.
+ */
+public class EventStream {
+
+    private final static Logger logger = Logger.getLogger(EventStream.class.getName());
+
+    private final LibraryEvent[] events;
+    private final int mask;
+    private final int indexBits;
+
+    /**
+     * For every slot the round of the ring in which it was last published, see isPublished
+     */
+    private final AtomicIntegerArray publishedRounds;
+
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final WaitStrategy waitStrategy;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Lowest sequence read by all consumers, as last computed, so publishers rarely look at every consumer
+     */
+    private volatile long gatingSequence = -1;
+
+    /**
+     * @param bufferSize number of slots, rounded up to a power of two
+     * @param waitStrategy how consumers wait for events
+     */
+    public EventStream(int bufferSize, WaitStrategy waitStrategy) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        int size = bufferSize == 1 ? 1 : Integer.highestOneBit(bufferSize - 1) << 1;
+        this.events = new LibraryEvent[size];
+        for (int i = 0; i < size; i++) {
+            events[i] = new LibraryEvent();
+        }
+        this.mask = size - 1;
+        this.indexBits = Integer.numberOfTrailingZeros(size);
+        this.publishedRounds = new AtomicIntegerArray(size);
+        for (int i = 0; i < size; i++) {
+            publishedRounds.set(i, -1);
+        }
+        this.waitStrategy = waitStrategy;
+    }
+
+    public int getBufferSize() {
+        return events.length;
+    }
+
+    /**
+     * Publishes an event, waiting while the slot it needs has not been read by every consumer yet
+     * @param type
+     * @param bookId
+     * @param bookDetails
+     * @param person
+     */
+    public void publish(LibraryEvent.Type type, long bookId, BookDetails bookDetails, String person) {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - events.length;
+        while (wrapPoint > gatingSequence) {
+            long minimum = minimumConsumerSequence(sequence - 1);
+            gatingSequence = minimum;
+            if (wrapPoint > minimum) {
+                LockSupport.parkNanos(1000);
+            }
+        }
+        int index = (int) sequence & mask;
+        events[index].set(sequence, type, bookId, bookDetails, person);
+        publishedRounds.set(index, (int) (sequence >>> indexBits));
+        waitStrategy.signalAll();
+    }
+
+    /**
+     * Starts a consumer of the events published from now on
+     * @param name name of the thread of the consumer
+     * @param consumer
+     * @return subscription to close when the consumer is not needed anymore
+     */
+    public Subscription subscribe(String name, EventConsumer consumer) {
+        Subscription subscription = new Subscription(consumer);
+        // gates publishers from the next claimed sequence on, events before it are never read
+        subscription.sequence.set(claimed.get());
+        subscriptions.add(subscription);
+        subscription.thread = new Thread(subscription::run, name);
+        subscription.thread.setDaemon(true);
+        subscription.thread.start();
+        return subscription;
+    }
+
+    private boolean isPublished(long sequence) {
+        return publishedRounds.get((int) sequence & mask) == (int) (sequence >>> indexBits);
+    }
+
+    /**
+     * @param limit returned when there are no consumers
+     */
+    private long minimumConsumerSequence(long limit) {
+        long minimum = limit;
+        for (Subscription subscription : subscriptions) {
+            minimum = Math.min(minimum, subscription.sequence.get());
+        }
+        return minimum;
+    }
+
+    /**
+     * Consumer of a stream, reads events in batches of everything published when it wakes up
+     */
+    public class Subscription implements Closeable {
+
+        private final EventConsumer consumer;
+
+        /**
+         * Last sequence this consumer has read, publishers may reuse its slot
+         */
+        private final AtomicLong sequence = new AtomicLong();
+        private volatile boolean closed;
+        private Thread thread;
+        private long next;
+        private final BooleanSupplier ready = () -> closed || isPublished(next);
+
+        private Subscription(EventConsumer consumer) {
+            this.consumer = consumer;
+        }
+
+        /**
+         * @return last sequence the consumer has read
+         */
+        public long getSequence() {
+            return sequence.get();
+        }
+
+        /**
+         * @return number of published events the consumer hasn't read yet
+         */
+        public long getBacklog() {
+            return Math.max(claimed.get() - sequence.get(), 0);
+        }
+
+        /**
+         * Stops the consumer, publishers don't wait for it anymore
+         */
+        @Override
+        public void close() {
+            closed = true;
+            subscriptions.remove(this);
+            thread.interrupt();
+        }
+
+        private void run() {
+            next = sequence.get() + 1;
+            try {
+                while (!closed) {
+                    waitStrategy.await(ready);
+                    if (closed) {
+                        break;
+                    }
+                    long last = next;
+                    while (isPublished(last + 1) && last + 1 - next < events.length) {
+                        last++;
+                    }
+                    for (long s = next; s <= last; s++) {
+                        try {
+                            consumer.onEvent(events[(int) s & mask], s == last);
+                        } catch (RuntimeException e) {
+                            logger.log(Level.WARNING, "Consumer failed on event " + s, e);
+                        }
+                    }
+                    sequence.set(last);
+                    next = last + 1;
+                }
+            } catch (InterruptedException e) {
+                // closed
+            }
+        }
+    }
+}
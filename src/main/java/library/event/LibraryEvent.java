@@ -0,0 +1,87 @@
+package library.event;
+
+import library.model.BookDetails;
+
+/**
+ * Change of the library passed to consumers of an EventStream. Events are slots of a ring buffer
+ * that are reused for later changes, so a consumer must copy what it needs before it returns.
+ */
+public class LibraryEvent {
+
+    public enum Type {
+        /**
+         * A copy was added
+         */
+        BOOK_ADDED,
+        /**
+         * A copy was lent, the person is the lender
+         */
+        BOOK_LENT,
+        /**
+         * A lent copy was given back, the person is its last lender
+         */
+        BOOK_RETURNED,
+        /**
+         * A copy was removed
+         */
+        BOOK_REMOVED,
+        /**
+         * The last copy of a book was removed, so the book is not in the library anymore. The event has no copy id
+         */
+        TITLE_REMOVED
+    }
+
+    private long sequence;
+    private Type type;
+    private long bookId;
+    private BookDetails bookDetails;
+    private String person;
+
+    void set(long sequence, Type type, long bookId, BookDetails bookDetails, String person) {
+        this.sequence = sequence;
+        this.type = type;
+        this.bookId = bookId;
+        this.bookDetails = bookDetails;
+        this.person = person;
+    }
+
+    /**
+     * @return position of the event in the stream, events are numbered from 0 without gaps
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return id of the copy as a number, see IdGenerator, or IdGenerator.NO_ID for TITLE_REMOVED
+     */
+    public long getBookId() {
+        return bookId;
+    }
+
+    public BookDetails getBookDetails() {
+        return bookDetails;
+    }
+
+    /**
+     * @return lender of BOOK_LENT and BOOK_RETURNED, null for other events
+     */
+    public String getPerson() {
+        return person;
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryEvent{" +
+                "sequence=" + sequence +
+                ", type=" + type +
+                ", bookId=" + bookId +
+                ", bookDetails=" + bookDetails +
+                ", person='" + person + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package library.event;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a consumer waits for the next event. Spinning gives the lowest latency but keeps a core busy,
+ * blocking gives up the core but each event costs the publisher a check for waiting consumers.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Returns once the condition holds
+     * @param ready
+     * @throws InterruptedException
+     */
+    void await(BooleanSupplier ready) throws InterruptedException;
+
+    /**
+     * Called by the publisher after every event
+     */
+    void signalAll();
+
+    static WaitStrategy busySpin() {
+        return new BusySpinWaitStrategy();
+    }
+
+    static WaitStrategy yielding() {
+        return new YieldingWaitStrategy();
+    }
+
+    static WaitStrategy blocking() {
+        return new BlockingWaitStrategy();
+    }
+}
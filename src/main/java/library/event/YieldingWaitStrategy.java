@@ -0,0 +1,28 @@
+package library.event;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins for a while, then yields the core between checks
+ */
+class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public void await(BooleanSupplier ready) throws InterruptedException {
+        int tries = 0;
+        while (!ready.getAsBoolean()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (++tries > SPIN_TRIES) {
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    public void signalAll() {
+    }
+}
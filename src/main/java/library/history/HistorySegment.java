@@ -0,0 +1,245 @@
+package library.history;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.IntUnaryOperator;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Fixed number of finished loans in primitive columns, in the order they were returned.
+ * Copy ids and patron codes are kept as arrays. Times are a byte stream of variable length numbers:
+ * the difference between the return time and the previous return time, and the length of the loan,
+ * so a loan usually takes a few bytes of time instead of two longs. Every CHECKPOINT_INTERVAL loans
+ * the offset in the stream is remembered, a loan is decoded from the checkpoint before it.
+ *
+ * The active segment is written under the lock of the history and searched by scanning.
+ * A full segment is sealed: it gets sorted indexes by copy and by patron and is never changed again,
+ * so it is read without locking.
+ */
+class HistorySegment {
+
+    private static final int CHECKPOINT_INTERVAL = 64;
+
+    /**
+     * Callback of the loans of a segment
+     */
+    interface LoanConsumer {
+        void accept(long bookId, int patron, long lentAt, long returnedAt);
+    }
+
+    private final long[] bookIds;
+    private final int[] patrons;
+    private byte[] times;
+    private int timesLength;
+    private final int[] checkpointOffsets;
+    private final long[] checkpointTimes;
+    private int size;
+    private long lastReturnedAt;
+    private long minLentAt = Long.MAX_VALUE;
+    private long maxLentAt = Long.MIN_VALUE;
+
+    // built when the segment is sealed, keys are sorted and positions of a key are ascending
+    private long[] bookIdKeys;
+    private int[] bookIdOffsets;
+    private int[] bookIdPositions;
+    private int[] patronKeys;
+    private int[] patronOffsets;
+    private int[] patronPositions;
+
+    HistorySegment(int capacity) {
+        bookIds = new long[capacity];
+        patrons = new int[capacity];
+        times = new byte[Math.max(64, capacity * 4)];
+        int checkpoints = (capacity + CHECKPOINT_INTERVAL - 1) / CHECKPOINT_INTERVAL;
+        checkpointOffsets = new int[checkpoints];
+        checkpointTimes = new long[checkpoints];
+    }
+
+    void add(long bookId, int patron, long lentAt, long returnedAt) {
+        if (size % CHECKPOINT_INTERVAL == 0) {
+            checkpointOffsets[size / CHECKPOINT_INTERVAL] = timesLength;
+            checkpointTimes[size / CHECKPOINT_INTERVAL] = lastReturnedAt;
+        }
+        bookIds[size] = bookId;
+        patrons[size] = patron;
+        // clocks may go back, so both differences are zigzag encoded
+        writeVarLong(zigZag(returnedAt - lastReturnedAt));
+        writeVarLong(zigZag(returnedAt - lentAt));
+        lastReturnedAt = returnedAt;
+        minLentAt = Math.min(minLentAt, lentAt);
+        maxLentAt = Math.max(maxLentAt, lentAt);
+        size++;
+    }
+
+    boolean isFull() {
+        return size == bookIds.length;
+    }
+
+    /**
+     * @return whether a loan lent in [fromMillis, toMillis) may be in the segment
+     */
+    boolean mayContain(long fromMillis, long toMillis) {
+        return size > 0 && minLentAt < toMillis && maxLentAt >= fromMillis;
+    }
+
+    /**
+     * Builds the indexes and trims the time stream, the segment must not be changed afterwards
+     */
+    void seal() {
+        times = Arrays.copyOf(times, timesLength);
+        long[] sortedBookIds = Arrays.copyOf(bookIds, size);
+        Arrays.sort(sortedBookIds);
+        bookIdKeys = distinct(sortedBookIds);
+        bookIdOffsets = new int[bookIdKeys.length + 1];
+        for (int i = 0; i < size; i++) {
+            bookIdOffsets[Arrays.binarySearch(bookIdKeys, bookIds[i]) + 1]++;
+        }
+        bookIdPositions = positions(bookIdOffsets, i -> Arrays.binarySearch(bookIdKeys, bookIds[i]));
+
+        int[] sortedPatrons = Arrays.copyOf(patrons, size);
+        Arrays.sort(sortedPatrons);
+        patronKeys = Arrays.stream(sortedPatrons).distinct().toArray();
+        patronOffsets = new int[patronKeys.length + 1];
+        for (int i = 0; i < size; i++) {
+            patronOffsets[Arrays.binarySearch(patronKeys, patrons[i]) + 1]++;
+        }
+        patronPositions = positions(patronOffsets, i -> Arrays.binarySearch(patronKeys, patrons[i]));
+    }
+
+    /**
+     * Passes the loans of the copy to the consumer, in the order they were returned
+     */
+    void forEachOfBook(long bookId, LoanConsumer consumer) {
+        if (isNull(bookIdKeys)) {
+            forEach(i -> bookIds[i] == bookId, consumer);
+            return;
+        }
+        int key = Arrays.binarySearch(bookIdKeys, bookId);
+        if (key >= 0) {
+            forEach(bookIdPositions, bookIdOffsets[key], bookIdOffsets[key + 1], consumer);
+        }
+    }
+
+    /**
+     * Passes the loans of the patron to the consumer, in the order they were returned
+     */
+    void forEachOfPatron(int patron, LoanConsumer consumer) {
+        if (isNull(patronKeys)) {
+            forEach(i -> patrons[i] == patron, consumer);
+            return;
+        }
+        int key = Arrays.binarySearch(patronKeys, patron);
+        if (key >= 0) {
+            forEach(patronPositions, patronOffsets[key], patronOffsets[key + 1], consumer);
+        }
+    }
+
+    void forEach(LoanConsumer consumer) {
+        forEach(i -> true, consumer);
+    }
+
+    /**
+     * Decodes the loans at the ascending positions, jumping to the checkpoint of a position
+     * when it is not in the block already decoded
+     */
+    private void forEach(int[] positions, int from, int to, LoanConsumer consumer) {
+        Cursor cursor = new Cursor();
+        for (int k = from; k < to; k++) {
+            int position = positions[k];
+            int checkpoint = position / CHECKPOINT_INTERVAL;
+            if (cursor.index > position || cursor.index < checkpoint * CHECKPOINT_INTERVAL) {
+                cursor.seek(checkpoint);
+            }
+            while (cursor.index < position) {
+                cursor.next();
+            }
+            cursor.next();
+            consumer.accept(bookIds[position], patrons[position], cursor.lentAt, cursor.returnedAt);
+        }
+    }
+
+    private void forEach(IntPredicate filter, LoanConsumer consumer) {
+        Cursor cursor = new Cursor();
+        for (int i = 0; i < size; i++) {
+            cursor.next();
+            if (filter.test(i)) {
+                consumer.accept(bookIds[i], patrons[i], cursor.lentAt, cursor.returnedAt);
+            }
+        }
+    }
+
+    private int[] positions(int[] offsets, IntUnaryOperator keyOf) {
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        int[] positions = new int[size];
+        for (int i = 0; i < size; i++) {
+            positions[next[keyOf.applyAsInt(i)]++] = i;
+        }
+        return positions;
+    }
+
+    private static long[] distinct(long[] sorted) {
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, count);
+    }
+
+    private void writeVarLong(long value) {
+        if (timesLength + 10 > times.length) {
+            times = Arrays.copyOf(times, times.length * 2);
+        }
+        while ((value & ~0x7FL) != 0) {
+            times[timesLength++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        times[timesLength++] = (byte) value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Position in the time stream, index is the number of the next loan to decode
+     */
+    private class Cursor {
+        private int index;
+        private int offset;
+        private long returnedAt;
+        private long lentAt;
+
+        void seek(int checkpoint) {
+            index = checkpoint * CHECKPOINT_INTERVAL;
+            offset = checkpointOffsets[checkpoint];
+            returnedAt = checkpointTimes[checkpoint];
+        }
+
+        void next() {
+            returnedAt += unZigZag(readVarLong());
+            lentAt = returnedAt - unZigZag(readVarLong());
+            index++;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = times[offset++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package library.history;
+
+import library.dao.ConcurrentLongMap;
+import library.dao.IdGenerator;
+import library.persistence.LogRecord;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Append-only history of loans: which patron held which copy, from when until when.
+ * Register it as a change listener of the library:
+ * > libraryManager.addChangeListener(history);
+ *
+ * A lend opens a loan, the return of the copy finishes it and appends it to the active segment.
+ * Patrons are stored as dictionary codes and times are delta encoded, see HistorySegment.
+ * A full segment is sealed with indexes by copy and by patron, so the history of a copy or a patron
+ * is read from the indexes instead of scanning every loan, and segments without loans in the asked
+ * time range are skipped. Only the newest maxSegments sealed segments are kept, older loans are dropped,
+ * so memory stays bounded however long the library runs.
+ *
+ * The history is called under the lock of the title, so copies are split between stripes by their id,
+ * each with its own lock, open loans and active segment. Only sealing a full segment takes a lock shared by
+ * the stripes. Patrons are counted by the open loans and kept loans that refer to them, a patron is dropped
+ * from the dictionary when the last of them is dropped, and its code is reused after the next segment is dropped.
+ */
+public class LendingHistory implements Consumer<LogRecord> {
+
+    public static final int DEFAULT_SEGMENT_CAPACITY = 64 * 1024;
+    public static final int DEFAULT_MAX_SEGMENTS = 64;
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final int segmentCapacity;
+    private final int maxSegments;
+    private final LongSupplier clock;
+    private final Stripe[] stripes;
+
+    private final ConcurrentHashMap<String, Patron> patrons = new ConcurrentHashMap<>();
+    // elements are set under codeLock before their patron is published
+    private volatile Patron[] patronsByCode = new Patron[16];
+    private final Object codeLock = new Object();
+    // guarded by codeLock
+    private int nextCode;
+    private final ArrayDeque<Integer> freeCodes = new ArrayDeque<>();
+    private List<Integer> releasedCodes = new ArrayList<>();
+
+    /**
+     * Sealed segments from the oldest, replaced as a whole when a segment is sealed under sealLock
+     */
+    private volatile List<HistorySegment> sealed = Collections.emptyList();
+    private final Object sealLock = new Object();
+
+    /**
+     * History of the newest DEFAULT_SEGMENT_CAPACITY * DEFAULT_MAX_SEGMENTS loans, split between DEFAULT_STRIPES stripes
+     */
+    public LendingHistory() {
+        this(DEFAULT_SEGMENT_CAPACITY / DEFAULT_STRIPES, DEFAULT_MAX_SEGMENTS * DEFAULT_STRIPES, DEFAULT_STRIPES,
+                System::currentTimeMillis);
+    }
+
+    /**
+     * History with one stripe, loans are sealed in the order they were returned
+     * @param segmentCapacity number of loans of a segment
+     * @param maxSegments number of sealed segments kept
+     * @param clock current time in milliseconds since the epoch
+     */
+    public LendingHistory(int segmentCapacity, int maxSegments, LongSupplier clock) {
+        this(segmentCapacity, maxSegments, 1, clock);
+    }
+
+    /**
+     * @param segmentCapacity number of loans of a segment
+     * @param maxSegments number of sealed segments kept, of all stripes together
+     * @param stripes number of parts of the copies that are written independently, each fills its own segments
+     * @param clock current time in milliseconds since the epoch
+     */
+    public LendingHistory(int segmentCapacity, int maxSegments, int stripes, LongSupplier clock) {
+        if (segmentCapacity <= 0 || maxSegments < 0 || stripes <= 0) {
+            throw new IllegalArgumentException("Segment capacity and stripes must be positive and the number of segments not negative");
+        }
+        this.segmentCapacity = segmentCapacity;
+        this.maxSegments = maxSegments;
+        this.clock = clock;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    /**
+     * Records lends and returns of copies, other changes are ignored. A removed copy finishes its loan
+     * @param record
+     */
+    @Override
+    public void accept(LogRecord record) {
+        switch (record.getType()) {
+            case BOOK_LENT:
+                lent(record.getBookId(), record.getLastLenderName(), clock.getAsLong());
+                break;
+            case BOOK_AVAILABLE:
+            case BOOK_REMOVED:
+                returned(record.getBookId(), clock.getAsLong());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * @param bookId
+     * @return loans of the copy that are still kept, the current one included, ordered by lend time
+     */
+    public List<Loan> getHistoryOfCopy(String bookId) {
+        long id = IdGenerator.parse(bookId);
+        if (id == IdGenerator.NO_ID) {
+            return Collections.emptyList();
+        }
+        List<Loan> loans = new ArrayList<>();
+        Stripe stripe = stripeOf(id);
+        HistorySegment active;
+        synchronized (stripe) {
+            active = stripe.active;
+            active.forEachOfBook(id, (book, patron, lentAt, returnedAt) -> loans.add(loan(book, patron, lentAt, returnedAt)));
+            OpenLoan open = stripe.openLoans.get(id);
+            if (!isNull(open)) {
+                loans.add(loan(id, open.patron, open.lentAt, Loan.NOT_RETURNED));
+            }
+        }
+        for (HistorySegment segment : sealedAfter(Collections.singleton(active))) {
+            segment.forEachOfBook(id, (book, patron, lentAt, returnedAt) -> loans.add(loan(book, patron, lentAt, returnedAt)));
+        }
+        loans.sort(Comparator.comparingLong(Loan::getLentAt));
+        return loans;
+    }
+
+    /**
+     * @param patron
+     * @param fromMillis first lend time, inclusive
+     * @param toMillis last lend time, exclusive
+     * @return loans of the patron lent in the range that are still kept, ordered by lend time
+     */
+    public List<Loan> getLoansOfPatron(String patron, long fromMillis, long toMillis) {
+        Patron entry = isNull(patron) ? null : patrons.get(patron);
+        if (isNull(entry)) {
+            return Collections.emptyList();
+        }
+        int code = entry.code;
+        List<Loan> loans = new ArrayList<>();
+        Set<HistorySegment> read = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                read.add(stripe.active);
+                stripe.active.forEachOfPatron(code, inRange(loans, fromMillis, toMillis));
+                HistorySegment.LoanConsumer open = inRange(loans, fromMillis, toMillis);
+                stripe.openLoans.forEach((book, loan) -> {
+                    if (loan.patron == code) {
+                        open.accept(book, loan.patron, loan.lentAt, Loan.NOT_RETURNED);
+                    }
+                });
+            }
+        }
+        for (HistorySegment segment : sealedAfter(read)) {
+            if (segment.mayContain(fromMillis, toMillis)) {
+                segment.forEachOfPatron(code, inRange(loans, fromMillis, toMillis));
+            }
+        }
+        loans.sort(Comparator.comparingLong(Loan::getLentAt));
+        return loans;
+    }
+
+    /**
+     * Loans of all copies, e.g. for circulation statistics. Segments without loans in the range are skipped
+     * @param fromMillis first lend time, inclusive
+     * @param toMillis last lend time, exclusive
+     * @return loans lent in the range that are still kept, ordered by lend time
+     */
+    public List<Loan> getLoans(long fromMillis, long toMillis) {
+        List<Loan> loans = new ArrayList<>();
+        Set<HistorySegment> read = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                read.add(stripe.active);
+                stripe.active.forEach(inRange(loans, fromMillis, toMillis));
+                HistorySegment.LoanConsumer open = inRange(loans, fromMillis, toMillis);
+                stripe.openLoans.forEach((book, loan) -> open.accept(book, loan.patron, loan.lentAt, Loan.NOT_RETURNED));
+            }
+        }
+        for (HistorySegment segment : sealedAfter(read)) {
+            if (segment.mayContain(fromMillis, toMillis)) {
+                segment.forEach(inRange(loans, fromMillis, toMillis));
+            }
+        }
+        loans.sort(Comparator.comparingLong(Loan::getLentAt));
+        return loans;
+    }
+
+    /**
+     * Opens a loan, a loan of the copy that is still open is finished first
+     */
+    void lent(long bookId, String patron, long time) {
+        int code = retainPatron(isNull(patron) ? "" : patron);
+        Stripe stripe = stripeOf(bookId);
+        synchronized (stripe) {
+            finish(stripe, bookId, time);
+            stripe.openLoans.put(bookId, new OpenLoan(code, time));
+        }
+    }
+
+    /**
+     * Finishes the loan of the copy if it has one
+     */
+    void returned(long bookId, long time) {
+        Stripe stripe = stripeOf(bookId);
+        synchronized (stripe) {
+            finish(stripe, bookId, time);
+        }
+    }
+
+    /**
+     * @return number of patrons in the dictionary
+     */
+    int getPatronCount() {
+        return patrons.size();
+    }
+
+    /**
+     * Must be called under the lock of the stripe. A full segment is sealed before the lock is released,
+     * so readers holding the lock find every loan of the stripe either in its active segment or in a sealed one
+     */
+    private void finish(Stripe stripe, long bookId, long time) {
+        OpenLoan open = stripe.openLoans.remove(bookId);
+        if (isNull(open)) {
+            return;
+        }
+        // the reference of the open loan moves to the finished loan
+        stripe.active.add(bookId, open.patron, open.lentAt, time);
+        if (stripe.active.isFull()) {
+            HistorySegment full = stripe.active;
+            full.seal();
+            stripe.active = new HistorySegment(segmentCapacity);
+            List<HistorySegment> evicted = new ArrayList<>();
+            synchronized (sealLock) {
+                List<HistorySegment> segments = new ArrayList<>(sealed);
+                segments.add(full);
+                while (segments.size() > maxSegments) {
+                    evicted.add(segments.remove(0));
+                }
+                sealed = Collections.unmodifiableList(segments);
+            }
+            if (!evicted.isEmpty()) {
+                releasePatrons(evicted);
+            }
+        }
+    }
+
+    /**
+     * @param read active segments already read by the caller, they may have been sealed since
+     * @return sealed segments that were not read yet
+     */
+    private List<HistorySegment> sealedAfter(Set<HistorySegment> read) {
+        List<HistorySegment> segments = new ArrayList<>();
+        for (HistorySegment segment : sealed) {
+            if (!read.contains(segment)) {
+                segments.add(segment);
+            }
+        }
+        return segments;
+    }
+
+    private Stripe stripeOf(long bookId) {
+        return stripes[(int) ((bookId & Long.MAX_VALUE) % stripes.length)];
+    }
+
+    /**
+     * Counts one more loan of the patron, adding it to the dictionary if it is not there.
+     * Patrons that are already known are found without locking
+     * @return code of the patron
+     */
+    private int retainPatron(String name) {
+        while (true) {
+            Patron patron = patrons.get(name);
+            if (!isNull(patron)) {
+                if (patron.retain()) {
+                    return patron.code;
+                }
+                // its last loan was just dropped
+                patrons.remove(name, patron);
+                continue;
+            }
+            patron = newPatron(name);
+            if (isNull(patrons.putIfAbsent(name, patron))) {
+                return patron.code;
+            }
+            synchronized (codeLock) {
+                freeCodes.add(patron.code);
+            }
+        }
+    }
+
+    private Patron newPatron(String name) {
+        synchronized (codeLock) {
+            Integer free = freeCodes.poll();
+            int code = isNull(free) ? nextCode++ : free;
+            Patron[] byCode = patronsByCode;
+            if (code >= byCode.length) {
+                byCode = Arrays.copyOf(byCode, byCode.length * 2);
+            }
+            Patron patron = new Patron(name, code);
+            byCode[code] = patron;
+            // publishes the patron before its code can be read
+            patronsByCode = byCode;
+            return patron;
+        }
+    }
+
+    /**
+     * Releases the patrons of the dropped segments. Codes of patrons without loans become free after the next
+     * segments are dropped, so a query still reading the dropped segments finds the names they had
+     */
+    private void releasePatrons(List<HistorySegment> evicted) {
+        List<Integer> released = new ArrayList<>();
+        for (HistorySegment segment : evicted) {
+            segment.forEach((book, code, lentAt, returnedAt) -> {
+                Patron patron = patronsByCode[code];
+                if (patron.release()) {
+                    patrons.remove(patron.name, patron);
+                    released.add(code);
+                }
+            });
+        }
+        synchronized (codeLock) {
+            freeCodes.addAll(releasedCodes);
+            releasedCodes = released;
+        }
+    }
+
+    /**
+     * @return consumer that adds the loans lent in [fromMillis, toMillis) to the list
+     */
+    private HistorySegment.LoanConsumer inRange(List<Loan> loans, long fromMillis, long toMillis) {
+        return (book, patron, lentAt, returnedAt) -> {
+            if (lentAt >= fromMillis && lentAt < toMillis) {
+                loans.add(loan(book, patron, lentAt, returnedAt));
+            }
+        };
+    }
+
+    private Loan loan(long bookId, int patron, long lentAt, long returnedAt) {
+        return new Loan(IdGenerator.format(bookId), patronsByCode[patron].name, lentAt, returnedAt);
+    }
+
+    /**
+     * Copies whose id falls into the stripe: their open loans and the segment their finished loans are added to
+     */
+    private class Stripe {
+        /**
+         * copy id -> loan that is not finished yet, changed under the lock of the stripe
+         */
+        private final ConcurrentLongMap<OpenLoan> openLoans = new ConcurrentLongMap<>();
+
+        // guarded by the stripe
+        private HistorySegment active = new HistorySegment(segmentCapacity);
+    }
+
+    private static class Patron {
+        private final String name;
+        private final int code;
+
+        /**
+         * Open loans and kept loans of the patron, 0 once the patron was dropped
+         */
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        Patron(String name, int code) {
+            this.name = name;
+            this.code = code;
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = references.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return true if it was the last reference
+         */
+        boolean release() {
+            return references.decrementAndGet() == 0;
+        }
+    }
+
+    private static class OpenLoan {
+        private final int patron;
+        private final long lentAt;
+
+        OpenLoan(int patron, long lentAt) {
+            this.patron = patron;
+            this.lentAt = lentAt;
+        }
+    }
+}
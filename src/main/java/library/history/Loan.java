@@ -0,0 +1,76 @@
+package library.history;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * One lend of a copy, from the moment it was lent until it was returned
+ */
+public class Loan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final long NOT_RETURNED = -1;
+
+    private final String bookId;
+    private final String patron;
+    private final long lentAt;
+    private final long returnedAt;
+
+    public Loan(String bookId, String patron, long lentAt, long returnedAt) {
+        this.bookId = bookId;
+        this.patron = patron;
+        this.lentAt = lentAt;
+        this.returnedAt = returnedAt;
+    }
+
+    public String getBookId() {
+        return bookId;
+    }
+
+    public String getPatron() {
+        return patron;
+    }
+
+    /**
+     * @return milliseconds since the epoch
+     */
+    public long getLentAt() {
+        return lentAt;
+    }
+
+    /**
+     * @return milliseconds since the epoch or NOT_RETURNED while the copy is still lent
+     */
+    public long getReturnedAt() {
+        return returnedAt;
+    }
+
+    public boolean isReturned() {
+        return returnedAt != NOT_RETURNED;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Loan loan = (Loan) o;
+        return lentAt == loan.lentAt && returnedAt == loan.returnedAt
+                && Objects.equals(bookId, loan.bookId) && Objects.equals(patron, loan.patron);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(bookId, patron, lentAt, returnedAt);
+    }
+
+    @Override
+    public String toString() {
+        return "Loan{" +
+                "bookId='" + bookId + '\'' +
+                ", patron='" + patron + '\'' +
+                ", lentAt=" + lentAt +
+                ", returnedAt=" + returnedAt +
+                '}';
+    }
+}
@@ -0,0 +1,113 @@
+package library.io;
+
+import library.model.BookDetails;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Reads copies of books from a CSV file with columns title, author, year, one copy per line.
+ * Fields may be quoted with double quotes, a quote inside a quoted field is written twice.
+ * An empty year is read as an unknown year. An optional first line "title,author,year" is skipped. Lines are read lazily, so the whole
+ * file is never kept in memory.
+ */
+public class BookCsvReader implements Iterator<BookDetails>, Closeable {
+
+    private static final String HEADER = "title,author,year";
+
+    private final BufferedReader reader;
+    private BookDetails next;
+    private int lineNumber;
+
+    public BookCsvReader(Path file) throws IOException {
+        this(Files.newBufferedReader(file, StandardCharsets.UTF_8));
+    }
+
+    public BookCsvReader(Reader reader) {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (isNull(next)) {
+            next = readNext();
+        }
+        return !isNull(next);
+    }
+
+    @Override
+    public BookDetails next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        BookDetails result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private BookDetails readNext() {
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || (lineNumber == 1 && HEADER.equalsIgnoreCase(line.trim()))) {
+                    continue;
+                }
+                return parse(line);
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private BookDetails parse(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+
+        if (fields.size() != 3) {
+            throw new IllegalArgumentException("Line " + lineNumber + " should have 3 fields: title, author, year");
+        }
+        String year = fields.get(2).trim();
+        try {
+            return new BookDetails(fields.get(0), fields.get(1), year.isEmpty() ? null : Integer.valueOf(year));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Line " + lineNumber + " has incorrect year: " + fields.get(2));
+        }
+    }
+}
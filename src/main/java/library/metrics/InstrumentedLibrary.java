@@ -0,0 +1,313 @@
+package library.metrics;
+
+import library.Library;
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.SearchCriteria;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Library that measures every call of the library it wraps.
+ * Methods returning a stream are measured until the stream is returned, not while it is consumed.
+ */
+public class InstrumentedLibrary implements Library {
+
+    private final Library delegate;
+    private final LibraryMetrics metrics;
+
+    public InstrumentedLibrary(Library delegate) {
+        this.delegate = delegate;
+        this.metrics = new LibraryMetrics(delegate::getInventory);
+    }
+
+    public LibraryMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String addNewBook(String title, String author, Integer year) {
+        long start = metrics.start();
+        try {
+            String result = delegate.addNewBook(title, author, year);
+            metrics.stop(Operation.ADD_NEW_BOOK, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.ADD_NEW_BOOK, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public long importBooks(Iterator<BookDetails> books) {
+        long start = metrics.start();
+        try {
+            long result = delegate.importBooks(books);
+            metrics.stop(Operation.IMPORT_BOOKS, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.IMPORT_BOOKS, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public long importBooks(Stream<BookDetails> books) {
+        long start = metrics.start();
+        try {
+            long result = delegate.importBooks(books);
+            metrics.stop(Operation.IMPORT_BOOKS, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.IMPORT_BOOKS, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public long importBooks(Path csvFile) throws IOException {
+        long start = metrics.start();
+        try {
+            long result = delegate.importBooks(csvFile);
+            metrics.stop(Operation.IMPORT_BOOKS, start);
+            return result;
+        } catch (RuntimeException | IOException e) {
+            metrics.failed(Operation.IMPORT_BOOKS, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public BookDetails getBookById(String id) throws BookNotExistException {
+        long start = metrics.start();
+        try {
+            BookDetails result = delegate.getBookById(id);
+            metrics.stop(Operation.GET_BOOK_BY_ID, start);
+            return result;
+        } catch (RuntimeException | BookNotExistException e) {
+            metrics.failed(Operation.GET_BOOK_BY_ID, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<BookDetails> getAllBookDetails() {
+        long start = metrics.start();
+        try {
+            List<BookDetails> result = delegate.getAllBookDetails();
+            metrics.stop(Operation.GET_ALL_BOOK_DETAILS, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.GET_ALL_BOOK_DETAILS, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Stream<BookDetails> streamAllBookDetails() {
+        long start = metrics.start();
+        try {
+            Stream<BookDetails> result = delegate.streamAllBookDetails();
+            metrics.stop(Operation.STREAM_ALL_BOOK_DETAILS, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.STREAM_ALL_BOOK_DETAILS, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<BookInventory> getInventory() {
+        long start = metrics.start();
+        try {
+            List<BookInventory> result = delegate.getInventory();
+            metrics.stop(Operation.GET_INVENTORY, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.GET_INVENTORY, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void displayAllBooksInformation() {
+        long start = metrics.start();
+        try {
+            delegate.displayAllBooksInformation();
+            metrics.stop(Operation.DISPLAY_ALL_BOOKS_INFORMATION, start);
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.DISPLAY_ALL_BOOKS_INFORMATION, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void displayBookInformation(String id) throws BookNotExistException {
+        long start = metrics.start();
+        try {
+            delegate.displayBookInformation(id);
+            metrics.stop(Operation.DISPLAY_BOOK_INFORMATION, start);
+        } catch (RuntimeException | BookNotExistException e) {
+            metrics.failed(Operation.DISPLAY_BOOK_INFORMATION, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<BookDetails> getBookListByCriteria(SearchCriteria criteria) {
+        long start = metrics.start();
+        try {
+            List<BookDetails> result = delegate.getBookListByCriteria(criteria);
+            metrics.stop(Operation.GET_BOOK_LIST_BY_CRITERIA, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.GET_BOOK_LIST_BY_CRITERIA, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Stream<BookDetails> streamBookListByCriteria(SearchCriteria criteria) {
+        long start = metrics.start();
+        try {
+            Stream<BookDetails> result = delegate.streamBookListByCriteria(criteria);
+            metrics.stop(Operation.STREAM_BOOK_LIST_BY_CRITERIA, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.STREAM_BOOK_LIST_BY_CRITERIA, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Stream<BookDetails> streamBookDetailsByCriteria(SearchCriteria criteria) {
+        long start = metrics.start();
+        try {
+            Stream<BookDetails> result = delegate.streamBookDetailsByCriteria(criteria);
+            metrics.stop(Operation.STREAM_BOOK_DETAILS_BY_CRITERIA, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.STREAM_BOOK_DETAILS_BY_CRITERIA, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Page<BookDetails> getBookPageByCriteria(SearchCriteria criteria, PageRequest pageRequest) {
+        long start = metrics.start();
+        try {
+            Page<BookDetails> result = delegate.getBookPageByCriteria(criteria, pageRequest);
+            metrics.stop(Operation.GET_BOOK_PAGE_BY_CRITERIA, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.GET_BOOK_PAGE_BY_CRITERIA, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void removeBook(String id) throws BookNotExistException, BookAlreadyLentException {
+        long start = metrics.start();
+        try {
+            delegate.removeBook(id);
+            metrics.stop(Operation.REMOVE_BOOK, start);
+        } catch (RuntimeException | BookNotExistException | BookAlreadyLentException e) {
+            metrics.failed(Operation.REMOVE_BOOK, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public BookDetails lendBook(String id, String person) throws BookAlreadyLentException, BookNotExistException {
+        long start = metrics.start();
+        try {
+            BookDetails result = delegate.lendBook(id, person);
+            metrics.stop(Operation.LEND_BOOK, start);
+            return result;
+        } catch (RuntimeException | BookAlreadyLentException | BookNotExistException e) {
+            metrics.failed(Operation.LEND_BOOK, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public BookDetails lendBook(SearchCriteria criteria, String person) throws BookAlreadyLentException, BookNotExistException {
+        long start = metrics.start();
+        try {
+            BookDetails result = delegate.lendBook(criteria, person);
+            metrics.stop(Operation.LEND_BOOK_BY_CRITERIA, start);
+            return result;
+        } catch (RuntimeException | BookAlreadyLentException | BookNotExistException e) {
+            metrics.failed(Operation.LEND_BOOK_BY_CRITERIA, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * A result other than LENT is not an error, it is recorded like a successful call
+     */
+    @Override
+    public LendResult tryLendBook(String id, String person) {
+        long start = metrics.start();
+        try {
+            LendResult result = delegate.tryLendBook(id, person);
+            metrics.stop(Operation.TRY_LEND_BOOK, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.TRY_LEND_BOOK, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public LendResult tryLendBook(SearchCriteria criteria, String person) {
+        long start = metrics.start();
+        try {
+            LendResult result = delegate.tryLendBook(criteria, person);
+            metrics.stop(Operation.TRY_LEND_BOOK_BY_CRITERIA, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.TRY_LEND_BOOK_BY_CRITERIA, start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * Measures making the reservation, not the wait for a copy
+     */
+    @Override
+    public CompletableFuture<LendResult> reserveBook(SearchCriteria criteria, String person) {
+        long start = metrics.start();
+        try {
+            CompletableFuture<LendResult> result = delegate.reserveBook(criteria, person);
+            metrics.stop(Operation.RESERVE_BOOK, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.RESERVE_BOOK, start, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean returnBook(String id) {
+        long start = metrics.start();
+        try {
+            boolean result = delegate.returnBook(id);
+            metrics.stop(Operation.RETURN_BOOK, start);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.failed(Operation.RETURN_BOOK, start, e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package library.metrics;
+
+import library.model.BookInventory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Latency histograms and error counters of every operation, gauges of the size of the library
+ * and flight recorder events of slow operations. When disabled an operation costs one volatile read.
+ */
+public class LibraryMetrics implements LibraryMetricsMXBean {
+
+    static final long NOT_MEASURED = Long.MIN_VALUE;
+
+    private final OperationMetrics[] operations = new OperationMetrics[Operation.values().length];
+    private final Supplier<List<BookInventory>> inventory;
+    private volatile boolean enabled = true;
+    private volatile long slowOperationThresholdNanos = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * @param inventory source of the gauges, only called when they are read
+     */
+    public LibraryMetrics(Supplier<List<BookInventory>> inventory) {
+        this.inventory = inventory;
+        for (Operation operation : Operation.values()) {
+            operations[operation.ordinal()] = new OperationMetrics(operation);
+        }
+    }
+
+    /**
+     * @return start time to pass to stop or failed, NOT_MEASURED when metrics are disabled
+     */
+    long start() {
+        return enabled ? System.nanoTime() : NOT_MEASURED;
+    }
+
+    void stop(Operation operation, long start) {
+        if (start != NOT_MEASURED) {
+            record(operation, System.nanoTime() - start, false);
+        }
+    }
+
+    void failed(Operation operation, long start, Throwable error) {
+        if (start != NOT_MEASURED) {
+            operations[operation.ordinal()].failed(error);
+            record(operation, System.nanoTime() - start, true);
+        }
+    }
+
+    private void record(Operation operation, long duration, boolean failed) {
+        operations[operation.ordinal()].getLatency().record(duration);
+        if (duration >= slowOperationThresholdNanos && SlowOperationEvent.isAvailable()) {
+            SlowOperationEvent.commit(operation, duration, failed);
+        }
+    }
+
+    public OperationMetrics getOperation(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server as library:type=LibraryMetrics,name=name
+     * @param name
+     * @return name of the registered MBean
+     * @throws JMException
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName("library:type=LibraryMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public long getSlowOperationThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(slowOperationThresholdNanos);
+    }
+
+    @Override
+    public void setSlowOperationThresholdMillis(long thresholdMillis) {
+        this.slowOperationThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    @Override
+    public long getCatalogSize() {
+        return inventory.get().size();
+    }
+
+    @Override
+    public long getCopyCount() {
+        return inventory.get().stream().mapToLong(i -> i.getAvailableCount() + i.getLentCount()).sum();
+    }
+
+    @Override
+    public double getLentRatio() {
+        long copies = 0;
+        long lent = 0;
+        for (BookInventory bookInventory : inventory.get()) {
+            copies += bookInventory.getAvailableCount() + bookInventory.getLentCount();
+            lent += bookInventory.getLentCount();
+        }
+        return copies == 0 ? 0 : (double) lent / copies;
+    }
+
+    @Override
+    public List<OperationStats> getOperations() {
+        return Arrays.stream(operations)
+                .filter(o -> o.getLatency().getCount() > 0)
+                .map(OperationStats::new)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void reset() {
+        for (OperationMetrics operation : operations) {
+            operation.reset();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package library.metrics;
+
+import java.util.List;
+
+/**
+ * Metrics of a library exported through JMX
+ */
+public interface LibraryMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getSlowOperationThresholdMillis();
+
+    void setSlowOperationThresholdMillis(long thresholdMillis);
+
+    /**
+     * @return number of different books
+     */
+    long getCatalogSize();
+
+    /**
+     * @return number of copies, available or lent
+     */
+    long getCopyCount();
+
+    /**
+     * @return lent copies divided by all copies, 0 for an empty library
+     */
+    double getLentRatio();
+
+    /**
+     * @return statistics of every operation that was called at least once
+     */
+    List<OperationStats> getOperations();
+
+    void reset();
+}
@@ -0,0 +1,26 @@
+package library.metrics;
+
+/**
+ * Methods of Library that are measured
+ */
+public enum Operation {
+    ADD_NEW_BOOK,
+    IMPORT_BOOKS,
+    GET_BOOK_BY_ID,
+    GET_ALL_BOOK_DETAILS,
+    STREAM_ALL_BOOK_DETAILS,
+    GET_INVENTORY,
+    DISPLAY_ALL_BOOKS_INFORMATION,
+    DISPLAY_BOOK_INFORMATION,
+    GET_BOOK_LIST_BY_CRITERIA,
+    STREAM_BOOK_LIST_BY_CRITERIA,
+    STREAM_BOOK_DETAILS_BY_CRITERIA,
+    GET_BOOK_PAGE_BY_CRITERIA,
+    REMOVE_BOOK,
+    LEND_BOOK,
+    LEND_BOOK_BY_CRITERIA,
+    TRY_LEND_BOOK,
+    TRY_LEND_BOOK_BY_CRITERIA,
+    RESERVE_BOOK,
+    RETURN_BOOK
+}
@@ -0,0 +1,61 @@
+package library.metrics;
+
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failures of one operation
+ */
+public class OperationMetrics {
+
+    private final Operation operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder bookNotExist = new LongAdder();
+    private final LongAdder bookAlreadyLent = new LongAdder();
+    private final LongAdder otherErrors = new LongAdder();
+
+    OperationMetrics(Operation operation) {
+        this.operation = operation;
+    }
+
+    void failed(Throwable error) {
+        if (error instanceof BookNotExistException) {
+            bookNotExist.increment();
+        }
+        else if (error instanceof BookAlreadyLentException) {
+            bookAlreadyLent.increment();
+        }
+        else {
+            otherErrors.increment();
+        }
+    }
+
+    void reset() {
+        latency.reset();
+        bookNotExist.reset();
+        bookAlreadyLent.reset();
+        otherErrors.reset();
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getBookNotExistCount() {
+        return bookNotExist.sum();
+    }
+
+    public long getBookAlreadyLentCount() {
+        return bookAlreadyLent.sum();
+    }
+
+    public long getOtherErrorCount() {
+        return otherErrors.sum();
+    }
+}
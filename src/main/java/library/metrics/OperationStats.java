@@ -0,0 +1,88 @@
+package library.metrics;
+
+/**
+ * Snapshot of the metrics of one operation, latencies in microseconds
+ */
+public class OperationStats {
+
+    private final String operation;
+    private final long count;
+    private final double meanMicros;
+    private final long p50Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+    private final long bookNotExistCount;
+    private final long bookAlreadyLentCount;
+    private final long otherErrorCount;
+
+    public OperationStats(OperationMetrics metrics) {
+        LatencyHistogram latency = metrics.getLatency();
+        this.operation = metrics.getOperation().name();
+        this.count = latency.getCount();
+        this.meanMicros = latency.getMean() / 1000;
+        this.p50Micros = latency.getValueAtPercentile(50) / 1000;
+        this.p99Micros = latency.getValueAtPercentile(99) / 1000;
+        this.p999Micros = latency.getValueAtPercentile(99.9) / 1000;
+        this.maxMicros = latency.getMax() / 1000;
+        this.bookNotExistCount = metrics.getBookNotExistCount();
+        this.bookAlreadyLentCount = metrics.getBookAlreadyLentCount();
+        this.otherErrorCount = metrics.getOtherErrorCount();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    public long getBookNotExistCount() {
+        return bookNotExistCount;
+    }
+
+    public long getBookAlreadyLentCount() {
+        return bookAlreadyLentCount;
+    }
+
+    public long getOtherErrorCount() {
+        return otherErrorCount;
+    }
+
+    @Override
+    public String toString() {
+        return "OperationStats{" +
+                "operation=" + operation +
+                ", count=" + count +
+                ", meanMicros=" + meanMicros +
+                ", p50Micros=" + p50Micros +
+                ", p99Micros=" + p99Micros +
+                ", p999Micros=" + p999Micros +
+                ", maxMicros=" + maxMicros +
+                ", bookNotExistCount=" + bookNotExistCount +
+                ", bookAlreadyLentCount=" + bookAlreadyLentCount +
+                ", otherErrorCount=" + otherErrorCount +
+                '}';
+    }
+}
@@ -0,0 +1,99 @@
+package library.metrics;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Flight recorder event of an operation that took longer than the slow operation threshold.
+ * The library is built for Java 8, where the flight recorder API may be missing, so the event type
+ * is defined with jdk.jfr.EventFactory through reflection when the class is loaded, and nothing is
+ * recorded when the API is not there.
+ */
+class SlowOperationEvent {
+
+    private final static Logger logger = Logger.getLogger(SlowOperationEvent.class.getName());
+
+    private static final int OPERATION = 0;
+    private static final int DURATION = 1;
+    private static final int FAILED = 2;
+
+    /**
+     * EventFactory.newEvent, Event.isEnabled, Event.set and Event.commit, null when there is no flight recorder
+     */
+    private static final MethodHandle[] HANDLES = createHandles();
+
+    private SlowOperationEvent() {
+    }
+
+    static boolean isAvailable() {
+        return !isNull(HANDLES);
+    }
+
+    /**
+     * Only called for slow operations, so an event is never allocated on the fast path
+     */
+    static void commit(Operation operation, long duration, boolean failed) {
+        if (isNull(HANDLES)) {
+            return;
+        }
+        try {
+            Object event = HANDLES[0].invoke();
+            if ((boolean) HANDLES[1].invoke(event)) {
+                HANDLES[2].invoke(event, OPERATION, operation.name());
+                HANDLES[2].invoke(event, DURATION, duration);
+                HANDLES[2].invoke(event, FAILED, failed);
+                HANDLES[3].invoke(event);
+            }
+        } catch (Throwable e) {
+            logger.log(Level.FINE, "Recording a slow operation failed", e);
+        }
+    }
+
+    private static MethodHandle[] createHandles() {
+        try {
+            List<Object> annotations = Arrays.asList(
+                    annotation("Name", "library.SlowOperation"),
+                    annotation("Label", "Slow Library Operation"),
+                    annotation("Category", new String[]{"Library"}),
+                    annotation("Description", "Library operation slower than the configured threshold"));
+            // in the order of OPERATION, DURATION and FAILED, the name duration is taken by a field of every event
+            List<Object> fields = Arrays.asList(
+                    field(String.class, "operation", annotation("Label", "Operation")),
+                    field(long.class, "operationDuration", annotation("Label", "Operation Duration"), annotation("Timespan", "NANOSECONDS")),
+                    field(boolean.class, "failed", annotation("Label", "Failed")));
+            Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+            Object factory = factoryClass.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+
+            Class<?> eventClass = Class.forName("jdk.jfr.Event");
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            return new MethodHandle[]{
+                    lookup.findVirtual(factoryClass, "newEvent", MethodType.methodType(eventClass)).bindTo(factory),
+                    lookup.findVirtual(eventClass, "isEnabled", MethodType.methodType(boolean.class)),
+                    lookup.findVirtual(eventClass, "set", MethodType.methodType(void.class, int.class, Object.class)),
+                    lookup.findVirtual(eventClass, "commit", MethodType.methodType(void.class))};
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object annotation(String name, Object value) throws ReflectiveOperationException {
+        Class<? extends Annotation> type = (Class<? extends Annotation>) Class.forName("jdk.jfr." + name);
+        return Class.forName("jdk.jfr.AnnotationElement").getConstructor(Class.class, Object.class).newInstance(type, value);
+    }
+
+    private static Object field(Class<?> type, String name, Object... annotations) throws ReflectiveOperationException {
+        Constructor<?> constructor = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class, List.class);
+        return constructor.newInstance(type, name, Collections.unmodifiableList(Arrays.asList(annotations)));
+    }
+}
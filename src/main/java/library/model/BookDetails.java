@@ -1,9 +1,12 @@
 package library.model;
 
 
+import java.io.Serializable;
 import java.util.Objects;
 
-public class BookDetails {
+public class BookDetails implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final String title;
     private final String author;
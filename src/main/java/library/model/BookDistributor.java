@@ -1,22 +1,38 @@
 package library.model;
 
 
+/**
+ * Copy of a book as it was when the object was made. Copies are kept packed in BookDistributorDAO
+ * and only turned into objects when they are asked for, changing this object doesn't change the copy.
+ */
 public class BookDistributor {
 
-    private String bookDetailsId;
-    private boolean isLent;
+    private final int bookDetailsId;
+    private boolean lent;
+    private boolean removed;
     private String lastLenderName;
 
-    public BookDistributor(String bookDetailsId) {
+    public BookDistributor(int bookDetailsId) {
         this.bookDetailsId = bookDetailsId;
     }
 
-    public String getBookDetailsId() {
+    public BookDistributor(int bookDetailsId, boolean lent, boolean removed, String lastLenderName) {
+        this.bookDetailsId = bookDetailsId;
+        this.lent = lent;
+        this.removed = removed;
+        this.lastLenderName = lastLenderName;
+    }
+
+    public int getBookDetailsId() {
         return bookDetailsId;
     }
 
     public boolean isLent() {
-        return isLent;
+        return lent;
+    }
+
+    public boolean isRemoved() {
+        return removed;
     }
 
     public String getLastLenderName() {
@@ -24,7 +40,7 @@ public class BookDistributor {
     }
 
     public void setLent(boolean lent) {
-        isLent = lent;
+        this.lent = lent;
     }
 
     public void setLastLenderName(String lastLenderName) {
@@ -0,0 +1,39 @@
+package library.model;
+
+import java.io.Serializable;
+
+public class BookInventory implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final BookDetails bookDetails;
+    private final int availableCount;
+    private final int lentCount;
+
+    public BookInventory(BookDetails bookDetails, int availableCount, int lentCount) {
+        this.bookDetails = bookDetails;
+        this.availableCount = availableCount;
+        this.lentCount = lentCount;
+    }
+
+    public BookDetails getBookDetails() {
+        return bookDetails;
+    }
+
+    public int getAvailableCount() {
+        return availableCount;
+    }
+
+    public int getLentCount() {
+        return lentCount;
+    }
+
+    @Override
+    public String toString() {
+        return "BookInventory{" +
+                "bookDetails=" + bookDetails +
+                ", availableCount=" + availableCount +
+                ", lentCount=" + lentCount +
+                '}';
+    }
+}
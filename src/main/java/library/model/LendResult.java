@@ -0,0 +1,81 @@
+package library.model;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of a lend that doesn't throw. A lend that fails because of a lent or missing book
+ * is a normal case under load, so it is returned as a status and costs no exception.
+ */
+public class LendResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Status {
+        LENT,
+        ALL_LENT,
+        NOT_FOUND
+    }
+
+    private static final LendResult ALL_LENT = new LendResult(Status.ALL_LENT, null, null);
+    private static final LendResult NOT_FOUND = new LendResult(Status.NOT_FOUND, null, null);
+
+    private final Status status;
+    private final String bookId;
+    private final BookDetails bookDetails;
+
+    private LendResult(Status status, String bookId, BookDetails bookDetails) {
+        this.status = status;
+        this.bookId = bookId;
+        this.bookDetails = bookDetails;
+    }
+
+    /**
+     * @param bookId id of the lent copy
+     * @param bookDetails
+     */
+    public static LendResult lent(String bookId, BookDetails bookDetails) {
+        return new LendResult(Status.LENT, bookId, bookDetails);
+    }
+
+    /**
+     * The book exists but no copy could be lent
+     */
+    public static LendResult allLent() {
+        return ALL_LENT;
+    }
+
+    public static LendResult notFound() {
+        return NOT_FOUND;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isLent() {
+        return status == Status.LENT;
+    }
+
+    /**
+     * @return id of the lent copy or null if nothing was lent
+     */
+    public String getBookId() {
+        return bookId;
+    }
+
+    /**
+     * @return the lent book or null if nothing was lent
+     */
+    public BookDetails getBookDetails() {
+        return bookDetails;
+    }
+
+    @Override
+    public String toString() {
+        return "LendResult{" +
+                "status=" + status +
+                ", bookId='" + bookId + '\'' +
+                ", bookDetails=" + bookDetails +
+                '}';
+    }
+}
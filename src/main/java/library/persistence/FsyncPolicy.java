@@ -0,0 +1,24 @@
+package library.persistence;
+
+/**
+ * When the write-ahead log forces written records to the disk
+ */
+public enum FsyncPolicy {
+
+    /**
+     * Every operation waits until its record is on the disk. Records of concurrent operations
+     * are written and forced together (group commit).
+     */
+    ALWAYS,
+
+    /**
+     * Records are forced in the background every fsyncIntervalMillis,
+     * a crash may lose operations of the last interval.
+     */
+    INTERVAL,
+
+    /**
+     * Records are never forced explicitly, the operating system decides when they reach the disk.
+     */
+    NEVER
+}
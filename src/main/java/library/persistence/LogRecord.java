@@ -0,0 +1,120 @@
+package library.persistence;
+
+import library.model.BookDetails;
+
+import java.io.*;
+
+import static java.util.Objects.isNull;
+
+/**
+ * One mutation of the library. Apart from BOOK_ADDED every record holds the whole state of a copy
+ * after the change, so replaying the last record of a copy restores the copy no matter in which
+ * order records of concurrent changes reached the log.
+ */
+public class LogRecord {
+
+    // a year no book can have, written for books without a year
+    private static final int NO_YEAR = Integer.MIN_VALUE;
+
+    public enum Type {
+        BOOK_ADDED, BOOK_AVAILABLE, BOOK_LENT, BOOK_REMOVED, IDS_RESERVED
+    }
+
+    private final Type type;
+    private final long bookId;
+    private final BookDetails bookDetails;
+    private final String lastLenderName;
+
+    private LogRecord(Type type, long bookId, BookDetails bookDetails, String lastLenderName) {
+        this.type = type;
+        this.bookId = bookId;
+        this.bookDetails = bookDetails;
+        this.lastLenderName = lastLenderName;
+    }
+
+    public static LogRecord bookAdded(long bookId, BookDetails bookDetails) {
+        return new LogRecord(Type.BOOK_ADDED, bookId, bookDetails, null);
+    }
+
+    public static LogRecord bookAvailable(long bookId, String lastLenderName) {
+        return new LogRecord(Type.BOOK_AVAILABLE, bookId, null, lastLenderName);
+    }
+
+    public static LogRecord bookLent(long bookId, String lastLenderName) {
+        return new LogRecord(Type.BOOK_LENT, bookId, null, lastLenderName);
+    }
+
+    public static LogRecord bookRemoved(long bookId) {
+        return new LogRecord(Type.BOOK_REMOVED, bookId, null, null);
+    }
+
+    /**
+     * Written first in a snapshot: ids of copies removed before the snapshot are not in it,
+     * but must never be given to new copies
+     * @param lastId the highest id of a copy given out so far
+     */
+    public static LogRecord idsReserved(long lastId) {
+        return new LogRecord(Type.IDS_RESERVED, lastId, null, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getBookId() {
+        return bookId;
+    }
+
+    public BookDetails getBookDetails() {
+        return bookDetails;
+    }
+
+    public String getLastLenderName() {
+        return lastLenderName;
+    }
+
+    /**
+     * @return the record as written to the write-ahead log and sent to replicas
+     */
+    public byte[] toBytes() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(type.ordinal());
+            out.writeLong(bookId);
+            if (type == Type.BOOK_ADDED) {
+                out.writeUTF(bookDetails.getTitle());
+                out.writeUTF(bookDetails.getAuthor());
+                out.writeInt(isNull(bookDetails.getYear()) ? NO_YEAR : bookDetails.getYear());
+            } else if (type != Type.BOOK_REMOVED && type != Type.IDS_RESERVED) {
+                out.writeBoolean(!isNull(lastLenderName));
+                if (!isNull(lastLenderName)) {
+                    out.writeUTF(lastLenderName);
+                }
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public static LogRecord fromBytes(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        Type type = Type.values()[in.readUnsignedByte()];
+        long bookId = in.readLong();
+        switch (type) {
+            case BOOK_ADDED:
+                String title = in.readUTF();
+                String author = in.readUTF();
+                int year = in.readInt();
+                return bookAdded(bookId, new BookDetails(title, author, year == NO_YEAR ? null : year));
+            case BOOK_REMOVED:
+                return bookRemoved(bookId);
+            case IDS_RESERVED:
+                return idsReserved(bookId);
+            default:
+                String lastLenderName = in.readBoolean() ? in.readUTF() : null;
+                return new LogRecord(type, bookId, null, lastLenderName);
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package library.persistence;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Append-only log of library mutations kept in segment files of the configured directory.
+ *
+ * Appending only puts the encoded record on a lock-free queue. A single writer thread drains the queue,
+ * writes everything it found with one FileChannel write and forces it according to the FsyncPolicy,
+ * so concurrent operations share one fsync (group commit).
+ *
+ * Every frame is: int length, int CRC32 of the payload, payload. Reading stops at the first torn
+ * or corrupted frame, which is what a crash in the middle of a write leaves behind.
+ *
+ * Compaction rolls to a new segment, writes the current state of the library to a snapshot file
+ * and deletes the segments the snapshot replaces. Replay reads the latest snapshot and the segments after it.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private final static Logger logger = Logger.getLogger(WriteAheadLog.class.getName());
+
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SUFFIX = ".log";
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int BATCH_SIZE = 1024 * 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final WriteAheadLogConfig config;
+    private final Path directory;
+    private final Queue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<CompletableFuture<Void>> lastAppend = new ThreadLocal<>();
+    private final Thread writer;
+    private volatile boolean running = true;
+    private volatile boolean writerParked;
+    private volatile IOException failure;
+    private volatile CompletableFuture<Long> rollRequest;
+    private volatile Supplier<Iterator<LogRecord>> snapshotSource;
+    private ScheduledExecutorService compactor;
+
+    // used only by the writer thread
+    private FileChannel segment;
+    private long segmentIndex;
+    private long segmentBytes;
+    private boolean unforced;
+    private long lastForceNanos = System.nanoTime();
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+    private final List<CompletableFuture<Void>> batchFutures = new ArrayList<>();
+
+    public WriteAheadLog(WriteAheadLogConfig config) throws IOException {
+        this.config = config;
+        this.directory = config.getDirectory();
+        Files.createDirectories(directory);
+
+        // never append behind a possibly torn tail of the previous run
+        segmentIndex = listIndexes(SEGMENT_PREFIX).stream().mapToLong(Long::longValue).max().orElse(0) + 1;
+        segment = openSegment(segmentIndex);
+
+        writer = new Thread(this::writeLoop, "library-wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Passes every record of the log to the consumer, oldest first
+     * @param consumer
+     * @throws IOException
+     */
+    public void replay(Consumer<LogRecord> consumer) throws IOException {
+        long firstSegment = 0;
+        OptionalLong snapshot = listIndexes(SNAPSHOT_PREFIX).stream().mapToLong(Long::longValue).max();
+        if (snapshot.isPresent()) {
+            firstSegment = snapshot.getAsLong();
+            readFile(file(SNAPSHOT_PREFIX, firstSegment), consumer);
+        }
+        for (long index : listIndexes(SEGMENT_PREFIX)) {
+            if (index >= firstSegment) {
+                readFile(file(SEGMENT_PREFIX, index), consumer);
+            }
+        }
+    }
+
+    /**
+     * Queues the record for writing, never blocks and never throws. It is called under the lock of the copy
+     * after the copy was changed, so a failed log is reported by the next awaitDurable of the thread
+     * @param record
+     */
+    public void append(LogRecord record) {
+        IOException failed = failure;
+        if (!isNull(failed)) {
+            CompletableFuture<Void> written = new CompletableFuture<>();
+            written.completeExceptionally(failed);
+            lastAppend.set(written);
+            return;
+        }
+        CompletableFuture<Void> written = config.getFsyncPolicy() == FsyncPolicy.ALWAYS ? new CompletableFuture<>() : null;
+        queue.offer(new Entry(record.toBytes(), written));
+        if (!isNull(written)) {
+            lastAppend.set(written);
+        }
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Waits until every record appended so far by any thread is written,
+     * and with FsyncPolicy.ALWAYS also forced to the disk
+     */
+    public void sync() {
+        CompletableFuture<Void> written = new CompletableFuture<>();
+        queue.offer(new Entry(null, written));
+        lastAppend.set(written);
+        LockSupport.unpark(writer);
+        awaitDurable();
+    }
+
+    /**
+     * With FsyncPolicy.ALWAYS waits until the last record appended by the current thread is forced to the disk
+     * @throws UncheckedIOException when the log failed, the changes made since then are only in memory
+     */
+    public void awaitDurable() {
+        CompletableFuture<Void> written = lastAppend.get();
+        if (isNull(written)) {
+            IOException failed = failure;
+            if (!isNull(failed)) {
+                throw new UncheckedIOException("Write-ahead log failed", failed);
+            }
+            return;
+        }
+        lastAppend.remove();
+        try {
+            written.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the write-ahead log", e);
+        } catch (ExecutionException e) {
+            throw new UncheckedIOException("Write-ahead log failed", (IOException) e.getCause());
+        }
+    }
+
+    /**
+     * Sets where compaction takes the current state from and starts periodic compaction if it is configured
+     * @param snapshotSource records that rebuild the current state of the library
+     */
+    public synchronized void setSnapshotSource(Supplier<Iterator<LogRecord>> snapshotSource) {
+        this.snapshotSource = snapshotSource;
+        if (config.getCompactionIntervalMillis() > 0 && isNull(compactor)) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "library-wal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(() -> {
+                try {
+                    compact();
+                } catch (IOException | RuntimeException e) {
+                    logger.log(Level.WARNING, "Compaction of the write-ahead log failed", e);
+                }
+            }, config.getCompactionIntervalMillis(), config.getCompactionIntervalMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Replaces all segments written so far with a snapshot of the current state
+     * @throws IOException
+     */
+    public synchronized void compact() throws IOException {
+        if (isNull(snapshotSource)) {
+            throw new IllegalStateException("Snapshot source is not set");
+        }
+        CompletableFuture<Long> rolled = new CompletableFuture<>();
+        rollRequest = rolled;
+        LockSupport.unpark(writer);
+        long boundary;
+        try {
+            boundary = rolled.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rolling the write-ahead log");
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot roll the write-ahead log", e.getCause());
+        }
+
+        // records appended from now on go to segments >= boundary and are replayed after the snapshot
+        Path snapshot = file(SNAPSHOT_PREFIX, boundary);
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BATCH_SIZE);
+            Iterator<LogRecord> records = snapshotSource.get();
+            while (records.hasNext()) {
+                byte[] payload = records.next().toBytes();
+                if (buffer.remaining() < FRAME_HEADER_SIZE + payload.length) {
+                    writeFully(channel, buffer);
+                }
+                if (buffer.remaining() < FRAME_HEADER_SIZE + payload.length) {
+                    writeFully(channel, frame(payload));
+                } else {
+                    putFrame(buffer, payload);
+                }
+            }
+            writeFully(channel, buffer);
+            channel.force(true);
+        }
+        Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE);
+
+        for (long index : listIndexes(SEGMENT_PREFIX)) {
+            if (index < boundary) {
+                Files.deleteIfExists(file(SEGMENT_PREFIX, index));
+            }
+        }
+        for (long index : listIndexes(SNAPSHOT_PREFIX)) {
+            if (index < boundary) {
+                Files.deleteIfExists(file(SNAPSHOT_PREFIX, index));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (!isNull(compactor)) {
+                compactor.shutdownNow();
+            }
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!isNull(failure)) {
+            throw failure;
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                CompletableFuture<Long> rolled = rollRequest;
+                if (!isNull(rolled)) {
+                    flushBatch();
+                    rollSegment();
+                    rollRequest = null;
+                    rolled.complete(segmentIndex);
+                }
+                Entry entry = queue.poll();
+                if (!isNull(entry)) {
+                    addToBatch(entry);
+                    continue;
+                }
+                if (batch.position() > 0 || !batchFutures.isEmpty()) {
+                    flushBatch();
+                    continue;
+                }
+                if (unforced && config.getFsyncPolicy() == FsyncPolicy.INTERVAL
+                        && System.nanoTime() - lastForceNanos >= TimeUnit.MILLISECONDS.toNanos(config.getFsyncIntervalMillis())) {
+                    force();
+                }
+                if (!running) {
+                    break;
+                }
+                writerParked = true;
+                if (queue.isEmpty() && running && isNull(rollRequest)) {
+                    LockSupport.parkNanos(this, config.getFsyncPolicy() == FsyncPolicy.INTERVAL
+                            ? Math.min(IDLE_PARK_NANOS, TimeUnit.MILLISECONDS.toNanos(config.getFsyncIntervalMillis()))
+                            : IDLE_PARK_NANOS);
+                }
+                writerParked = false;
+            }
+            if (config.getFsyncPolicy() != FsyncPolicy.NEVER) {
+                force();
+            }
+            segment.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Write-ahead log failed", e);
+            failure = e;
+            batchFutures.forEach(f -> f.completeExceptionally(e));
+            for (Entry entry; (entry = queue.poll()) != null; ) {
+                if (!isNull(entry.written)) {
+                    entry.written.completeExceptionally(e);
+                }
+            }
+            CompletableFuture<Long> rolled = rollRequest;
+            if (!isNull(rolled)) {
+                rolled.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void addToBatch(Entry entry) throws IOException {
+        if (isNull(entry.payload)) {
+            batchFutures.add(entry.written);
+            return;
+        }
+        if (batch.remaining() < FRAME_HEADER_SIZE + entry.payload.length) {
+            flushBatch();
+        }
+        if (batch.remaining() < FRAME_HEADER_SIZE + entry.payload.length) {
+            segmentBytes += writeFully(segment, frame(entry.payload));
+        } else {
+            putFrame(batch, entry.payload);
+        }
+        if (!isNull(entry.written)) {
+            batchFutures.add(entry.written);
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        segmentBytes += writeFully(segment, batch);
+        unforced = true;
+        if (config.getFsyncPolicy() == FsyncPolicy.ALWAYS) {
+            force();
+        }
+        batchFutures.forEach(f -> f.complete(null));
+        batchFutures.clear();
+        if (segmentBytes >= config.getSegmentSize()) {
+            rollSegment();
+        }
+    }
+
+    private void force() throws IOException {
+        segment.force(false);
+        unforced = false;
+        lastForceNanos = System.nanoTime();
+    }
+
+    private void rollSegment() throws IOException {
+        if (config.getFsyncPolicy() != FsyncPolicy.NEVER) {
+            force();
+        }
+        segment.close();
+        segment = openSegment(++segmentIndex);
+    }
+
+    private FileChannel openSegment(long index) throws IOException {
+        segmentBytes = 0;
+        return FileChannel.open(file(SEGMENT_PREFIX, index), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static int writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        int written = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    private static ByteBuffer frame(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        putFrame(buffer, payload);
+        return buffer;
+    }
+
+    private static void putFrame(ByteBuffer buffer, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        buffer.putInt(payload.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+    }
+
+    private static void readFile(Path file, Consumer<LogRecord> consumer) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    int checksum = in.readInt();
+                    if (length < 0) {
+                        throw new EOFException();
+                    }
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    CRC32 crc = new CRC32();
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != checksum) {
+                        logger.warning("Corrupted record in " + file + ", the rest of the file is skipped");
+                        return;
+                    }
+                    consumer.accept(LogRecord.fromBytes(payload));
+                } catch (EOFException e) {
+                    logger.warning("Torn record at the end of " + file + " is skipped");
+                    return;
+                }
+            }
+        }
+    }
+
+    private List<Long> listIndexes(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(p -> p.getFileName().toString())
+                    .filter(n -> n.startsWith(prefix) && n.endsWith(SUFFIX))
+                    .map(n -> Long.valueOf(n.substring(prefix.length(), n.length() - SUFFIX.length())))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private Path file(String prefix, long index) {
+        return directory.resolve(String.format("%s%020d%s", prefix, index, SUFFIX));
+    }
+
+    private static class Entry {
+        private final byte[] payload;
+        private final CompletableFuture<Void> written;
+
+        Entry(byte[] payload, CompletableFuture<Void> written) {
+            this.payload = payload;
+            this.written = written;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package library.persistence;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the write-ahead log. Only the directory is required.
+ */
+public class WriteAheadLogConfig {
+
+    private Path directory;
+    private FsyncPolicy fsyncPolicy = FsyncPolicy.ALWAYS;
+    private long fsyncIntervalMillis = 100;
+    private long segmentSize = 64L * 1024 * 1024;
+    private long compactionIntervalMillis = 0;
+
+    public WriteAheadLogConfig(Path directory) {
+        this.directory = directory;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public FsyncPolicy getFsyncPolicy() {
+        return fsyncPolicy;
+    }
+
+    public void setFsyncPolicy(FsyncPolicy fsyncPolicy) {
+        this.fsyncPolicy = fsyncPolicy;
+    }
+
+    public long getFsyncIntervalMillis() {
+        return fsyncIntervalMillis;
+    }
+
+    /**
+     * @param fsyncIntervalMillis how often records are forced with FsyncPolicy.INTERVAL
+     */
+    public void setFsyncIntervalMillis(long fsyncIntervalMillis) {
+        this.fsyncIntervalMillis = fsyncIntervalMillis;
+    }
+
+    public long getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * @param segmentSize size in bytes after which a new segment file is started
+     */
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    public long getCompactionIntervalMillis() {
+        return compactionIntervalMillis;
+    }
+
+    /**
+     * @param compactionIntervalMillis how often the log is compacted, 0 turns periodic compaction off
+     */
+    public void setCompactionIntervalMillis(long compactionIntervalMillis) {
+        this.compactionIntervalMillis = compactionIntervalMillis;
+    }
+}
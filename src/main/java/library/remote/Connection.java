@@ -0,0 +1,93 @@
+package library.remote;
+
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.search.MatchMode;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.SearchCriteria;
+
+import java.io.*;
+import java.net.Socket;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Socket that exchanges serialized objects. Only the classes of the calls and their results are read:
+ * models, search criteria and pages, String, boxed primitives, ArrayList and the exceptions sent back.
+ * Anything else sent by the other side is refused before it is instantiated.
+ */
+class Connection implements Closeable {
+
+    private final Socket socket;
+    private final ObjectOutputStream out;
+    private final ObjectInputStream in;
+
+    Connection(Socket socket) throws IOException {
+        this.socket = socket;
+        socket.setTcpNoDelay(true);
+        this.out = new ObjectOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        // the header must reach the other side before it can open its input stream
+        out.flush();
+        this.in = new FilteringObjectInputStream(new BufferedInputStream(socket.getInputStream()));
+    }
+
+    /**
+     * Writes the objects as one message
+     */
+    void write(Object... values) throws IOException {
+        for (Object value : values) {
+            out.writeUnshared(value);
+        }
+        // objects are not cached between messages, so the stream doesn't grow
+        out.reset();
+        out.flush();
+    }
+
+    Object read() throws IOException {
+        try {
+            return in.readUnshared();
+        } catch (ClassNotFoundException e) {
+            throw new InvalidClassException(e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private static final Set<String> ALLOWED_CLASSES = Stream.concat(
+            Stream.of(BookDetails.class, BookInventory.class, LendResult.class, LendResult.Status.class,
+                    SearchCriteria.class, MatchMode.class, PageRequest.class, Page.class,
+                    String.class, Boolean.class, Integer.class, Long.class, Number.class, Enum.class,
+                    Object[].class, ArrayList.class,
+                    BookNotExistException.class, BookAlreadyLentException.class,
+                    IllegalArgumentException.class, IllegalStateException.class,
+                    RuntimeException.class, Exception.class, Throwable.class,
+                    StackTraceElement.class, StackTraceElement[].class)
+                    .map(Class::getName),
+            // the empty list of suppressed exceptions every Throwable is written with, which one depends on the JDK
+            Stream.of("java.util.Collections$EmptyList", "java.util.Collections$UnmodifiableRandomAccessList",
+                    "java.util.Collections$UnmodifiableList", "java.util.Collections$UnmodifiableCollection"))
+            .collect(Collectors.toSet());
+
+    private static class FilteringObjectInputStream extends ObjectInputStream {
+
+        FilteringObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!ALLOWED_CLASSES.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed");
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package library.remote;
+
+import library.Library;
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.model.LendResult;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.SearchCriteria;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Serves a library to RemoteLibraries in other processes of the same machine.
+ * The server only listens on the loopback address and serves every connection on its own thread.
+ *
+ * A reservation that has to wait is kept by the server under a number, the client waits for it
+ * with awaitReservation calls. Reservations are cancelled when the connection that made them closes.
+ */
+public class LibraryServer implements Closeable {
+
+    private final static Logger logger = Logger.getLogger(LibraryServer.class.getName());
+
+    static final long AWAIT_RESERVATION_MILLIS = 1000;
+
+    private final Library library;
+    private final ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final Map<Long, CompletableFuture<LendResult>> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong reservationNumbers = new AtomicLong();
+
+    /**
+     * @param library
+     * @param port 0 for any free port
+     * @throws IOException when the port can't be opened
+     */
+    public LibraryServer(Library library, int port) throws IOException {
+        this.library = library;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "library-server-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "library-server-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.log(Level.WARNING, "Accepting a connection failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads calls of one client until it disconnects, every call is a method name and an array of arguments
+     * and gets the result or the exception back
+     */
+    private void serve(Socket socket) {
+        Connection connection;
+        try {
+            connection = new Connection(socket);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Opening a connection failed", e);
+            return;
+        }
+        connections.add(connection);
+        Set<Long> reservationsOfConnection = new HashSet<>();
+        try {
+            while (true) {
+                String method = (String) connection.read();
+                Object[] args = (Object[]) connection.read();
+                Object result;
+                try {
+                    result = call(method, args, reservationsOfConnection);
+                } catch (Exception e) {
+                    connection.write(false, transferable(e));
+                    continue;
+                }
+                connection.write(true, result);
+            }
+        } catch (EOFException e) {
+            // the client disconnected
+        } catch (IOException | RuntimeException e) {
+            if (!serverSocket.isClosed()) {
+                logger.log(Level.WARNING, "Connection failed", e);
+            }
+        } finally {
+            connections.remove(connection);
+            reservationsOfConnection.forEach(this::cancelReservation);
+            try {
+                connection.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Closing a connection failed", e);
+            }
+        }
+    }
+
+    /**
+     * Exceptions of the library are sent as they are, others as an IllegalArgumentException or IllegalStateException
+     * with their message,
+     * so the client never needs a class it may not have
+     */
+    private static Exception transferable(Exception e) {
+        if (e instanceof BookNotExistException || e instanceof BookAlreadyLentException) {
+            return e;
+        }
+        RuntimeException transferable = e instanceof IllegalArgumentException
+                ? new IllegalArgumentException(e.getMessage())
+                : new IllegalStateException(e.toString());
+        transferable.setStackTrace(e.getStackTrace());
+        return transferable;
+    }
+
+    /**
+     * Lists are sent as ArrayList, the only list the other side reads
+     */
+    @SuppressWarnings("unchecked")
+    private Object call(String method, Object[] args, Set<Long> reservationsOfConnection) throws Exception {
+        switch (method) {
+            case "addNewBook":
+                return library.addNewBook((String) args[0], (String) args[1], (Integer) args[2]);
+            case "importBooks":
+                return library.importBooks(((List<BookDetails>) args[0]).stream());
+            case "getBookById":
+                return library.getBookById((String) args[0]);
+            case "getAllBookDetails":
+                return new ArrayList<>(library.getAllBookDetails());
+            case "getInventory":
+                return new ArrayList<>(library.getInventory());
+            case "displayAllBooksInformation":
+                library.displayAllBooksInformation();
+                return null;
+            case "displayBookInformation":
+                library.displayBookInformation((String) args[0]);
+                return null;
+            case "getBookListByCriteria":
+                return new ArrayList<>(library.getBookListByCriteria((SearchCriteria) args[0]));
+            case "streamBookDetailsByCriteria":
+                return library.streamBookDetailsByCriteria((SearchCriteria) args[0]).collect(Collectors.toCollection(ArrayList::new));
+            case "getBookPageByCriteria":
+                Page<BookDetails> page = library.getBookPageByCriteria((SearchCriteria) args[0], (PageRequest) args[1]);
+                return new Page<>(new ArrayList<>(page.getItems()), page.getNextCursor());
+            case "removeBook":
+                library.removeBook((String) args[0]);
+                return null;
+            case "lendBook":
+                return args[0] instanceof SearchCriteria
+                        ? library.lendBook((SearchCriteria) args[0], (String) args[1])
+                        : library.lendBook((String) args[0], (String) args[1]);
+            case "tryLendBook":
+                return args[0] instanceof SearchCriteria
+                        ? library.tryLendBook((SearchCriteria) args[0], (String) args[1])
+                        : library.tryLendBook((String) args[0], (String) args[1]);
+            case "returnBook":
+                return library.returnBook((String) args[0]);
+            case "reserveBook": {
+                CompletableFuture<LendResult> reservation = library.reserveBook((SearchCriteria) args[0], (String) args[1]);
+                if (reservation.isDone()) {
+                    return reservation.get();
+                }
+                long number = reservationNumbers.incrementAndGet();
+                reservations.put(number, reservation);
+                reservationsOfConnection.add(number);
+                return number;
+            }
+            case "awaitReservation":
+                return awaitReservation((Long) args[0]);
+            case "cancelReservation":
+                cancelReservation((Long) args[0]);
+                return null;
+            default:
+                throw new IllegalArgumentException("Unknown method " + method);
+        }
+    }
+
+    /**
+     * @return the lent book, or null when no copy was lent within AWAIT_RESERVATION_MILLIS and the client should ask again
+     */
+    private LendResult awaitReservation(long number) throws Exception {
+        CompletableFuture<LendResult> reservation = reservations.get(number);
+        if (isNull(reservation)) {
+            throw new IllegalArgumentException("Unknown reservation " + number);
+        }
+        try {
+            return reservation.get(AWAIT_RESERVATION_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } finally {
+            if (reservation.isDone()) {
+                reservations.remove(number);
+            }
+        }
+    }
+
+    /**
+     * A copy already lent to the reservation is given back
+     */
+    private void cancelReservation(long number) {
+        CompletableFuture<LendResult> reservation = reservations.remove(number);
+        if (isNull(reservation) || reservation.cancel(false) || reservation.isCompletedExceptionally()) {
+            return;
+        }
+        LendResult result = reservation.getNow(null);
+        if (result.isLent()) {
+            library.returnBook(result.getBookId());
+        }
+    }
+}
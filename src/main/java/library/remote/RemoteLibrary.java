@@ -0,0 +1,286 @@
+package library.remote;
+
+import library.Library;
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.io.BookCsvReader;
+import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.SearchCriteria;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Library served by a LibraryServer in another process on the same machine.
+ * Every call waits for its result. Concurrent calls use separate connections, connections are kept open
+ * and reused. Streams are read whole before they are returned, and display methods print
+ * on the standard output of the server.
+ */
+public class RemoteLibrary implements Library, Closeable {
+
+    private final static int IMPORT_CHUNK_SIZE = 64 * 1024;
+
+    private final int port;
+    private final Queue<Connection> idle = new ConcurrentLinkedQueue<>();
+    private final ExecutorService reservationWaiters = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "library-remote-reservation");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean closed;
+
+    /**
+     * @param port port of the LibraryServer on the loopback address
+     */
+    public RemoteLibrary(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public String addNewBook(String title, String author, Integer year) {
+        return (String) callUnchecked("addNewBook", title, author, year);
+    }
+
+    @Override
+    public long importBooks(Iterator<BookDetails> books) {
+        long imported = 0;
+        List<BookDetails> chunk = new ArrayList<>();
+        while (books.hasNext()) {
+            chunk.add(books.next());
+            if (chunk.size() == IMPORT_CHUNK_SIZE) {
+                imported += (Long) callUnchecked("importBooks", chunk);
+                chunk = new ArrayList<>();
+            }
+        }
+        return chunk.isEmpty() ? imported : imported + (Long) callUnchecked("importBooks", chunk);
+    }
+
+    @Override
+    public long importBooks(Stream<BookDetails> books) {
+        return importBooks(books.iterator());
+    }
+
+    /**
+     * The file is read by this process
+     */
+    @Override
+    public long importBooks(Path csvFile) throws IOException {
+        try (BookCsvReader reader = new BookCsvReader(csvFile)) {
+            return importBooks(reader);
+        }
+    }
+
+    @Override
+    public BookDetails getBookById(String id) throws BookNotExistException {
+        try {
+            return (BookDetails) call("getBookById", id);
+        } catch (BookAlreadyLentException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<BookDetails> getAllBookDetails() {
+        return (List<BookDetails>) callUnchecked("getAllBookDetails");
+    }
+
+    @Override
+    public Stream<BookDetails> streamAllBookDetails() {
+        return getAllBookDetails().stream();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<BookInventory> getInventory() {
+        return (List<BookInventory>) callUnchecked("getInventory");
+    }
+
+    @Override
+    public void displayAllBooksInformation() {
+        callUnchecked("displayAllBooksInformation");
+    }
+
+    @Override
+    public void displayBookInformation(String id) throws BookNotExistException {
+        try {
+            call("displayBookInformation", id);
+        } catch (BookAlreadyLentException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<BookDetails> getBookListByCriteria(SearchCriteria criteria) {
+        return (List<BookDetails>) callUnchecked("getBookListByCriteria", criteria);
+    }
+
+    @Override
+    public Stream<BookDetails> streamBookListByCriteria(SearchCriteria criteria) {
+        return getBookListByCriteria(criteria).stream();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Stream<BookDetails> streamBookDetailsByCriteria(SearchCriteria criteria) {
+        return ((List<BookDetails>) callUnchecked("streamBookDetailsByCriteria", criteria)).stream();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Page<BookDetails> getBookPageByCriteria(SearchCriteria criteria, PageRequest pageRequest) {
+        return (Page<BookDetails>) callUnchecked("getBookPageByCriteria", criteria, pageRequest);
+    }
+
+    @Override
+    public void removeBook(String id) throws BookNotExistException, BookAlreadyLentException {
+        call("removeBook", id);
+    }
+
+    @Override
+    public BookDetails lendBook(String id, String person) throws BookAlreadyLentException, BookNotExistException {
+        return (BookDetails) call("lendBook", id, person);
+    }
+
+    @Override
+    public BookDetails lendBook(SearchCriteria criteria, String person) throws BookAlreadyLentException, BookNotExistException {
+        return (BookDetails) call("lendBook", criteria, person);
+    }
+
+    @Override
+    public LendResult tryLendBook(String id, String person) {
+        return (LendResult) callUnchecked("tryLendBook", id, person);
+    }
+
+    @Override
+    public LendResult tryLendBook(SearchCriteria criteria, String person) {
+        return (LendResult) callUnchecked("tryLendBook", criteria, person);
+    }
+
+    /**
+     * A reservation that has to wait is awaited by a thread of this library, asking the server again
+     * every LibraryServer.AWAIT_RESERVATION_MILLIS. Closing the library cancels the reservations
+     */
+    @Override
+    public CompletableFuture<LendResult> reserveBook(SearchCriteria criteria, String person) {
+        Object reservation = callUnchecked("reserveBook", criteria, person);
+        if (reservation instanceof LendResult) {
+            return CompletableFuture.completedFuture((LendResult) reservation);
+        }
+        long number = (Long) reservation;
+        CompletableFuture<LendResult> future = new CompletableFuture<>();
+        future.whenComplete((lent, e) -> {
+            if (e instanceof CancellationException && !closed) {
+                callUnchecked("cancelReservation", number);
+            }
+        });
+        reservationWaiters.execute(() -> {
+            try {
+                while (!future.isDone()) {
+                    LendResult lent = (LendResult) callUnchecked("awaitReservation", number);
+                    if (!isNull(lent) && !future.complete(lent) && lent.isLent()) {
+                        // cancelled after the copy was lent
+                        returnBook(lent.getBookId());
+                    }
+                }
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public boolean returnBook(String id) {
+        return (Boolean) callUnchecked("returnBook", id);
+    }
+
+    /**
+     * Closes the idle connections, calls made after closing fail and so do reservations still waiting
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        reservationWaiters.shutdown();
+        for (Connection connection = idle.poll(); !isNull(connection); connection = idle.poll()) {
+            connection.close();
+        }
+    }
+
+    private Object callUnchecked(String method, Object... args) {
+        try {
+            return call(method, args);
+        } catch (BookNotExistException | BookAlreadyLentException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Sends the call on an idle connection or a new one. A connection that failed is closed, not reused
+     */
+    private Object call(String method, Object... args) throws BookNotExistException, BookAlreadyLentException {
+        if (closed) {
+            throw new IllegalStateException("Library is closed");
+        }
+        Connection connection = idle.poll();
+        Object result;
+        boolean ok;
+        try {
+            if (isNull(connection)) {
+                connection = new Connection(new Socket(InetAddress.getLoopbackAddress(), port));
+            }
+            connection.write(method, args);
+            ok = (Boolean) connection.read();
+            result = connection.read();
+        } catch (IOException e) {
+            closeQuietly(connection);
+            throw new UncheckedIOException("Call of " + method + " failed", e);
+        }
+        if (closed) {
+            closeQuietly(connection);
+        } else {
+            idle.offer(connection);
+        }
+        if (ok) {
+            return result;
+        }
+        if (result instanceof BookNotExistException) {
+            throw (BookNotExistException) result;
+        }
+        if (result instanceof BookAlreadyLentException) {
+            throw (BookAlreadyLentException) result;
+        }
+        throw (RuntimeException) result;
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (!isNull(connection)) {
+            try {
+                connection.close();
+            } catch (IOException e) {
+                // the connection is dropped anyway
+            }
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package library.replication;
+
+import library.Library;
+import library.LibraryManager;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.SearchCriteria;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Read-only copy of a library kept up to date with the changes of its leader. The changes are applied
+ * by one thread in the order the leader published them, reads see the state as of the last applied change.
+ * Methods that change the library throw UnsupportedOperationException, changes go to the leader.
+ */
+public class LibraryFollower implements Library, Closeable {
+
+    private final static Logger logger = Logger.getLogger(LibraryFollower.class.getName());
+
+    private static final long POLL_MILLIS = 100;
+
+    private final LibraryManager library = new LibraryManager();
+    private final ReplicationSource source;
+    private final Thread applier;
+
+    private volatile boolean running = true;
+    private volatile long appliedSequence;
+    private volatile long appliedPublishedMillis;
+    private volatile IOException failure;
+
+    public LibraryFollower(ReplicationSource source) {
+        this.source = source;
+        applier = new Thread(this::applyChanges, "library-follower");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * @return number of changes of the leader this follower has applied
+     */
+    public long getAppliedSequence() {
+        return appliedSequence;
+    }
+
+    /**
+     * @return number of changes the leader published that this follower knows of but hasn't applied yet
+     */
+    public long getReplicationLag() {
+        return Math.max(source.getLeaderSequence() - appliedSequence, 0);
+    }
+
+    /**
+     * @return age of the newest applied change while there are changes waiting, 0 when every change is applied
+     */
+    public long getReplicationLagMillis() {
+        return getReplicationLag() == 0 ? 0 : Math.max(System.currentTimeMillis() - appliedPublishedMillis, 0);
+    }
+
+    /**
+     * @return error that stopped replication or null while the follower is connected
+     */
+    public IOException getFailure() {
+        return failure;
+    }
+
+    /**
+     * Waits until the follower has applied the given change of the leader, e.g. to read your own writes
+     * @param sequence
+     * @param timeout
+     * @param unit
+     * @return false if the time ran out or replication stopped
+     * @throws InterruptedException
+     */
+    public boolean awaitSequence(long sequence, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (appliedSequence < sequence) {
+            if (System.nanoTime() > deadline || !applier.isAlive()) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        source.close();
+        applier.interrupt();
+    }
+
+    private void applyChanges() {
+        try {
+            while (running) {
+                ReplicationMessage message = source.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (!isNull(message.getRecord())) {
+                    library.apply(message.getRecord());
+                }
+                if (message.getSequence() > appliedSequence) {
+                    appliedPublishedMillis = message.getPublishedMillis();
+                    appliedSequence = message.getSequence();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (running) {
+                failure = e;
+                logger.log(Level.WARNING, "Replication stopped", e);
+            }
+        }
+    }
+
+    @Override
+    public String addNewBook(String title, String author, Integer year) {
+        throw readOnly();
+    }
+
+    @Override
+    public long importBooks(Iterator<BookDetails> books) {
+        throw readOnly();
+    }
+
+    @Override
+    public long importBooks(Stream<BookDetails> books) {
+        throw readOnly();
+    }
+
+    @Override
+    public long importBooks(Path csvFile) {
+        throw readOnly();
+    }
+
+    @Override
+    public BookDetails getBookById(String id) throws BookNotExistException {
+        return library.getBookById(id);
+    }
+
+    @Override
+    public List<BookDetails> getAllBookDetails() {
+        return library.getAllBookDetails();
+    }
+
+    @Override
+    public Stream<BookDetails> streamAllBookDetails() {
+        return library.streamAllBookDetails();
+    }
+
+    @Override
+    public List<BookInventory> getInventory() {
+        return library.getInventory();
+    }
+
+    @Override
+    public void displayAllBooksInformation() {
+        library.displayAllBooksInformation();
+    }
+
+    @Override
+    public void displayBookInformation(String id) throws BookNotExistException {
+        library.displayBookInformation(id);
+    }
+
+    @Override
+    public List<BookDetails> getBookListByCriteria(SearchCriteria criteria) {
+        return library.getBookListByCriteria(criteria);
+    }
+
+    @Override
+    public Stream<BookDetails> streamBookListByCriteria(SearchCriteria criteria) {
+        return library.streamBookListByCriteria(criteria);
+    }
+
+    @Override
+    public Stream<BookDetails> streamBookDetailsByCriteria(SearchCriteria criteria) {
+        return library.streamBookDetailsByCriteria(criteria);
+    }
+
+    @Override
+    public Page<BookDetails> getBookPageByCriteria(SearchCriteria criteria, PageRequest pageRequest) {
+        return library.getBookPageByCriteria(criteria, pageRequest);
+    }
+
+    @Override
+    public void removeBook(String id) {
+        throw readOnly();
+    }
+
+    @Override
+    public BookDetails lendBook(String id, String person) {
+        throw readOnly();
+    }
+
+    @Override
+    public BookDetails lendBook(SearchCriteria criteria, String person) {
+        throw readOnly();
+    }
+
+    @Override
+    public LendResult tryLendBook(String id, String person) {
+        throw readOnly();
+    }
+
+    @Override
+    public LendResult tryLendBook(SearchCriteria criteria, String person) {
+        throw readOnly();
+    }
+
+    @Override
+    public CompletableFuture<LendResult> reserveBook(SearchCriteria criteria, String person) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean returnBook(String id) {
+        throw readOnly();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("Follower is read-only, changes go to the leader");
+    }
+}
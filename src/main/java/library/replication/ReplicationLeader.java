@@ -0,0 +1,156 @@
+package library.replication;
+
+import library.LibraryManager;
+import library.persistence.LogRecord;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Publishes every change of a library to its followers. Every change gets the next sequence number
+ * and is queued for every follower at once, so all followers get the changes in the same order,
+ * and the changes of every copy in the order they happened. A new follower first gets a snapshot
+ * of the library and then the changes made since it subscribed. Changes already in the snapshot
+ * are applied again, which ends in the same state because every record holds the whole state of its copy.
+ *
+ * Every follower has at most maxPendingChanges changes queued. A follower that falls further behind is dropped:
+ * its changes are discarded and its next poll fails, so it can subscribe again and start from a new snapshot.
+ */
+public class ReplicationLeader implements Closeable {
+
+    public static final int DEFAULT_MAX_PENDING_CHANGES = 1 << 16;
+
+    private final LibraryManager library;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final Consumer<LogRecord> listener = this::publish;
+    private final int maxPendingChanges;
+
+    // guarded by this, together with the queues of the subscriptions
+    private long sequence;
+
+    public ReplicationLeader(LibraryManager library) {
+        this(library, DEFAULT_MAX_PENDING_CHANGES);
+    }
+
+    /**
+     * @param library
+     * @param maxPendingChanges number of changes queued for a follower before it is dropped
+     */
+    public ReplicationLeader(LibraryManager library, int maxPendingChanges) {
+        if (maxPendingChanges < 1) {
+            throw new IllegalArgumentException("Max pending changes must be positive");
+        }
+        this.library = library;
+        this.maxPendingChanges = maxPendingChanges;
+        library.addChangeListener(listener);
+    }
+
+    /**
+     * @return number of changes published so far
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return messages for a new follower in this process, closing the source unsubscribes
+     */
+    public ReplicationSource subscribe() {
+        Subscription subscription = new Subscription();
+        synchronized (this) {
+            // changes are queued from now on, so none is lost between the snapshot and the queue
+            subscriptions.add(subscription);
+            subscription.snapshotSequence = sequence;
+        }
+        subscription.snapshot = library.getSnapshotRecords().iterator();
+        return subscription;
+    }
+
+    /**
+     * Stops publishing, followers get no more changes
+     */
+    @Override
+    public void close() {
+        library.removeChangeListener(listener);
+        subscriptions.clear();
+    }
+
+    private synchronized void publish(LogRecord record) {
+        ReplicationMessage message = new ReplicationMessage(++sequence, System.currentTimeMillis(), record);
+        for (Subscription subscription : subscriptions) {
+            if (!subscription.queue.offer(message)) {
+                subscription.drop();
+            }
+        }
+    }
+
+    private class Subscription implements ReplicationSource {
+
+        private final BlockingQueue<ReplicationMessage> queue = new LinkedBlockingQueue<>(maxPendingChanges);
+        private volatile Iterator<LogRecord> snapshot;
+        private volatile long snapshotSequence;
+        private volatile boolean dropped;
+        private boolean snapshotSent;
+
+        /**
+         * Records of the snapshot have sequence 0, after them a heartbeat tells the follower
+         * that it has everything up to the sequence of the snapshot. Only called by the thread of the follower
+         * @throws IOException when the follower fell too far behind and was dropped
+         */
+        @Override
+        public ReplicationMessage poll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+            checkDropped();
+            if (!snapshotSent) {
+                if (snapshot.hasNext()) {
+                    return new ReplicationMessage(0, System.currentTimeMillis(), snapshot.next());
+                }
+                snapshotSent = true;
+                return new ReplicationMessage(snapshotSequence, System.currentTimeMillis(), null);
+            }
+            ReplicationMessage message = queue.poll(timeout, unit);
+            if (!isNull(message)) {
+                return message;
+            }
+            synchronized (ReplicationLeader.this) {
+                checkDropped();
+                // while nothing can be published, an empty queue means every change up to the sequence was taken
+                message = queue.poll();
+                return isNull(message) ? new ReplicationMessage(sequence, System.currentTimeMillis(), null) : message;
+            }
+        }
+
+        @Override
+        public long getLeaderSequence() {
+            return getSequence();
+        }
+
+        @Override
+        public void close() {
+            subscriptions.remove(this);
+        }
+
+        /**
+         * Called while publishing, so no change is queued after the queue is cleared
+         */
+        private void drop() {
+            dropped = true;
+            subscriptions.remove(this);
+            queue.clear();
+        }
+
+        private void checkDropped() throws IOException {
+            if (dropped) {
+                throw new IOException("Follower fell more than " + maxPendingChanges + " changes behind");
+            }
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package library.replication;
+
+import library.persistence.LogRecord;
+
+/**
+ * Change sent by a leader to its followers. Messages without a record are heartbeats,
+ * they tell an idle follower how far the leader is.
+ */
+public class ReplicationMessage {
+
+    private final long sequence;
+    private final long publishedMillis;
+    private final LogRecord record;
+
+    public ReplicationMessage(long sequence, long publishedMillis, LogRecord record) {
+        this.sequence = sequence;
+        this.publishedMillis = publishedMillis;
+        this.record = record;
+    }
+
+    /**
+     * @return number of changes the leader published up to this one. For a heartbeat, every change up to
+     * the sequence was sent before it. Records of a snapshot have sequence 0
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getPublishedMillis() {
+        return publishedMillis;
+    }
+
+    /**
+     * @return the change or null for a heartbeat
+     */
+    public LogRecord getRecord() {
+        return record;
+    }
+}
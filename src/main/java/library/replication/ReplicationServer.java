@@ -0,0 +1,104 @@
+package library.replication;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends the changes of a leader to followers in other processes of the same machine.
+ * Every connection is a new follower, served on its own thread. The server only listens on the loopback address.
+ */
+public class ReplicationServer implements Closeable {
+
+    private final static Logger logger = Logger.getLogger(ReplicationServer.class.getName());
+
+    static final long HEARTBEAT_MILLIS = 100;
+
+    private final ReplicationLeader leader;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param leader
+     * @param port 0 for any free port
+     * @throws IOException when the port can't be opened
+     */
+    public ReplicationServer(ReplicationLeader leader, int port) throws IOException {
+        this.leader = leader;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::accept, "library-replication-server-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                Thread thread = new Thread(() -> serve(socket), "library-replication-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    logger.log(Level.WARNING, "Accepting a follower failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every message as its sequence, the time it was published, the length of the record and the record.
+     * A heartbeat has length -1 and no record
+     */
+    private void serve(Socket socket) {
+        sockets.add(socket);
+        try (ReplicationSource source = leader.subscribe();
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            socket.setTcpNoDelay(true);
+            while (!socket.isClosed()) {
+                ReplicationMessage message = source.poll(HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                out.writeLong(message.getSequence());
+                out.writeLong(message.getPublishedMillis());
+                if (message.getRecord() == null) {
+                    out.writeInt(-1);
+                } else {
+                    byte[] record = message.getRecord().toBytes();
+                    out.writeInt(record.length);
+                    out.write(record);
+                }
+                out.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            if (!socket.isClosed()) {
+                logger.log(Level.INFO, "Follower disconnected", e);
+            }
+        } finally {
+            sockets.remove(socket);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.log(Level.FINE, "Closing a follower failed", e);
+            }
+        }
+    }
+}
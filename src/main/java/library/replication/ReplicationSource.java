@@ -0,0 +1,25 @@
+package library.replication;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Messages of a leader as received by one follower: first the records of a snapshot, then every following change
+ */
+public interface ReplicationSource extends Closeable {
+
+    /**
+     * @param timeout
+     * @param unit
+     * @return next message, a heartbeat if there was no change in the meantime
+     * @throws IOException when the leader can't be reached anymore
+     * @throws InterruptedException
+     */
+    ReplicationMessage poll(long timeout, TimeUnit unit) throws IOException, InterruptedException;
+
+    /**
+     * @return newest sequence of the leader this source knows of, which may not have been polled yet
+     */
+    long getLeaderSequence();
+}
@@ -0,0 +1,99 @@
+package library.replication;
+
+import library.persistence.LogRecord;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Messages of a leader read from a ReplicationServer on the loopback address. Messages are read
+ * by a thread of their own as soon as they arrive, so the newest sequence of the leader is known
+ * even while the follower is still applying older changes.
+ */
+public class SocketReplicationSource implements ReplicationSource {
+
+    private final static Logger logger = Logger.getLogger(SocketReplicationSource.class.getName());
+
+    private final Socket socket;
+    private final BlockingQueue<ReplicationMessage> received = new LinkedBlockingQueue<>();
+    private volatile long leaderSequence;
+    private volatile IOException failure;
+
+    /**
+     * @param port port of the ReplicationServer
+     * @throws IOException when the server can't be reached
+     */
+    public SocketReplicationSource(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        // the server sends heartbeats, a silent leader is gone
+        socket.setSoTimeout((int) ReplicationServer.HEARTBEAT_MILLIS * 50);
+        Thread reader = new Thread(this::read, "library-replication-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public ReplicationMessage poll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        while (true) {
+            ReplicationMessage message = received.poll(timeout, unit);
+            if (!isNull(message)) {
+                return message;
+            }
+            if (!isNull(failure)) {
+                throw failure;
+            }
+        }
+    }
+
+    @Override
+    public long getLeaderSequence() {
+        return leaderSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    /**
+     * Reads messages written by ReplicationServer until the connection is closed
+     */
+    private void read() {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+            while (true) {
+                long sequence = in.readLong();
+                long publishedMillis = in.readLong();
+                int length = in.readInt();
+                LogRecord record = null;
+                if (length >= 0) {
+                    byte[] bytes = new byte[length];
+                    in.readFully(bytes);
+                    record = LogRecord.fromBytes(bytes);
+                }
+                received.offer(new ReplicationMessage(sequence, publishedMillis, record));
+                leaderSequence = Math.max(leaderSequence, sequence);
+            }
+        } catch (SocketTimeoutException e) {
+            failure = new IOException("Leader didn't send anything for too long", e);
+        } catch (EOFException e) {
+            failure = new IOException("Leader closed the connection", e);
+        } catch (IOException e) {
+            failure = e;
+            if (!socket.isClosed()) {
+                logger.log(Level.WARNING, "Reading from the leader failed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package library.search;
+
+import java.util.Collection;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Index of one int field, value -> bitmap of the ids that have it. Values are sorted,
+ * so a range of values is answered by merging the bitmaps of that range.
+ */
+public class BitmapIndex {
+
+    private final NavigableMap<Integer, CompressedBitmap> bitmaps = new TreeMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void add(int value, int id) {
+        lock.writeLock().lock();
+        try {
+            bitmaps.computeIfAbsent(value, v -> new CompressedBitmap()).add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int value, int id) {
+        lock.writeLock().lock();
+        try {
+            CompressedBitmap bitmap = bitmaps.get(value);
+            if (!isNull(bitmap)) {
+                bitmap.remove(id);
+                if (bitmap.isEmpty()) {
+                    bitmaps.remove(value);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return ids with the given value
+     */
+    public BitmapSource equalTo(int value) {
+        return between(value, value);
+    }
+
+    /**
+     * @return ids with a value from the range, both ends included
+     */
+    public BitmapSource between(int from, int to) {
+        return new BitmapSource() {
+            @Override
+            public long cardinality() {
+                lock.readLock().lock();
+                try {
+                    long cardinality = 0;
+                    for (CompressedBitmap bitmap : range()) {
+                        cardinality += bitmap.cardinality();
+                    }
+                    return cardinality;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public CompressedBitmap toBitmap() {
+                lock.readLock().lock();
+                try {
+                    CompressedBitmap result = new CompressedBitmap();
+                    for (CompressedBitmap bitmap : range()) {
+                        result.or(bitmap);
+                    }
+                    return result;
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            @Override
+            public void and(CompressedBitmap result) {
+                lock.readLock().lock();
+                try {
+                    Collection<CompressedBitmap> range = range();
+                    if (range.size() == 1) {
+                        result.and(range.iterator().next());
+                        return;
+                    }
+                    long rangeCardinality = 0;
+                    for (CompressedBitmap bitmap : range) {
+                        rangeCardinality += bitmap.cardinality();
+                    }
+                    if (result.cardinality() * range.size() < rangeCardinality) {
+                        // probing every bitmap of the range is cheaper than merging them for a small result
+                        result.retainIf(id -> range.stream().anyMatch(bitmap -> bitmap.contains(id)));
+                    }
+                    else {
+                        CompressedBitmap merged = new CompressedBitmap();
+                        for (CompressedBitmap bitmap : range) {
+                            merged.or(bitmap);
+                        }
+                        result.and(merged);
+                    }
+                } finally {
+                    lock.readLock().unlock();
+                }
+            }
+
+            private Collection<CompressedBitmap> range() {
+                return from > to ? bitmaps.subMap(from, false, from, false).values() : bitmaps.subMap(from, true, to, true).values();
+            }
+        };
+    }
+}
@@ -0,0 +1,61 @@
+package library.search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query of QueryEngine, fields are dictionary codes and years, null fields match anything
+ */
+public class BitmapQuery {
+
+    private Integer title;
+    private Integer author;
+    private Integer yearFrom;
+    private Integer yearTo;
+    private final List<BitmapSource> operands = new ArrayList<>();
+
+    public void setTitle(Integer title) {
+        this.title = title;
+    }
+
+    public void setAuthor(Integer author) {
+        this.author = author;
+    }
+
+    /**
+     * @param yearFrom first year of the range, null for no lower bound
+     * @param yearTo last year of the range, null for no upper bound
+     */
+    public void setYearRange(Integer yearFrom, Integer yearTo) {
+        this.yearFrom = yearFrom;
+        this.yearTo = yearTo;
+    }
+
+    /**
+     * Adds a set of ids the result must be in, e.g. results of a text search
+     * @param operand
+     */
+    public void addOperand(BitmapSource operand) {
+        operands.add(operand);
+    }
+
+    public Integer getTitle() {
+        return title;
+    }
+
+    public Integer getAuthor() {
+        return author;
+    }
+
+    public Integer getYearFrom() {
+        return yearFrom;
+    }
+
+    public Integer getYearTo() {
+        return yearTo;
+    }
+
+    public List<BitmapSource> getOperands() {
+        return operands;
+    }
+}
@@ -0,0 +1,42 @@
+package library.search;
+
+/**
+ * One operand of a query, a set of ids that may be guarded by its own lock
+ */
+public interface BitmapSource {
+
+    /**
+     * @return number of ids, used to intersect the most selective operands first
+     */
+    long cardinality();
+
+    /**
+     * @return copy of the ids the caller may change
+     */
+    CompressedBitmap toBitmap();
+
+    /**
+     * Keeps only the ids of the result that are also in this operand
+     * @param result
+     */
+    void and(CompressedBitmap result);
+
+    static BitmapSource of(CompressedBitmap bitmap) {
+        return new BitmapSource() {
+            @Override
+            public long cardinality() {
+                return bitmap.cardinality();
+            }
+
+            @Override
+            public CompressedBitmap toBitmap() {
+                return bitmap.copy();
+            }
+
+            @Override
+            public void and(CompressedBitmap result) {
+                result.and(bitmap);
+            }
+        };
+    }
+}
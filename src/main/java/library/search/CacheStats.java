@@ -0,0 +1,66 @@
+package library.search;
+
+/**
+ * Snapshot of the counters of a ResultCache
+ */
+public class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long invalidationCount;
+    private final long weight;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long invalidationCount, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.invalidationCount = invalidationCount;
+        this.weight = weight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return lookups that found no entry or an entry older than the current version
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return entries dropped to stay under the maximum weight
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    /**
+     * @return entries dropped because the data changed after they were computed
+     */
+    public long getInvalidationCount() {
+        return invalidationCount;
+    }
+
+    public long getWeight() {
+        return weight;
+    }
+
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", invalidationCount=" + invalidationCount +
+                ", weight=" + weight +
+                '}';
+    }
+}
@@ -0,0 +1,503 @@
+package library.search;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Set of non-negative ints split by the upper 16 bits into containers, like a roaring bitmap.
+ * A container with few values keeps them in a sorted array, a dense one switches to 65536 bits,
+ * so both sparse and dense sets stay small and intersect fast. Not thread-safe.
+ */
+public class CompressedBitmap {
+
+    private static final int ARRAY_LIMIT = 4096;
+
+    private char[] keys = new char[0];
+    private Container[] containers = new Container[0];
+    private int size;
+
+    public static CompressedBitmap of(int... sortedValues){
+        CompressedBitmap bitmap = new CompressedBitmap();
+        for(int value : sortedValues){
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    public void add(int value){
+        checkValue(value);
+        char key = (char) (value >>> 16);
+        int i = indexOf(key);
+        if(i < 0){
+            i = -i - 1;
+            insertContainer(i, key, new ArrayContainer());
+        }
+        containers[i] = containers[i].add((char) value);
+    }
+
+    public void remove(int value){
+        if(value < 0){
+            return;
+        }
+        int i = indexOf((char) (value >>> 16));
+        if(i < 0){
+            return;
+        }
+        containers[i] = containers[i].remove((char) value);
+        if(containers[i].cardinality() == 0){
+            removeContainer(i);
+        }
+    }
+
+    public boolean contains(int value){
+        if(value < 0){
+            return false;
+        }
+        int i = indexOf((char) (value >>> 16));
+        return i >= 0 && containers[i].contains((char) value);
+    }
+
+    public long cardinality(){
+        long cardinality = 0;
+        for(int i = 0; i < size; i++){
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    public boolean isEmpty(){
+        return size == 0;
+    }
+
+    public CompressedBitmap copy(){
+        CompressedBitmap copy = new CompressedBitmap();
+        copy.keys = Arrays.copyOf(keys, size);
+        copy.containers = new Container[size];
+        for(int i = 0; i < size; i++){
+            copy.containers[i] = containers[i].copy();
+        }
+        copy.size = size;
+        return copy;
+    }
+
+    /**
+     * Keeps only the values that are also in the other bitmap
+     * @param other
+     */
+    public void and(CompressedBitmap other){
+        int kept = 0;
+        int j = 0;
+        for(int i = 0; i < size; i++){
+            while(j < other.size && other.keys[j] < keys[i]){
+                j++;
+            }
+            if(j < other.size && other.keys[j] == keys[i]){
+                Container container = containers[i].and(other.containers[j]);
+                if(container.cardinality() > 0){
+                    keys[kept] = keys[i];
+                    containers[kept++] = container;
+                }
+            }
+        }
+        Arrays.fill(containers, kept, size, null);
+        size = kept;
+    }
+
+    /**
+     * Adds all values of the other bitmap
+     * @param other
+     */
+    public void or(CompressedBitmap other){
+        for(int j = 0; j < other.size; j++){
+            int i = indexOf(other.keys[j]);
+            if(i < 0){
+                insertContainer(-i - 1, other.keys[j], other.containers[j].copy());
+            }
+            else{
+                containers[i] = containers[i].or(other.containers[j]);
+            }
+        }
+    }
+
+    /**
+     * Keeps only the values accepted by the predicate, cheaper than and when this bitmap is much smaller
+     * @param predicate
+     */
+    public void retainIf(IntPredicate predicate){
+        PrimitiveIterator.OfInt values = iterator(0);
+        CompressedBitmap result = new CompressedBitmap();
+        while(values.hasNext()){
+            int value = values.nextInt();
+            if(predicate.test(value)){
+                result.add(value);
+            }
+        }
+        keys = result.keys;
+        containers = result.containers;
+        size = result.size;
+    }
+
+    /**
+     * @param from smallest value to return
+     * @return values in ascending order, starting at from
+     */
+    public IntStream stream(int from){
+        return StreamSupport.intStream(Spliterators.spliteratorUnknownSize(iterator(from),
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    public int[] toArray(){
+        return stream(0).toArray();
+    }
+
+    private PrimitiveIterator.OfInt iterator(int from){
+        return new ValueIterator(Math.max(from, 0));
+    }
+
+    private int indexOf(char key){
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int i, char key, Container container){
+        if(size == keys.length){
+            int capacity = Math.max(4, size * 2);
+            keys = Arrays.copyOf(keys, capacity);
+            containers = Arrays.copyOf(containers, capacity);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(containers, i, containers, i + 1, size - i);
+        keys[i] = key;
+        containers[i] = container;
+        size++;
+    }
+
+    private void removeContainer(int i){
+        System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+        System.arraycopy(containers, i + 1, containers, i, size - i - 1);
+        containers[--size] = null;
+    }
+
+    private static void checkValue(int value){
+        if(value < 0){
+            throw new IllegalArgumentException("Only non-negative values can be stored");
+        }
+    }
+
+    @Override
+    public String toString(){
+        return Arrays.toString(toArray());
+    }
+
+    private class ValueIterator implements PrimitiveIterator.OfInt {
+        private int container;
+        private int low;
+        private int next;
+
+        ValueIterator(int from){
+            int i = indexOf((char) (from >>> 16));
+            container = i >= 0 ? i : -i - 1;
+            low = i >= 0 ? from & 0xFFFF : 0;
+            next = advance();
+        }
+
+        private int advance(){
+            while(container < size){
+                int value = low > 0xFFFF ? -1 : containers[container].next(low);
+                if(value >= 0){
+                    low = value + 1;
+                    return (keys[container] << 16) | value;
+                }
+                container++;
+                low = 0;
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean hasNext(){
+            return next >= 0;
+        }
+
+        @Override
+        public int nextInt(){
+            if(next < 0){
+                throw new NoSuchElementException();
+            }
+            int value = next;
+            next = advance();
+            return value;
+        }
+    }
+
+    /**
+     * Lower 16 bits of the values that share the same upper 16 bits. Operations return the container
+     * to use from now on, which is a different kind when the number of values crosses ARRAY_LIMIT.
+     */
+    private interface Container {
+        Container add(char value);
+        Container remove(char value);
+        boolean contains(char value);
+        int cardinality();
+        Container copy();
+        Container and(Container other);
+        Container or(Container other);
+
+        /**
+         * @return smallest value not less than from or -1
+         */
+        int next(int from);
+    }
+
+    private static final class ArrayContainer implements Container {
+        private char[] values;
+        private int cardinality;
+
+        ArrayContainer(){
+            values = new char[4];
+        }
+
+        ArrayContainer(char[] values, int cardinality){
+            this.values = values;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char value){
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if(i >= 0){
+                return this;
+            }
+            if(cardinality == ARRAY_LIMIT){
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if(cardinality == values.length){
+                values = Arrays.copyOf(values, Math.min(ARRAY_LIMIT, Math.max(4, cardinality * 2)));
+            }
+            System.arraycopy(values, i, values, i + 1, cardinality - i);
+            values[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        public Container remove(char value){
+            int i = Arrays.binarySearch(values, 0, cardinality, value);
+            if(i >= 0){
+                System.arraycopy(values, i + 1, values, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean contains(char value){
+            return Arrays.binarySearch(values, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        public int cardinality(){
+            return cardinality;
+        }
+
+        @Override
+        public Container copy(){
+            return new ArrayContainer(Arrays.copyOf(values, Math.max(cardinality, 1)), cardinality);
+        }
+
+        @Override
+        public Container and(Container other){
+            char[] result = new char[cardinality];
+            int n = 0;
+            if(other instanceof ArrayContainer){
+                ArrayContainer array = (ArrayContainer) other;
+                int j = 0;
+                for(int i = 0; i < cardinality && j < array.cardinality; ){
+                    if(values[i] == array.values[j]){
+                        result[n++] = values[i++];
+                        j++;
+                    }
+                    else if(values[i] < array.values[j]){
+                        i++;
+                    }
+                    else{
+                        j++;
+                    }
+                }
+            }
+            else{
+                for(int i = 0; i < cardinality; i++){
+                    if(other.contains(values[i])){
+                        result[n++] = values[i];
+                    }
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        public Container or(Container other){
+            if(other instanceof BitmapContainer){
+                return other.or(this);
+            }
+            ArrayContainer array = (ArrayContainer) other;
+            if(cardinality + array.cardinality > ARRAY_LIMIT){
+                return toBitmap().or(other);
+            }
+            char[] result = new char[Math.max(cardinality + array.cardinality, 1)];
+            int n = 0;
+            int i = 0;
+            int j = 0;
+            while(i < cardinality || j < array.cardinality){
+                if(j == array.cardinality || (i < cardinality && values[i] < array.values[j])){
+                    result[n++] = values[i++];
+                }
+                else if(i == cardinality || array.values[j] < values[i]){
+                    result[n++] = array.values[j++];
+                }
+                else{
+                    result[n++] = values[i++];
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, n);
+        }
+
+        @Override
+        public int next(int from){
+            int i = Arrays.binarySearch(values, 0, cardinality, (char) from);
+            i = i >= 0 ? i : -i - 1;
+            return i < cardinality ? values[i] : -1;
+        }
+
+        private BitmapContainer toBitmap(){
+            BitmapContainer bitmap = new BitmapContainer();
+            for(int i = 0; i < cardinality; i++){
+                bitmap.add(values[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    private static final class BitmapContainer implements Container {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(){
+            words = new long[1024];
+        }
+
+        BitmapContainer(long[] words, int cardinality){
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        public Container add(char value){
+            long bit = 1L << value;
+            if((words[value >>> 6] & bit) == 0){
+                words[value >>> 6] |= bit;
+                cardinality++;
+            }
+            return this;
+        }
+
+        @Override
+        public Container remove(char value){
+            long bit = 1L << value;
+            if((words[value >>> 6] & bit) != 0){
+                words[value >>> 6] &= ~bit;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_LIMIT ? toArrayContainer() : this;
+        }
+
+        @Override
+        public boolean contains(char value){
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        public int cardinality(){
+            return cardinality;
+        }
+
+        @Override
+        public Container copy(){
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        public Container and(Container other){
+            if(other instanceof ArrayContainer){
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[words.length];
+            int count = 0;
+            for(int i = 0; i < words.length; i++){
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            BitmapContainer bitmap = new BitmapContainer(result, count);
+            return count <= ARRAY_LIMIT ? bitmap.toArrayContainer() : bitmap;
+        }
+
+        @Override
+        public Container or(Container other){
+            BitmapContainer result = (BitmapContainer) copy();
+            if(other instanceof ArrayContainer){
+                ArrayContainer array = (ArrayContainer) other;
+                for(int i = 0; i < array.cardinality; i++){
+                    result.add(array.values[i]);
+                }
+                return result;
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for(int i = 0; i < words.length; i++){
+                result.words[i] |= otherWords[i];
+                count += Long.bitCount(result.words[i]);
+            }
+            result.cardinality = count;
+            return result;
+        }
+
+        @Override
+        public int next(int from){
+            int i = from >>> 6;
+            if(i >= words.length){
+                return -1;
+            }
+            long word = words[i] & (-1L << from);
+            while(true){
+                if(word != 0){
+                    return (i << 6) + Long.numberOfTrailingZeros(word);
+                }
+                if(++i == words.length){
+                    return -1;
+                }
+                word = words[i];
+            }
+        }
+
+        private ArrayContainer toArrayContainer(){
+            char[] values = new char[Math.max(cardinality, 1)];
+            int n = 0;
+            for(int i = 0; i < words.length; i++){
+                long word = words[i];
+                while(word != 0){
+                    values[n++] = (char) ((i << 6) + Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(values, n);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package library.search;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Set of non-negative ids that is changed without locking: every id is one bit of a word, set and cleared with
+ * compare-and-set. Words are kept in pages of PAGE_SIZE ids created when the first id of the page is added,
+ * only growing the table of pages takes a lock.
+ *
+ * Readers never block writers. A reader going over many words may see a change of one word and not
+ * of another made at the same time, callers that act on the ids must check them again, as they do anyway.
+ */
+public class ConcurrentBitmap implements BitmapSource {
+
+    private static final int PAGE_BITS = 16;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int WORDS_PER_PAGE = PAGE_SIZE / 64;
+
+    private volatile AtomicReferenceArray<AtomicLongArray> pages = new AtomicReferenceArray<>(16);
+    private final LongAdder cardinality = new LongAdder();
+
+    public void add(int id) {
+        AtomicLongArray page = page(id, true);
+        int word = (id & (PAGE_SIZE - 1)) >>> 6;
+        long bit = 1L << id;
+        while (true) {
+            long current = page.get(word);
+            if ((current & bit) != 0) {
+                return;
+            }
+            if (page.compareAndSet(word, current, current | bit)) {
+                cardinality.increment();
+                return;
+            }
+        }
+    }
+
+    public void remove(int id) {
+        AtomicLongArray page = page(id, false);
+        if (isNull(page)) {
+            return;
+        }
+        int word = (id & (PAGE_SIZE - 1)) >>> 6;
+        long bit = 1L << id;
+        while (true) {
+            long current = page.get(word);
+            if ((current & bit) == 0) {
+                return;
+            }
+            if (page.compareAndSet(word, current, current & ~bit)) {
+                cardinality.decrement();
+                return;
+            }
+        }
+    }
+
+    public boolean contains(int id) {
+        AtomicLongArray page = page(id, false);
+        return !isNull(page) && (page.get((id & (PAGE_SIZE - 1)) >>> 6) & (1L << id)) != 0;
+    }
+
+    /**
+     * @return number of ids, may be off by the changes made while it is read
+     */
+    @Override
+    public long cardinality() {
+        return Math.max(cardinality.sum(), 0);
+    }
+
+    @Override
+    public CompressedBitmap toBitmap() {
+        int[] ids = new int[64];
+        int count = 0;
+        AtomicReferenceArray<AtomicLongArray> current = pages;
+        for (int p = 0; p < current.length(); p++) {
+            AtomicLongArray page = current.get(p);
+            if (isNull(page)) {
+                continue;
+            }
+            for (int w = 0; w < WORDS_PER_PAGE; w++) {
+                for (long word = page.get(w); word != 0; word &= word - 1) {
+                    if (count == ids.length) {
+                        ids = Arrays.copyOf(ids, count * 2);
+                    }
+                    ids[count++] = (p << PAGE_BITS) + (w << 6) + Long.numberOfTrailingZeros(word);
+                }
+            }
+        }
+        return CompressedBitmap.of(Arrays.copyOf(ids, count));
+    }
+
+    @Override
+    public void and(CompressedBitmap result) {
+        result.retainIf(this::contains);
+    }
+
+    private AtomicLongArray page(int id, boolean create) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Id must not be negative");
+        }
+        int index = id >>> PAGE_BITS;
+        AtomicReferenceArray<AtomicLongArray> current = pages;
+        AtomicLongArray page = index < current.length() ? current.get(index) : null;
+        if (!isNull(page) || !create) {
+            return page;
+        }
+        return newPage(index);
+    }
+
+    private synchronized AtomicLongArray newPage(int index) {
+        AtomicReferenceArray<AtomicLongArray> current = pages;
+        if (index >= current.length()) {
+            AtomicReferenceArray<AtomicLongArray> grown = new AtomicReferenceArray<>(Math.max(current.length() * 2, index + 1));
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            pages = grown;
+            current = grown;
+        }
+        AtomicLongArray page = current.get(index);
+        if (isNull(page)) {
+            page = new AtomicLongArray(WORDS_PER_PAGE);
+            current.set(index, page);
+        }
+        return page;
+    }
+}
@@ -0,0 +1,72 @@
+package library.search;
+
+import java.util.Objects;
+
+/**
+ * Immutable copy of SearchCriteria with equals and hashCode, so criteria can be used as a cache key
+ * and changing the criteria afterwards doesn't change the key
+ */
+public final class CriteriaKey {
+
+    private final String title;
+    private final String author;
+    private final Integer year;
+    private final Integer yearFrom;
+    private final Integer yearTo;
+    private final boolean availableOnly;
+    private final MatchMode titleMatchMode;
+    private final MatchMode authorMatchMode;
+
+    private CriteriaKey(SearchCriteria criteria) {
+        this.title = criteria.getTitle();
+        this.author = criteria.getAuthor();
+        this.year = criteria.getYear();
+        this.yearFrom = criteria.getYearFrom();
+        this.yearTo = criteria.getYearTo();
+        this.availableOnly = criteria.isAvailableOnly();
+        this.titleMatchMode = criteria.getTitleMatchMode();
+        this.authorMatchMode = criteria.getAuthorMatchMode();
+    }
+
+    public static CriteriaKey of(SearchCriteria criteria) {
+        return new CriteriaKey(criteria);
+    }
+
+    public boolean isAvailableOnly() {
+        return availableOnly;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CriteriaKey that = (CriteriaKey) o;
+        return availableOnly == that.availableOnly &&
+                Objects.equals(title, that.title) &&
+                Objects.equals(author, that.author) &&
+                Objects.equals(year, that.year) &&
+                Objects.equals(yearFrom, that.yearFrom) &&
+                Objects.equals(yearTo, that.yearTo) &&
+                titleMatchMode == that.titleMatchMode &&
+                authorMatchMode == that.authorMatchMode;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(title, author, year, yearFrom, yearTo, availableOnly, titleMatchMode, authorMatchMode);
+    }
+
+    @Override
+    public String toString() {
+        return "CriteriaKey{" +
+                "title='" + title + '\'' +
+                ", author='" + author + '\'' +
+                ", year=" + year +
+                ", yearFrom=" + yearFrom +
+                ", yearTo=" + yearTo +
+                ", availableOnly=" + availableOnly +
+                ", titleMatchMode=" + titleMatchMode +
+                ", authorMatchMode=" + authorMatchMode +
+                '}';
+    }
+}
@@ -0,0 +1,122 @@
+package library.search;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Index of the words of one text field, word -> ids of the books that contain it. Words are kept
+ * normalized, so lookups ignore case and diacritics, and sorted, so a prefix is looked up as a range of words.
+ * The index is updated with every added and removed book, a search only reads the postings
+ * of the words of the query.
+ */
+public class InvertedIndex {
+
+    private final ConcurrentHashMap<String, Set<Integer>> postings = new ConcurrentHashMap<>();
+
+    /**
+     * Words that have postings, changed only inside compute of the word in postings
+     */
+    private final ConcurrentSkipListSet<String> words = new ConcurrentSkipListSet<>();
+
+    public void add(int id, String text){
+        if(isNull(text)){
+            return;
+        }
+        for(String token : TextNormalizer.tokenize(text)){
+            postings.compute(token, (k, ids) -> {
+                if(isNull(ids)){
+                    ids = ConcurrentHashMap.newKeySet();
+                    words.add(token);
+                }
+                ids.add(id);
+                return ids;
+            });
+        }
+    }
+
+    public void remove(int id, String text){
+        if(isNull(text)){
+            return;
+        }
+        for(String token : TextNormalizer.tokenize(text)){
+            postings.computeIfPresent(token, (k, ids) -> {
+                ids.remove(id);
+                if(ids.isEmpty()){
+                    words.remove(token);
+                    return null;
+                }
+                return ids;
+            });
+        }
+    }
+
+    /**
+     * Finds the books that contain every word of the query, or a word starting with it in PREFIX mode.
+     * The result can contain books that don't match the query in IGNORE_CASE mode, the caller checks them
+     * with TextQuery.matches. Only the postings of the rarest word of the query are scanned.
+     * @param query
+     * @return sorted ids of the books
+     */
+    public int[] search(TextQuery query){
+        List<String> tokens = query.getTokens();
+        if(tokens.isEmpty()){
+            return new int[0];
+        }
+        List<List<Set<Integer>>> groups = new ArrayList<>(tokens.size());
+        for(String token : tokens){
+            groups.add(postingsOf(token, query.getMatchMode() == MatchMode.PREFIX));
+        }
+        groups.sort(Comparator.comparingLong(InvertedIndex::size));
+
+        List<List<Set<Integer>>> others = groups.subList(1, groups.size());
+        return groups.get(0).stream()
+                .flatMap(Set::stream)
+                .distinct()
+                .filter(id -> others.stream().allMatch(group -> contains(group, id)))
+                .mapToInt(Integer::intValue)
+                .sorted()
+                .toArray();
+    }
+
+    /**
+     * @return number of distinct words in the index
+     */
+    public int size(){
+        return postings.size();
+    }
+
+    private List<Set<Integer>> postingsOf(String token, boolean prefix){
+        if(!prefix){
+            Set<Integer> ids = postings.get(token);
+            return isNull(ids) ? Collections.emptyList() : Collections.singletonList(ids);
+        }
+        List<Set<Integer>> result = new ArrayList<>();
+        for(String word : words.subSet(token, true, token + Character.MAX_VALUE, false)){
+            Set<Integer> ids = postings.get(word);
+            if(!isNull(ids)){
+                result.add(ids);
+            }
+        }
+        return result;
+    }
+
+    private static long size(List<Set<Integer>> group){
+        long size = 0;
+        for(Set<Integer> ids : group){
+            size += ids.size();
+        }
+        return size;
+    }
+
+    private static boolean contains(List<Set<Integer>> group, Integer id){
+        for(Set<Integer> ids : group){
+            if(ids.contains(id)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,27 @@
+package library.search;
+
+/**
+ * How a text field of SearchCriteria is compared with the field of a book
+ */
+public enum MatchMode {
+
+    /**
+     * The field equals the value
+     */
+    EXACT,
+
+    /**
+     * The field equals the value ignoring case and diacritics
+     */
+    IGNORE_CASE,
+
+    /**
+     * Every word of the value is a word of the field, ignoring case and diacritics
+     */
+    TOKENS,
+
+    /**
+     * Every word of the value starts a word of the field, ignoring case and diacritics
+     */
+    PREFIX
+}
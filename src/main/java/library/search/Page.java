@@ -0,0 +1,38 @@
+package library.search;
+
+import java.io.Serializable;
+import java.util.List;
+
+import static java.util.Objects.isNull;
+
+/**
+ * One page of search results with the cursor of the next page
+ * @param <T>
+ */
+public class Page<T> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return cursor to pass in PageRequest for the next page or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasNext() {
+        return !isNull(nextCursor);
+    }
+}
@@ -0,0 +1,50 @@
+package library.search;
+
+import java.io.Serializable;
+
+/**
+ * Which page of search results to return. The first page has no cursor, every next one
+ * takes the cursor returned with the previous page. Pages are keyed by the position of the last result,
+ * not by an offset, so fetching a page costs the same however deep it is.
+ */
+public class PageRequest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int pageSize;
+    private String cursor;
+    private boolean distinct;
+
+    public PageRequest(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * @param cursor returned with the previous page, null for the first page
+     */
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
+
+    /**
+     * @param distinct whether every book is returned once instead of once per copy
+     */
+    public void setDistinct(boolean distinct) {
+        this.distinct = distinct;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public boolean isDistinct() {
+        return distinct;
+    }
+}
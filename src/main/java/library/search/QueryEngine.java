@@ -0,0 +1,71 @@
+package library.search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Answers multi-field queries from bitmap indexes. The operands of a query are intersected starting
+ * with the one that has the fewest ids, so the work follows the most selective criteria
+ * and stops as soon as the result is empty.
+ */
+public class QueryEngine {
+
+    private final BitmapIndex titleIndex = new BitmapIndex();
+    private final BitmapIndex authorIndex = new BitmapIndex();
+    private final BitmapIndex yearIndex = new BitmapIndex();
+
+    public void add(int id, int title, int author, int year) {
+        titleIndex.add(title, id);
+        authorIndex.add(author, id);
+        yearIndex.add(year, id);
+    }
+
+    public void remove(int id, int title, int author, int year) {
+        titleIndex.remove(title, id);
+        authorIndex.remove(author, id);
+        yearIndex.remove(year, id);
+    }
+
+    /**
+     * @param query
+     * @return ids matching every operand of the query or null if the query has no operands
+     */
+    public CompressedBitmap select(BitmapQuery query) {
+        List<BitmapSource> operands = new ArrayList<>(query.getOperands());
+        if (!isNull(query.getTitle())) {
+            operands.add(titleIndex.equalTo(query.getTitle()));
+        }
+        if (!isNull(query.getAuthor())) {
+            operands.add(authorIndex.equalTo(query.getAuthor()));
+        }
+        if (!isNull(query.getYearFrom()) || !isNull(query.getYearTo())) {
+            operands.add(yearIndex.between(isNull(query.getYearFrom()) ? Integer.MIN_VALUE + 1 : query.getYearFrom(),
+                    isNull(query.getYearTo()) ? Integer.MAX_VALUE : query.getYearTo()));
+        }
+        if (operands.isEmpty()) {
+            return null;
+        }
+        return intersect(operands);
+    }
+
+    /**
+     * @param operands
+     * @return ids that are in every operand
+     */
+    public static CompressedBitmap intersect(List<BitmapSource> operands) {
+        List<long[]> estimates = new ArrayList<>(operands.size());
+        for (int i = 0; i < operands.size(); i++) {
+            estimates.add(new long[]{operands.get(i).cardinality(), i});
+        }
+        estimates.sort(Comparator.comparingLong(e -> e[0]));
+
+        CompressedBitmap result = operands.get((int) estimates.get(0)[1]).toBitmap();
+        for (int i = 1; i < estimates.size() && !result.isEmpty(); i++) {
+            operands.get((int) estimates.get(i)[1]).and(result);
+        }
+        return result;
+    }
+}
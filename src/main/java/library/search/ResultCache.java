@@ -0,0 +1,128 @@
+package library.search;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Bounded cache of query results. Every entry remembers the version of the data it was computed from
+ * and is only returned while the caller's current version is the same, so a change of the data
+ * invalidates exactly the entries that depend on it. The least recently used entries are evicted
+ * when the total weight of the entries exceeds the maximum.
+ * @param <K>
+ * @param <V>
+ */
+public class ResultCache<K, V> {
+
+    private final long maximumWeight;
+    private final ToIntFunction<V> weigher;
+
+    // guarded by this, in access order
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maximumWeight
+     * @param weigher weight of one value, e.g. the number of results
+     */
+    public ResultCache(long maximumWeight, ToIntFunction<V> weigher) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive");
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the cached value computed at the given version or computes and caches a new one.
+     * The version must be read before the value is computed and must grow after every change of the data,
+     * then a value computed while the data changed is never returned for the new version.
+     * @param key
+     * @param version
+     * @param loader computes the value, called without holding the lock of the cache
+     * @return the value
+     */
+    public V get(K key, long version, Supplier<V> loader) {
+        synchronized (this) {
+            Entry<V> entry = entries.get(key);
+            if (!isNull(entry)) {
+                if (entry.version == version) {
+                    hits.increment();
+                    return entry.value;
+                }
+                if (entry.version < version) {
+                    remove(key, entry);
+                    invalidations.increment();
+                }
+            }
+        }
+        misses.increment();
+        V value = loader.get();
+        put(key, version, value);
+        return value;
+    }
+
+    public void invalidateAll() {
+        synchronized (this) {
+            invalidations.add(entries.size());
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    public CacheStats getStats() {
+        synchronized (this) {
+            return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), weight);
+        }
+    }
+
+    private synchronized void put(K key, long version, V value) {
+        Entry<V> current = entries.get(key);
+        if (!isNull(current) && current.version >= version) {
+            // a newer value was cached in the meantime
+            return;
+        }
+        int entryWeight = Math.max(1, weigher.applyAsInt(value));
+        if (entryWeight > maximumWeight) {
+            return;
+        }
+        if (!isNull(current)) {
+            remove(key, current);
+        }
+        entries.put(key, new Entry<>(value, version, entryWeight));
+        weight += entryWeight;
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (weight > maximumWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions.increment();
+        }
+    }
+
+    private void remove(K key, Entry<V> entry) {
+        entries.remove(key);
+        weight -= entry.weight;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long version;
+        private final int weight;
+
+        Entry(V value, long version, int weight) {
+            this.value = value;
+            this.version = version;
+            this.weight = weight;
+        }
+    }
+}
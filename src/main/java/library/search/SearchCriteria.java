@@ -1,24 +1,70 @@
 package library.search;
 
-public class SearchCriteria {
+import java.io.Serializable;
+
+import static java.util.Objects.isNull;
+
+public class SearchCriteria implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     private String title;
     private String author;
     private Integer year;
+    private Integer yearFrom;
+    private Integer yearTo;
+    private boolean availableOnly;
+    private MatchMode titleMatchMode = MatchMode.EXACT;
+    private MatchMode authorMatchMode = MatchMode.EXACT;
 
     public SearchCriteria(){};
 
     public void setTitle(String title) {
+        setTitle(title, MatchMode.EXACT);
+    }
+
+    /**
+     * @param title
+     * @param matchMode how the title of a book is compared with the given title
+     */
+    public void setTitle(String title, MatchMode matchMode) {
         this.title = title;
+        this.titleMatchMode = isNull(matchMode) ? MatchMode.EXACT : matchMode;
     }
 
     public void setAuthor(String author) {
+        setAuthor(author, MatchMode.EXACT);
+    }
+
+    /**
+     * @param author
+     * @param matchMode how the author of a book is compared with the given author
+     */
+    public void setAuthor(String author, MatchMode matchMode) {
         this.author = author;
+        this.authorMatchMode = isNull(matchMode) ? MatchMode.EXACT : matchMode;
     }
 
     public void setYear(Integer year) {
         this.year = year;
     }
 
+    /**
+     * @param yearFrom first year, null for no lower bound
+     * @param yearTo last year, null for no upper bound
+     */
+    public void setYearRange(Integer yearFrom, Integer yearTo) {
+        this.yearFrom = yearFrom;
+        this.yearTo = yearTo;
+    }
+
+    /**
+     * @param availableOnly whether only books with a copy that can be lent right now match
+     */
+    public void setAvailableOnly(boolean availableOnly) {
+        this.availableOnly = availableOnly;
+    }
+
     public String getTitle() {
         return title;
     }
@@ -30,4 +76,24 @@ public class SearchCriteria {
     public Integer getYear() {
         return year;
     }
+
+    public Integer getYearFrom() {
+        return yearFrom;
+    }
+
+    public Integer getYearTo() {
+        return yearTo;
+    }
+
+    public boolean isAvailableOnly() {
+        return availableOnly;
+    }
+
+    public MatchMode getTitleMatchMode() {
+        return titleMatchMode;
+    }
+
+    public MatchMode getAuthorMatchMode() {
+        return authorMatchMode;
+    }
 }
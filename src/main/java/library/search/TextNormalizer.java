@@ -0,0 +1,52 @@
+package library.search;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Brings text to the form in which it is indexed and compared: lower case without diacritics,
+ * so "Dżuma" and "DZUMA" are the same word.
+ */
+public final class TextNormalizer {
+
+    private TextNormalizer(){
+    }
+
+    public static String normalize(String text){
+        // ł is a separate letter in Unicode, not l with a combining mark
+        String lowerCase = text.toLowerCase(Locale.ROOT).replace('\u0142', 'l');
+        String decomposed = Normalizer.normalize(lowerCase, Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        for(int i = 0; i < decomposed.length(); i++){
+            char c = decomposed.charAt(i);
+            int type = Character.getType(c);
+            if(type != Character.NON_SPACING_MARK && type != Character.COMBINING_SPACING_MARK && type != Character.ENCLOSING_MARK){
+                result.append(c);
+            }
+        }
+        return result.toString().trim();
+    }
+
+    /**
+     * @param text
+     * @return normalized words of the text, anything that is not a letter or a digit separates words
+     */
+    public static List<String> tokenize(String text){
+        String normalized = normalize(text);
+        List<String> tokens = new ArrayList<>();
+        int start = -1;
+        for(int i = 0; i <= normalized.length(); i++){
+            boolean partOfWord = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if(partOfWord && start < 0){
+                start = i;
+            }
+            else if(!partOfWord && start >= 0){
+                tokens.add(normalized.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
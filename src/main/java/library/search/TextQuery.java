@@ -0,0 +1,66 @@
+package library.search;
+
+import java.util.HashSet;
+import java.util.List;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Value of a text field of SearchCriteria with its match mode, normalized once for all compared books
+ */
+public class TextQuery {
+
+    private final String value;
+    private final MatchMode matchMode;
+    private final String normalized;
+    private final List<String> tokens;
+
+    public TextQuery(String value, MatchMode matchMode) {
+        this.value = value;
+        this.matchMode = isNull(matchMode) ? MatchMode.EXACT : matchMode;
+        this.normalized = TextNormalizer.normalize(value);
+        this.tokens = TextNormalizer.tokenize(value);
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public MatchMode getMatchMode() {
+        return matchMode;
+    }
+
+    /**
+     * @return normalized words of the value
+     */
+    public List<String> getTokens() {
+        return tokens;
+    }
+
+    public boolean matches(String field) {
+        if (isNull(field)) {
+            return false;
+        }
+        switch (matchMode) {
+            case EXACT:
+                return value.equals(field);
+            case IGNORE_CASE:
+                return normalized.equals(TextNormalizer.normalize(field));
+            case TOKENS:
+                return !tokens.isEmpty() && new HashSet<>(TextNormalizer.tokenize(field)).containsAll(tokens);
+            case PREFIX:
+                return !tokens.isEmpty() && startsWords(TextNormalizer.tokenize(field));
+            default:
+                throw new IllegalStateException("Unknown match mode " + matchMode);
+        }
+    }
+
+    private boolean startsWords(List<String> fieldTokens) {
+        for (String token : tokens) {
+            if (fieldTokens.stream().noneMatch(w -> w.startsWith(token))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package demo;
+
+import library.LibraryManager;
+import library.metrics.Operation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+
+public class LoadGeneratorTest {
+
+    @Test
+    public void shouldStartEveryOperationOfTheRunAtTheConfiguredRate() throws Exception {
+        LoadGeneratorConfig config = new LoadGeneratorConfig();
+        config.setClients(4);
+        config.setRatePerSecond(2_000);
+        config.setDurationSeconds(2);
+        config.setReportIntervalSeconds(1);
+        config.setTitles(100);
+        config.setCopiesPerTitle(2);
+        LoadGenerator generator = new LoadGenerator(config);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        generator.run(new LibraryManager(), new PrintStream(out, true, "UTF-8"));
+
+        long total = 0;
+        for (Operation operation : LoadGeneratorConfig.OPERATIONS) {
+            long count = generator.getLatency(operation).getCount();
+            Assert.assertTrue(operation + " was not run", count > 0);
+            total += count;
+        }
+        Assert.assertEquals(4_000, total);
+        Assert.assertEquals(0, generator.getErrors());
+        Assert.assertTrue(generator.getMisses(Operation.TRY_LEND_BOOK) < generator.getLatency(Operation.TRY_LEND_BOOK).getCount());
+        Assert.assertTrue(out.toString("UTF-8").contains("4000 operations"));
+    }
+}
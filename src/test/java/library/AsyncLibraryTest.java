@@ -0,0 +1,112 @@
+package library;
+
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.model.LendResult;
+import library.persistence.WriteAheadLog;
+import library.persistence.WriteAheadLogConfig;
+import library.search.SearchCriteria;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+public class AsyncLibraryTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldLendEveryCopyOnceWhenRequestsAreBatched() throws Exception {
+        LibraryManager manager = new LibraryManager();
+        manager.importBooks(IntStream.range(0, 100).mapToObj(i -> new BookDetails("Hamlet", "William Shakespeare", 2002)));
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Hamlet");
+        AsyncLibraryConfig config = new AsyncLibraryConfig();
+        config.setMaxBatchSize(16);
+        config.setMaxBatchDelayMicros(200);
+
+        try (AsyncLibrary library = new AsyncLibrary(manager, config)) {
+            List<CompletableFuture<BookDetails>> lends = IntStream.range(0, 150)
+                    .mapToObj(i -> library.lendBook(criteria, "Reader " + i))
+                    .collect(Collectors.toList());
+            long lent = lends.stream().filter(f -> outcome(f) == null).count();
+            long refused = lends.stream().filter(f -> outcome(f) instanceof BookAlreadyLentException).count();
+            Assert.assertEquals(100, lent);
+            Assert.assertEquals(50, refused);
+            Assert.assertEquals(0, manager.getInventory().get(0).getAvailableCount());
+        }
+    }
+
+    @Test
+    public void shouldReturnAndRemoveThroughWriteAheadLog() throws Exception {
+        WriteAheadLogConfig logConfig = new WriteAheadLogConfig(folder.getRoot().toPath());
+        String lentId;
+        String removedId;
+        try (WriteAheadLog log = new WriteAheadLog(logConfig);
+             AsyncLibrary library = new AsyncLibrary(new LibraryManager(log))) {
+            lentId = library.addNewBook("Hamlet", "William Shakespeare", 2002).get();
+            removedId = library.addNewBook("Odyseja", "Homer", 2001).get();
+            Assert.assertEquals("Hamlet", library.lendBook(lentId, "Jan Kowalski").get().getTitle());
+            Assert.assertTrue(library.returnBook(lentId).get());
+            Assert.assertFalse(library.returnBook(lentId).get());
+            library.lendBook(lentId, "Anna Nowak").get();
+            library.removeBook(removedId).get();
+            Assert.assertTrue(outcome(library.removeBook(removedId)) instanceof BookNotExistException);
+            Assert.assertTrue(outcome(library.getBookById(removedId)) instanceof BookNotExistException);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(logConfig)) {
+            LibraryManager restored = new LibraryManager(log);
+            Assert.assertEquals(1, restored.getAllBookDetails().size());
+            Assert.assertTrue(restored.checkIfBookIsLent(lentId));
+        }
+    }
+
+    @Test
+    public void shouldCompleteReservationOnExecutor() throws Exception {
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Hamlet");
+        try (AsyncLibrary library = new AsyncLibrary(new LibraryManager())) {
+            String id = library.addNewBook("Hamlet", "William Shakespeare", 2002).get();
+            Assert.assertEquals(id, library.reserveBook(criteria, "Jan Kowalski").get().getBookId());
+
+            CompletableFuture<LendResult> reserved = library.reserveBook(criteria, "Anna Nowak");
+            // a thread waiting on the future could run the callback itself, so the test only waits on the latch
+            AtomicReference<String> completedOn = new AtomicReference<>();
+            CountDownLatch completed = new CountDownLatch(1);
+            reserved.whenComplete((lent, e) -> {
+                completedOn.set(Thread.currentThread().getName());
+                completed.countDown();
+            });
+            Assert.assertFalse(reserved.isDone());
+            Assert.assertTrue(library.returnBook(id).get());
+
+            Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+            Assert.assertTrue(completedOn.get(), completedOn.get().startsWith("library-async-"));
+            Assert.assertEquals(id, reserved.get().getBookId());
+        }
+    }
+
+    private static Throwable outcome(CompletableFuture<?> future) {
+        try {
+            future.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package library;
+
+import library.model.BookDetails;
+import library.model.LendResult;
+import library.search.SearchCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+public class BranchNetworkTest {
+
+    @Test
+    public void shouldShareBookDetailsAndKeepCopiesPerBranch() throws Exception {
+        BranchNetwork network = new BranchNetwork();
+        LibraryManager north = network.addBranch("north");
+        LibraryManager south = network.addBranch("south");
+        String northHamlet = north.addNewBook("Hamlet", "William Shakespeare", 2002);
+        south.addNewBook("Hamlet", "William Shakespeare", 2002);
+        south.addNewBook("Odyseja", "Homer", 2001);
+
+        Assert.assertEquals(2, network.getCatalog().getAllBookDetails().size());
+        Assert.assertEquals(Collections.singletonList(new BookDetails("Hamlet", "William Shakespeare", 2002)),
+                north.getAllBookDetails());
+        Assert.assertEquals(2, south.getAllBookDetails().size());
+        Assert.assertTrue(north.getBookListByCriteria(title("Odyseja")).isEmpty());
+        Assert.assertEquals(LendResult.Status.NOT_FOUND, north.tryLendBook(title("Odyseja"), "Jan Kowalski").getStatus());
+        Assert.assertEquals(1, north.getInventory().size());
+
+        north.enableResultCache(100);
+        Assert.assertNull(network.getCatalog().getResultCacheStats());
+        Assert.assertNotNull(north.getResultCacheStats());
+
+        north.removeBook(northHamlet);
+
+        Assert.assertTrue(north.getAllBookDetails().isEmpty());
+        Assert.assertEquals(1, south.getBookListByCriteria(title("Hamlet")).size());
+        Assert.assertEquals(2, network.getCatalog().getAllBookDetails().size());
+    }
+
+    @Test
+    public void shouldFindBranchesWithAvailableCopy() throws Exception {
+        BranchNetwork network = new BranchNetwork();
+        LibraryManager north = network.addBranch("north");
+        LibraryManager south = network.addBranch("south");
+        network.addBranch("east").addNewBook("Odyseja", "Homer", 2001);
+        north.addNewBook("Hamlet", "William Shakespeare", 2002);
+        north.addNewBook("Hamlet", "William Shakespeare", 2002);
+        String southHamlet = south.addNewBook("Hamlet", "William Shakespeare", 2002);
+
+        Assert.assertEquals(Arrays.asList("north", "south"), network.getBranchesWithAvailableCopy(title("Hamlet")));
+
+        south.lendBook(southHamlet, "Jan Kowalski");
+
+        Assert.assertEquals(Collections.singletonList("north"), network.getBranchesWithAvailableCopy(title("Hamlet")));
+        Map<String, Integer> expected = new LinkedHashMap<>();
+        expected.put("north", 2);
+        Assert.assertEquals(expected, network.getAvailableCopies(title("Hamlet")));
+
+        south.returnBook(southHamlet);
+
+        expected.put("south", 1);
+        Assert.assertEquals(expected, network.getAvailableCopies(title("Hamlet")));
+        Assert.assertTrue(network.getBranchesWithAvailableCopy(title("Dżuma")).isEmpty());
+    }
+
+    private static SearchCriteria title(String title) {
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle(title);
+        return criteria;
+    }
+}
@@ -0,0 +1,139 @@
+package library;
+
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.search.SearchCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+public class LibraryManagerConcurrencyTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    public void shouldLendEveryCopyExactlyOnceByCriteria() throws Exception {
+        LibraryManager library = new LibraryManager();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(library.addNewBook("Title 1", "Author 1", 2000));
+        }
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Title 1");
+
+        AtomicInteger lent = new AtomicInteger();
+        AtomicInteger refused = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < 200; i++) {
+                try {
+                    library.lendBook(criteria, Thread.currentThread().getName());
+                    lent.incrementAndGet();
+                } catch (BookAlreadyLentException e) {
+                    refused.incrementAndGet();
+                }
+            }
+            return null;
+        });
+
+        Assert.assertEquals(500, lent.get());
+        Assert.assertEquals(THREADS * 200 - 500, refused.get());
+        for (String id : ids) {
+            Assert.assertTrue(library.checkIfBookIsLent(id));
+        }
+    }
+
+    @Test
+    public void shouldLendOneCopyToOnlyOnePerson() throws Exception {
+        LibraryManager library = new LibraryManager();
+        for (int round = 0; round < 200; round++) {
+            String id = library.addNewBook("Title " + round, "Author 1", 2000);
+            AtomicInteger lent = new AtomicInteger();
+            runConcurrently(() -> {
+                try {
+                    library.lendBook(id, Thread.currentThread().getName());
+                    lent.incrementAndGet();
+                } catch (BookAlreadyLentException e) {
+                    // lost the race
+                }
+                return null;
+            });
+            Assert.assertEquals(1, lent.get());
+        }
+    }
+
+    @Test
+    public void shouldNeitherRemoveLentCopyNorLendRemovedCopy() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            LibraryManager library = new LibraryManager();
+            String id = library.addNewBook("Title 1", "Author 1", 2000);
+            AtomicInteger lent = new AtomicInteger();
+            AtomicInteger removed = new AtomicInteger();
+            runConcurrently(() -> {
+                try {
+                    if (Thread.currentThread().getId() % 2 == 0) {
+                        library.lendBook(id, Thread.currentThread().getName());
+                        lent.incrementAndGet();
+                    } else {
+                        library.removeBook(id);
+                        removed.incrementAndGet();
+                    }
+                } catch (BookAlreadyLentException | BookNotExistException e) {
+                    // lost the race
+                }
+                return null;
+            });
+            Assert.assertEquals(1, lent.get() + removed.get());
+            Assert.assertEquals(removed.get() == 1, library.getAllBookDetails().isEmpty());
+            if (lent.get() == 1) {
+                Assert.assertTrue(library.checkIfBookIsLent(id));
+            }
+        }
+    }
+
+    @Test
+    public void shouldKeepBookDetailsOfConcurrentlyAddedCopies() throws Exception {
+        LibraryManager library = new LibraryManager();
+        ConcurrentLinkedQueue<String> ids = new ConcurrentLinkedQueue<>();
+        runConcurrently(() -> {
+            for (int i = 0; i < 2000; i++) {
+                String id = library.addNewBook("Title 1", "Author 1", 2000);
+                if (i % 2 == 0) {
+                    library.removeBook(id);
+                } else {
+                    ids.add(id);
+                }
+            }
+            return null;
+        });
+
+        Assert.assertEquals(1, library.getAllBookDetails().size());
+        for (String id : ids) {
+            Assert.assertNotNull(library.getBookById(id));
+        }
+    }
+
+    private static void runConcurrently(Callable<Void> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Void>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    return task.call();
+                }));
+            }
+            start.countDown();
+            for (Future<Void> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
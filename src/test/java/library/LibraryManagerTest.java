@@ -3,11 +3,26 @@ package library;
 import library.exception.BookAlreadyLentException;
 import library.exception.BookNotExistException;
 import library.model.BookDetails;
+import library.model.BookInventory;
+import library.model.LendResult;
+import library.search.MatchMode;
+import library.search.Page;
+import library.search.PageRequest;
 import library.search.SearchCriteria;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 
 public class LibraryManagerTest {
@@ -87,6 +102,176 @@ public class LibraryManagerTest {
 
     }
 
+    @Test
+    public void shouldFindBooksByYearAndAfterAuthorIsReadded() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        String id = library.addNewBook("Title 1", "Author 1", 2000);
+        library.addNewBook("Title 2", "Author 2", 2000);
+        library.addNewBook("Title 2", "Author 2", 2000);
+        library.addNewBook("Title 3", "Author 2", null);
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setYear(2000);
+        Assert.assertEquals(3, library.getBookListByCriteria(criteria).size());
+
+        library.removeBook(id);
+        Assert.assertEquals(2, library.getBookListByCriteria(criteria).size());
+
+        criteria = new SearchCriteria();
+        criteria.setAuthor("Author 1");
+        Assert.assertTrue(library.getBookListByCriteria(criteria).isEmpty());
+
+        library.addNewBook("Title 1", "Author 1", 2000);
+        Assert.assertEquals(Collections.singletonList(new BookDetails("Title 1", "Author 1", 2000)),
+                library.getBookListByCriteria(criteria));
+
+        criteria = new SearchCriteria();
+        criteria.setTitle("Title 3");
+        Assert.assertEquals(new BookDetails("Title 3", "Author 2", null), library.getBookListByCriteria(criteria).get(0));
+    }
+
+    @Test
+    public void shouldGetBookByPartOfTitleAndAuthor() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        library.addNewBook("Dżuma", "Albert Camus", 1947);
+        library.addNewBook("Obcy", "Albert Camus", 1942);
+        library.addNewBook("Solaris", "Stanisław Lem", 1961);
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("dzuma", MatchMode.TOKENS);
+        Assert.assertEquals(Collections.singletonList(new BookDetails("Dżuma", "Albert Camus", 1947)),
+                library.getBookListByCriteria(criteria));
+
+        criteria = new SearchCriteria();
+        criteria.setAuthor("camus", MatchMode.PREFIX);
+        Assert.assertEquals(2, library.getBookListByCriteria(criteria).size());
+
+        criteria.setTitle("ob", MatchMode.PREFIX);
+        Assert.assertEquals(new BookDetails("Obcy", "Albert Camus", 1942), library.lendBook(criteria, "Jan Kowalski"));
+
+        criteria = new SearchCriteria();
+        criteria.setAuthor("stanislaw lem", MatchMode.IGNORE_CASE);
+        Assert.assertEquals(1, library.getBookListByCriteria(criteria).size());
+    }
+
+    @Test
+    public void shouldPageThroughBooksByCriteria() {
+        LibraryManager library = new LibraryManager();
+        for (int i = 0; i < 10; i++) {
+            library.addNewBook("Title " + i, "Author 1", 2000);
+            library.addNewBook("Title " + i, "Author 1", 2000);
+        }
+        library.addNewBook("Title 10", "Author 2", 2000);
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setAuthor("Author 1");
+        PageRequest pageRequest = new PageRequest(3);
+        List<BookDetails> allPages = new ArrayList<>();
+        Page<BookDetails> page;
+        do {
+            page = library.getBookPageByCriteria(criteria, pageRequest);
+            Assert.assertTrue(page.getItems().size() <= 3);
+            allPages.addAll(page.getItems());
+            pageRequest.setCursor(page.getNextCursor());
+        } while (page.hasNext());
+        Assert.assertEquals(library.getBookListByCriteria(criteria), allPages);
+
+        pageRequest = new PageRequest(5);
+        pageRequest.setDistinct(true);
+        page = library.getBookPageByCriteria(criteria, pageRequest);
+        Assert.assertEquals(5, page.getItems().stream().distinct().count());
+        pageRequest.setCursor(page.getNextCursor());
+        page = library.getBookPageByCriteria(criteria, pageRequest);
+        Assert.assertEquals(5, page.getItems().size());
+        Assert.assertFalse(page.hasNext());
+
+        Assert.assertEquals(10, library.streamBookDetailsByCriteria(criteria).count());
+        Assert.assertEquals(11, library.streamAllBookDetails().count());
+    }
+
+    @Test
+    public void shouldCountAvailableAndLentCopies() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        String book1Id = library.addNewBook("Title 1", "Author 1", 2000);
+        String book2Id = library.addNewBook("Title 1", "Author 1", 2000);
+        library.addNewBook("Title 1", "Author 1", 2000);
+        String book4Id = library.addNewBook("Title 2", "Author 2", 2001);
+
+        library.lendBook(book1Id, "Jan Kowalski");
+        library.removeBook(book2Id);
+        library.lendBook(book4Id, "Anna Kowalska");
+
+        List<BookInventory> inventory = library.getInventory();
+        Assert.assertEquals(2, inventory.size());
+        Assert.assertEquals(new BookDetails("Title 1", "Author 1", 2000), inventory.get(0).getBookDetails());
+        Assert.assertEquals(1, inventory.get(0).getAvailableCount());
+        Assert.assertEquals(1, inventory.get(0).getLentCount());
+        Assert.assertEquals(0, inventory.get(1).getAvailableCount());
+        Assert.assertEquals(1, inventory.get(1).getLentCount());
+
+        library.returnBook(book4Id);
+        Assert.assertEquals(1, library.getInventory().get(1).getAvailableCount());
+    }
+
+    @Test
+    public void shouldGetAvailableBooksOfAuthorFromYearRange() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        String lentId = library.addNewBook("Title 1", "Author 1", 1995);
+        library.addNewBook("Title 2", "Author 1", 1989);
+        library.addNewBook("Title 3", "Author 1", 2005);
+        library.addNewBook("Title 3", "Author 1", 2005);
+        library.addNewBook("Title 4", "Author 2", 2000);
+        library.lendBook(lentId, "Jan Kowalski");
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setAuthor("Author 1");
+        criteria.setYearRange(1990, 2005);
+        Assert.assertEquals(3, library.getBookListByCriteria(criteria).size());
+
+        criteria.setAvailableOnly(true);
+        Assert.assertEquals(Arrays.asList(new BookDetails("Title 3", "Author 1", 2005), new BookDetails("Title 3", "Author 1", 2005)),
+                library.getBookListByCriteria(criteria));
+
+        criteria = new SearchCriteria();
+        criteria.setYearRange(null, 1995);
+        Assert.assertEquals(new BookDetails("Title 2", "Author 1", 1989), library.lendBook(criteria, "Anna Kowalska"));
+        try {
+            library.lendBook(criteria, "Adam Nowak");
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+            Assert.assertEquals("All books are currently lent", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldInvalidateCachedResultsWhenBooksChange() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        library.enableResultCache(1000);
+        String id = library.addNewBook("Title 1", "Author 1", 2000);
+
+        SearchCriteria all = new SearchCriteria();
+        all.setAuthor("Author 1");
+        SearchCriteria available = new SearchCriteria();
+        available.setAuthor("Author 1");
+        available.setAvailableOnly(true);
+
+        Assert.assertEquals(1, library.getBookListByCriteria(all).size());
+        Assert.assertEquals(1, library.getBookListByCriteria(available).size());
+        Assert.assertEquals(1, library.getBookListByCriteria(all).size());
+        Assert.assertEquals(1, library.getResultCacheStats().getHitCount());
+
+        library.lendBook(id, "Jan Kowalski");
+        Assert.assertEquals(1, library.getBookListByCriteria(all).size());
+        Assert.assertEquals(0, library.getBookListByCriteria(available).size());
+        Assert.assertEquals(2, library.getResultCacheStats().getHitCount());
+
+        library.addNewBook("Title 2", "Author 1", 2001);
+        Assert.assertEquals(2, library.getBookListByCriteria(all).size());
+        Assert.assertEquals(1, library.getBookListByCriteria(available).size());
+        Assert.assertEquals(2, library.getResultCacheStats().getHitCount());
+        Assert.assertEquals(5, library.getResultCacheStats().getMissCount());
+    }
+
     @Test
     public void shouldListedCorrectListOfBooksInLibrary() throws BookNotExistException, BookAlreadyLentException {
 
@@ -105,4 +290,138 @@ public class LibraryManagerTest {
 
     }
 
+    @Test
+    public void shouldReuseBookDetailsForTheSameBook() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        library.addNewBook("Title 1", "Author 1", 2000);
+        library.addNewBook("Title 1", "Author 1", 2000);
+        library.addNewBook("Title 1", "Author 1", 2001);
+
+        Assert.assertEquals(2, library.getAllBookDetails().size());
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Title 1");
+        criteria.setYear(2001);
+        Assert.assertEquals(new BookDetails("Title 1", "Author 1", 2001), library.lendBook(criteria, "Jan Kowalski"));
+    }
+
+    @Test
+    public void shouldLendEveryCopyByCriteriaBeforeReportingAllLent() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        String book1Id = library.addNewBook("Title 1", "Author 1", 2000);
+        String book2Id = library.addNewBook("Title 1", "Author 1", 2000);
+
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Title 1");
+        library.lendBook(criteria, "Jan Kowalski");
+        library.lendBook(criteria, "Anna Kowalska");
+
+        Assert.assertTrue(library.checkIfBookIsLent(book1Id));
+        Assert.assertTrue(library.checkIfBookIsLent(book2Id));
+        try {
+            library.lendBook(criteria, "Adam Nowak");
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+            Assert.assertEquals("All books are currently lent", e.getMessage());
+        }
+    }
+
+    @Test
+    public void shouldKeepBookDetailsUntilLastCopyIsRemoved() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        String book1Id = library.addNewBook("Title 1", "Author 1", 2000);
+        String book2Id = library.addNewBook("Title 1", "Author 1", 2000);
+
+        library.removeBook(book1Id);
+        Assert.assertEquals(1, library.getAllBookDetails().size());
+
+        library.removeBook(book2Id);
+        Assert.assertTrue(library.getAllBookDetails().isEmpty());
+    }
+
+    @Test
+    public void shouldImportBooksFromStream() throws BookNotExistException, BookAlreadyLentException {
+        LibraryManager library = new LibraryManager();
+        library.addNewBook("Title 1", "Author 1", 2000);
+
+        long imported = library.importBooks(IntStream.range(0, 200_000)
+                .mapToObj(i -> new BookDetails("Title " + (i % 3), "Author 1", 2000)));
+
+        Assert.assertEquals(200_000, imported);
+        Assert.assertEquals(3, library.getAllBookDetails().size());
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Title 1");
+        Assert.assertEquals(66_668, library.getBookListByCriteria(criteria).size());
+        Assert.assertEquals(new BookDetails("Title 1", "Author 1", 2000), library.lendBook(criteria, "Jan Kowalski"));
+    }
+
+    @Test
+    public void shouldImportBooksFromCsvFile() throws IOException {
+        Path file = Files.createTempFile("books", ".csv");
+        try {
+            Files.write(file, Arrays.asList(
+                    "title,author,year",
+                    "Hamlet,William Shakespeare,2002",
+                    "\"Zbrodnia i kara\",Fiodor Dostojewski,2002",
+                    "\"Lalka, tom 1\",Boles\u0142aw Prus,1990",
+                    "Hamlet,William Shakespeare,2002",
+                    "Pan Tadeusz,Adam Mickiewicz, "), StandardCharsets.UTF_8);
+
+            LibraryManager library = new LibraryManager();
+            Assert.assertEquals(5, library.importBooks(file));
+            Assert.assertEquals(4, library.getAllBookDetails().size());
+            Assert.assertTrue(library.getAllBookDetails().contains(new BookDetails("Pan Tadeusz", "Adam Mickiewicz", null)));
+            Assert.assertTrue(library.getAllBookDetails().contains(new BookDetails("Lalka, tom 1", "Boles\u0142aw Prus", 1990)));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void shouldTellWhyBookWasNotLentWithoutThrowing() {
+        LibraryManager library = new LibraryManager();
+        String id = library.addNewBook("Title 1", "Author 1", 2000);
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Title 1");
+
+        LendResult lent = library.tryLendBook(criteria, "Jan Kowalski");
+        Assert.assertTrue(lent.isLent());
+        Assert.assertEquals(id, lent.getBookId());
+        Assert.assertEquals(new BookDetails("Title 1", "Author 1", 2000), lent.getBookDetails());
+        Assert.assertEquals(LendResult.Status.ALL_LENT, library.tryLendBook(criteria, "Adam Nowak").getStatus());
+        Assert.assertEquals(LendResult.Status.ALL_LENT, library.tryLendBook(id, "Adam Nowak").getStatus());
+        Assert.assertEquals(LendResult.Status.NOT_FOUND, library.tryLendBook("123456789", "Adam Nowak").getStatus());
+
+        Assert.assertTrue(library.returnBook(id));
+        Assert.assertFalse(library.returnBook(id));
+        Assert.assertTrue(library.tryLendBook(id, "Adam Nowak").isLent());
+    }
+
+    @Test
+    public void shouldLendReturnedBookToReservationsInOrder() throws Exception {
+        LibraryManager library = new LibraryManager();
+        String id = library.addNewBook("Title 1", "Author 1", 2000);
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Title 1");
+        library.lendBook(id, "Jan Kowalski");
+
+        CompletableFuture<LendResult> cancelled = library.reserveBook(criteria, "Adam Nowak");
+        CompletableFuture<LendResult> first = library.reserveBook(criteria, "Anna Nowak");
+        CompletableFuture<LendResult> second = library.reserveBook(criteria, "Ewa Nowak");
+        Assert.assertFalse(first.isDone());
+        cancelled.cancel(false);
+
+        Assert.assertTrue(library.returnBook(id));
+        Assert.assertEquals(id, first.get(1, TimeUnit.SECONDS).getBookId());
+        Assert.assertTrue(library.checkIfBookIsLent(id));
+        Assert.assertEquals(LendResult.Status.ALL_LENT, library.tryLendBook(criteria, "Jan Kowalski").getStatus());
+        Assert.assertFalse(second.isDone());
+
+        library.returnBook(id);
+        Assert.assertTrue(second.get(1, TimeUnit.SECONDS).isLent());
+        SearchCriteria missing = new SearchCriteria();
+        missing.setTitle("Title 2");
+        Assert.assertEquals(LendResult.Status.NOT_FOUND, library.reserveBook(missing, "Jan Kowalski").get().getStatus());
+    }
+
 }
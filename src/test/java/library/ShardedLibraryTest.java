@@ -0,0 +1,135 @@
+package library;
+
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.model.LendResult;
+import library.remote.LibraryServer;
+import library.remote.RemoteLibrary;
+import library.search.MatchMode;
+import library.search.Page;
+import library.search.PageRequest;
+import library.search.SearchCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+
+public class ShardedLibraryTest {
+
+    @Test
+    public void shouldRouteByIdAndGatherFromAllShards() throws Exception {
+        try (ShardedLibrary library = ShardedLibrary.inProcess(4)) {
+            assertLibrary(library);
+        }
+    }
+
+    @Test
+    public void shouldWorkWithShardsInOtherProcesses() throws Exception {
+        try (LibraryServer first = new LibraryServer(new LibraryManager(), 0);
+             LibraryServer second = new LibraryServer(new LibraryManager(), 0);
+             ShardedLibrary library = new ShardedLibrary(Arrays.asList(
+                     new RemoteLibrary(first.getPort()), new RemoteLibrary(second.getPort())))) {
+            assertLibrary(library);
+        }
+    }
+
+    @Test
+    public void shouldSendCachedResultsAndErrorsToRemoteLibrary() throws Exception {
+        LibraryManager manager = new LibraryManager();
+        manager.enableResultCache(10);
+        try (LibraryServer server = new LibraryServer(manager, 0);
+             RemoteLibrary library = new RemoteLibrary(server.getPort())) {
+            library.addNewBook("Hamlet", "William Shakespeare", 2002);
+            SearchCriteria criteria = new SearchCriteria();
+            criteria.setTitle("Hamlet");
+            library.getBookListByCriteria(criteria);
+
+            // the second search is served from the cache, as an unmodifiable list
+            Assert.assertEquals(1, library.getBookListByCriteria(criteria).size());
+            PageRequest request = new PageRequest(10);
+            request.setCursor("x");
+            try {
+                library.getBookPageByCriteria(criteria, request);
+                Assert.fail();
+            } catch (IllegalArgumentException e) {
+                Assert.assertEquals("Invalid cursor x", e.getMessage());
+            }
+        }
+    }
+
+    private static void assertLibrary(ShardedLibrary library) throws Exception {
+        library.importBooks(IntStream.range(0, 200).mapToObj(i -> new BookDetails("Title " + (i % 20), "Author", 2000 + i % 20)));
+        String hamletId = library.addNewBook("Hamlet", "William Shakespeare", 2002);
+
+        Assert.assertEquals(new BookDetails("Hamlet", "William Shakespeare", 2002), library.getBookById(hamletId));
+        Assert.assertEquals("Hamlet", library.lendBook(hamletId, "Jan Kowalski").getTitle());
+        try {
+            library.removeBook(hamletId);
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+        }
+        SearchCriteria hamlet = new SearchCriteria();
+        hamlet.setTitle("Hamlet");
+        try {
+            library.lendBook(hamlet, "Anna Nowak");
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+        }
+        try {
+            library.getBookById("999999");
+            Assert.fail();
+        } catch (BookNotExistException e) {
+        }
+
+        Assert.assertEquals(21, library.getAllBookDetails().size());
+        Assert.assertEquals(21, library.getInventory().size());
+        SearchCriteria byAuthor = new SearchCriteria();
+        byAuthor.setAuthor("Author");
+        Assert.assertEquals(200, library.getBookListByCriteria(byAuthor).size());
+        SearchCriteria byTitle = new SearchCriteria();
+        byTitle.setTitle("title 1", MatchMode.IGNORE_CASE);
+        Assert.assertEquals(10, library.streamBookListByCriteria(byTitle).count());
+
+        List<BookDetails> paged = new ArrayList<>();
+        PageRequest request = new PageRequest(7);
+        request.setDistinct(true);
+        Page<BookDetails> page;
+        do {
+            page = library.getBookPageByCriteria(byAuthor, request);
+            paged.addAll(page.getItems());
+            request.setCursor(page.getNextCursor());
+        } while (page.hasNext());
+        Assert.assertEquals(20, paged.size());
+        Assert.assertEquals(20, new HashSet<>(paged).size());
+
+        Set<String> lent = new HashSet<>();
+        SearchCriteria title3 = new SearchCriteria();
+        title3.setTitle("Title 3");
+        for (int i = 0; i < 10; i++) {
+            lent.add(library.lendBook(title3, "Reader " + i).getTitle());
+        }
+        Assert.assertEquals(1, lent.size());
+        try {
+            library.lendBook(title3, "Reader");
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+        }
+
+        CompletableFuture<LendResult> cancelled = library.reserveBook(hamlet, "Adam Nowak");
+        CompletableFuture<LendResult> reserved = library.reserveBook(hamlet, "Anna Nowak");
+        cancelled.cancel(false);
+        Assert.assertFalse(reserved.isDone());
+        Assert.assertTrue(library.returnBook(hamletId));
+        Assert.assertEquals(hamletId, reserved.get(10, TimeUnit.SECONDS).getBookId());
+        Assert.assertEquals(LendResult.Status.ALL_LENT, library.tryLendBook(hamlet, "Jan Kowalski").getStatus());
+    }
+}
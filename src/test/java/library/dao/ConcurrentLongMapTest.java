@@ -0,0 +1,79 @@
+package library.dao;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+public class ConcurrentLongMapTest {
+
+    @Test
+    public void shouldNeverReadValueOfAnotherKeyWhileWritersResize() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>();
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<String> error = new AtomicReference<>();
+        List<Thread> threads = new ArrayList<>();
+        int writers = 4;
+        for(int w = 0; w < writers; w++){
+            long first = w;
+            threads.add(new Thread(() -> {
+                // every writer owns the keys with its remainder, tables grow and shrink while readers probe them
+                for(int round = 0; round < 20; round++){
+                    for(long key = first + 1; key <= 20_000; key += writers){
+                        map.put(key, key);
+                    }
+                    for(long key = first + 1; key <= 20_000; key += writers){
+                        if(key % 10 != 0){
+                            map.remove(key);
+                        }
+                    }
+                }
+            }));
+        }
+        for(int r = 0; r < 4; r++){
+            threads.add(new Thread(() -> {
+                while(running.get()){
+                    for(long key = 1; key <= 20_000; key++){
+                        Long value = map.get(key);
+                        if(value != null && value != key){
+                            error.compareAndSet(null, "Key " + key + " read value " + value);
+                        }
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for(Thread thread : threads.subList(0, writers)){
+            thread.join();
+        }
+        running.set(false);
+        for(Thread thread : threads){
+            thread.join();
+        }
+
+        Assert.assertNull(error.get());
+        Assert.assertEquals(2000, map.size());
+        for(long key = 1; key <= 20_000; key++){
+            Assert.assertEquals(key % 10 == 0 ? Long.valueOf(key) : null, map.get(key));
+        }
+    }
+
+    @Test
+    public void shouldComputeAndRemoveOnlyMatchingValue(){
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        Assert.assertEquals("a", map.computeIfAbsent(1, key -> "a"));
+        Assert.assertEquals("a", map.computeIfAbsent(1, key -> "b"));
+        String computed = map.compute(1, (key, value) -> value + key);
+        Assert.assertEquals("a1", computed);
+        Assert.assertNull(map.compute(2, (key, value) -> null));
+        Assert.assertFalse(map.remove(1, "a"));
+        Assert.assertTrue(map.remove(1, computed));
+        Assert.assertNull(map.get(1));
+        Assert.assertNull(map.get(0));
+        Assert.assertEquals(0, map.size());
+    }
+}
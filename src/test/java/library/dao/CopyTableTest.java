@@ -0,0 +1,66 @@
+package library.dao;
+
+import library.model.BookDistributor;
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class CopyTableTest {
+
+    @Test
+    public void shouldPackStateAndLenderUpToMaxLenderCode(){
+        for(int state : new int[]{CopyTable.NO_COPY, CopyTable.AVAILABLE, CopyTable.LENT, CopyTable.REMOVED}){
+            for(int lender : new int[]{0, 1, CopyTable.MAX_LENDER_CODE - 1, CopyTable.MAX_LENDER_CODE}){
+                int word = CopyTable.pack(state, lender);
+                Assert.assertEquals(state, CopyTable.stateOf(word));
+                Assert.assertEquals(lender, CopyTable.lenderOf(word));
+            }
+        }
+        // a lent copy is never mistaken for a missing one, whatever the lender
+        Assert.assertNotEquals(CopyTable.NO_COPY, CopyTable.pack(CopyTable.LENT, CopyTable.MAX_LENDER_CODE));
+        Assert.assertTrue(CopyTable.pack(CopyTable.REMOVED, CopyTable.MAX_LENDER_CODE) > 0);
+    }
+
+    @Test
+    public void shouldChangeRowsOnlyFromExpectedWord(){
+        CopyTable table = new CopyTable();
+        long id = 1 << 14;
+        table.add(id, 7, CopyTable.AVAILABLE);
+        int lent = CopyTable.pack(CopyTable.LENT, CopyTable.MAX_LENDER_CODE);
+
+        Assert.assertFalse(table.compareAndSet(id, lent, CopyTable.AVAILABLE));
+        Assert.assertTrue(table.compareAndSet(id, CopyTable.AVAILABLE, lent));
+        Assert.assertEquals(lent, table.get(id));
+        Assert.assertEquals(7, table.getBookDetailsId(id));
+        Assert.assertFalse(table.compareAndSet(id, CopyTable.AVAILABLE, lent));
+
+        Assert.assertEquals(CopyTable.NO_COPY, table.get(id + 1));
+        Assert.assertEquals(CopyTable.NO_COPY, table.get(id << 4));
+        Assert.assertFalse(table.compareAndSet(id << 4, CopyTable.NO_COPY, CopyTable.AVAILABLE));
+        Assert.assertEquals(1, table.ids().count());
+    }
+
+    @Test
+    public void shouldLendReturnAndRemoveOnlyFromTheRightState(){
+        BookDistributorDAO dao = new BookDistributorDAO();
+        long id = dao.addBookDistributor(new BookDistributor(1));
+
+        Assert.assertFalse(dao.tryReturnBook(id));
+        Assert.assertTrue(dao.tryLendBook(id, "Jan Kowalski"));
+        Assert.assertFalse(dao.tryLendBook(id, "Anna Nowak"));
+        Assert.assertFalse(dao.tryRemoveBook(id));
+        Assert.assertEquals("Jan Kowalski", dao.getBookDistributor(id).getLastLenderName());
+
+        Assert.assertTrue(dao.tryReturnBook(id));
+        Assert.assertFalse(dao.tryReturnBook(id));
+        Assert.assertFalse(dao.checkIfBookIsLent(id));
+        // the last lender is kept when the copy is returned
+        Assert.assertEquals("Jan Kowalski", dao.getBookDistributor(id).getLastLenderName());
+
+        Assert.assertTrue(dao.tryRemoveBook(id));
+        Assert.assertFalse(dao.tryLendBook(id, "Anna Nowak"));
+        Assert.assertFalse(dao.tryReturnBook(id));
+        Assert.assertFalse(dao.tryRemoveBook(id));
+        Assert.assertNull(dao.getBookDistributor(id));
+    }
+}
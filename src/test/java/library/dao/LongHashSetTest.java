@@ -0,0 +1,76 @@
+package library.dao;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+
+public class LongHashSetTest {
+
+    @Test
+    public void shouldKeepClustersFindableWhenRemovingFromThem(){
+        // few values in small tables, so clusters are long and often wrap around the end of the table
+        Random random = new Random(42);
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for(int i = 0; i < 200_000; i++){
+            long value = 1 + random.nextInt(40);
+            if(random.nextBoolean()){
+                Assert.assertEquals(expected.add(value), set.add(value));
+            }
+            else {
+                Assert.assertEquals(expected.remove(value), set.remove(value));
+            }
+            Assert.assertEquals(expected.size(), set.size());
+            if(i % 100 == 0){
+                for(long v = 1; v <= 40; v++){
+                    Assert.assertEquals(expected.contains(v), set.contains(v));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void shouldFindRemainingValuesAfterShrinking(){
+        LongHashSet set = new LongHashSet();
+        for(long value = 1; value <= 10_000; value++){
+            set.add(value);
+        }
+        for(long value = 1; value <= 10_000; value++){
+            if(value % 1000 != 0){
+                Assert.assertTrue(set.remove(value));
+            }
+        }
+
+        Assert.assertEquals(10, set.size());
+        for(long value = 1; value <= 10_000; value++){
+            Assert.assertEquals(value % 1000 == 0, set.contains(value));
+        }
+        Assert.assertArrayEquals(new long[]{1000, 2000, 3000, 4000, 5000, 6000, 7000, 8000, 9000, 10_000},
+                Arrays.stream(set.toArray()).sorted().toArray());
+    }
+
+    @Test
+    public void shouldGiveEveryValueFromAnyWhileRemoving(){
+        LongHashSet set = new LongHashSet();
+        Assert.assertEquals(0, set.any());
+        for(long value = 1; value <= 1000; value++){
+            set.add(value * 31);
+        }
+        Set<Long> seen = new HashSet<>();
+        for(long value = set.any(); value != 0; value = set.any()){
+            Assert.assertTrue(seen.add(value));
+            Assert.assertTrue(set.remove(value));
+        }
+        Assert.assertEquals(1000, seen.size());
+        Assert.assertTrue(set.isEmpty());
+
+        set.add(7);
+        Assert.assertEquals(7, set.any());
+        Assert.assertEquals(7, set.any());
+    }
+}
@@ -0,0 +1,76 @@
+package library.dao;
+
+import library.LibraryManager;
+import library.exception.BookAlreadyLentException;
+import library.model.BookDetails;
+import library.model.BookInventory;
+import library.search.SearchCriteria;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+public class MappedSnapshotTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldOpenLibraryFromSnapshot() throws Exception {
+        Path file = folder.getRoot().toPath().resolve("library.snapshot");
+        LibraryManager library = new LibraryManager();
+        library.importBooks(IntStream.range(0, 100).mapToObj(i -> new BookDetails("Title " + (i % 10), "Author", 2000)));
+        String lentId = library.addNewBook("Hamlet", "William Shakespeare", 2002);
+        String availableId = library.addNewBook("Hamlet", "William Shakespeare", 2002);
+        String removedId = library.addNewBook("Dżuma", "Albert Camus", null);
+        library.addNewBook("Odyseja", "Homer", null);
+        library.lendBook(lentId, "Jan Kowalski");
+        library.removeBook(removedId);
+        library.writeSnapshot(file);
+
+        LibraryManager opened = LibraryManager.openSnapshot(file);
+        Assert.assertEquals(new HashSet<>(library.getAllBookDetails()), new HashSet<>(opened.getAllBookDetails()));
+        Assert.assertEquals(counts(library), counts(opened));
+        Assert.assertEquals(new BookDetails("Hamlet", "William Shakespeare", 2002), opened.getBookById(availableId));
+        try {
+            opened.lendBook(lentId, "Adam Nowak");
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+            // the state of the copy is read from the snapshot
+        }
+
+        SearchCriteria hamlet = new SearchCriteria();
+        hamlet.setTitle("Hamlet");
+        hamlet.setAvailableOnly(true);
+        Assert.assertEquals(1, opened.getBookListByCriteria(hamlet).size());
+        opened.lendBook(hamlet, "Adam Nowak");
+        Assert.assertTrue(opened.getBookListByCriteria(hamlet).isEmpty());
+
+        String addedId = opened.addNewBook("Hamlet", "William Shakespeare", 2002);
+        Assert.assertTrue(IdGenerator.parse(addedId) > IdGenerator.parse(removedId));
+        Assert.assertEquals(3, opened.getInventory().stream()
+                .filter(i -> i.getBookDetails().getTitle().equals("Hamlet"))
+                .mapToInt(i -> i.getAvailableCount() + i.getLentCount()).sum());
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectFileThatIsNotSnapshot() throws Exception {
+        Path file = folder.newFile().toPath();
+        Files.write(file, "title;author;year".getBytes());
+        LibraryManager.openSnapshot(file);
+    }
+
+    private static Map<BookDetails, String> counts(LibraryManager library) {
+        return library.getInventory().stream()
+                .collect(Collectors.toMap(BookInventory::getBookDetails, i -> i.getAvailableCount() + "/" + i.getLentCount()));
+    }
+}
@@ -0,0 +1,58 @@
+package library.dao;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class StringDictionaryTest {
+
+    @Test
+    public void shouldDropStringWhenLastUserReleasesIt(){
+        StringDictionary dictionary = new StringDictionary();
+        int code = dictionary.retain("William Shakespeare");
+        Assert.assertEquals(code, dictionary.retain("William Shakespeare"));
+        Assert.assertEquals(StringDictionary.NULL_CODE, dictionary.retain(null));
+
+        dictionary.release(code);
+        Assert.assertEquals("William Shakespeare", dictionary.valueOf(code));
+        Assert.assertEquals(code, dictionary.codeOf("William Shakespeare"));
+
+        dictionary.release(code);
+        Assert.assertNull(dictionary.valueOf(code));
+        Assert.assertEquals(StringDictionary.NO_CODE, dictionary.codeOf("William Shakespeare"));
+        Assert.assertEquals(0, dictionary.size());
+        // releasing a dropped code again changes nothing
+        dictionary.release(code);
+        Assert.assertEquals(0, dictionary.size());
+    }
+
+    @Test
+    public void shouldNotReuseReleasedCodes(){
+        StringDictionary dictionary = new StringDictionary();
+        int released = dictionary.retain("Homer");
+        dictionary.release(released);
+
+        int again = dictionary.retain("Homer");
+        int other = dictionary.retain("Albert Camus");
+
+        Assert.assertNotEquals(released, again);
+        Assert.assertNotEquals(released, other);
+        Assert.assertNull(dictionary.valueOf(released));
+        Assert.assertEquals("Homer", dictionary.valueOf(again));
+        Assert.assertEquals("Albert Camus", dictionary.valueOf(other));
+    }
+
+    @Test
+    public void shouldKeepCodesOfManyPages(){
+        StringDictionary dictionary = new StringDictionary();
+        int[] codes = new int[10_000];
+        for(int i = 0; i < codes.length; i++){
+            codes[i] = dictionary.intern("Author " + i);
+        }
+        for(int i = 0; i < codes.length; i++){
+            Assert.assertEquals("Author " + i, dictionary.valueOf(codes[i]));
+            Assert.assertEquals(codes[i], dictionary.intern("Author " + i));
+        }
+        Assert.assertEquals(codes.length, dictionary.size());
+    }
+}
@@ -0,0 +1,89 @@
+package library.event;
+
+import library.AsyncLibrary;
+import library.LibraryManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+
+public class EventStreamTest {
+
+    @Test
+    public void shouldDeliverEveryEventInOrderToSlowAndFastConsumers() throws Exception {
+        EventStream stream = new EventStream(5, WaitStrategy.blocking());
+        Assert.assertEquals(8, stream.getBufferSize());
+        int count = 10_000;
+        int publishers = 4;
+        List<long[]> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        for (int consumer = 0; consumer < 2; consumer++) {
+            boolean slow = consumer == 1;
+            long[] lastPerPublisher = new long[publishers];
+            long[] total = new long[1];
+            Arrays.fill(lastPerPublisher, -1);
+            received.add(total);
+            stream.subscribe("consumer-" + consumer, (event, endOfBatch) -> {
+                int publisher = event.getPerson().charAt(0) - '0';
+                // events of one publisher arrive in the order they were published
+                Assert.assertTrue(event.getBookId() > lastPerPublisher[publisher]);
+                lastPerPublisher[publisher] = event.getBookId();
+                if (slow && event.getBookId() % 1000 == 0) {
+                    Thread.yield();
+                }
+                if (++total[0] == (long) count * publishers) {
+                    done.countDown();
+                }
+            });
+        }
+        IntStream.range(0, publishers).parallel().forEach(publisher -> {
+            for (long i = 0; i < count; i++) {
+                stream.publish(LibraryEvent.Type.BOOK_LENT, i, null, String.valueOf(publisher));
+            }
+        });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals((long) count * publishers, received.get(0)[0]);
+        Assert.assertEquals((long) count * publishers, received.get(1)[0]);
+    }
+
+    @Test
+    public void shouldPublishChangesOfLibrary() throws Exception {
+        LibraryManager library = new LibraryManager();
+        EventStream stream = library.enableEvents(1024, WaitStrategy.yielding());
+        List<String> events = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        try (EventStream.Subscription subscription = stream.subscribe("test-consumer", (event, endOfBatch) -> {
+            events.add(event.getType() + " " + event.getBookDetails().getTitle()
+                    + (event.getPerson() == null ? "" : " " + event.getPerson()));
+            if (event.getType() == LibraryEvent.Type.TITLE_REMOVED) {
+                done.countDown();
+            }
+        })) {
+            String id = library.addNewBook("Hamlet", "William Shakespeare", 2002);
+            library.lendBook(id, "Jan Kowalski");
+            try (AsyncLibrary asyncLibrary = new AsyncLibrary(library)) {
+                Assert.assertTrue(asyncLibrary.returnBook(id).get());
+            }
+            library.removeBook(id);
+            Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+            // the consumer moves its sequence after the handler of the batch returns
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (subscription.getBacklog() > 0 && System.nanoTime() < deadline) {
+                Thread.yield();
+            }
+            Assert.assertEquals(0, subscription.getBacklog());
+        }
+        Assert.assertEquals(Arrays.asList(
+                "BOOK_ADDED Hamlet",
+                "BOOK_LENT Hamlet Jan Kowalski",
+                "BOOK_RETURNED Hamlet Jan Kowalski",
+                "BOOK_REMOVED Hamlet",
+                "TITLE_REMOVED Hamlet"), events);
+    }
+}
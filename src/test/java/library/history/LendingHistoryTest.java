@@ -0,0 +1,100 @@
+package library.history;
+
+import library.LibraryManager;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+
+public class LendingHistoryTest {
+
+    @Test
+    public void shouldRecordLoansOfLibrary() throws Exception {
+        AtomicLong clock = new AtomicLong(1_000);
+        LendingHistory history = new LendingHistory(16, 4, clock::get);
+        LibraryManager library = new LibraryManager();
+        library.addChangeListener(history);
+        String id = library.addNewBook("Hamlet", "William Shakespeare", 2002);
+
+        library.lendBook(id, "Jan Kowalski");
+        clock.set(5_000);
+        library.returnBook(id);
+        clock.set(9_000);
+        library.lendBook(id, "Adam Nowak");
+
+        List<Loan> loans = history.getHistoryOfCopy(id);
+        Assert.assertEquals(2, loans.size());
+        Assert.assertEquals(new Loan(id, "Jan Kowalski", 1_000, 5_000), loans.get(0));
+        Assert.assertEquals(new Loan(id, "Adam Nowak", 9_000, Loan.NOT_RETURNED), loans.get(1));
+        Assert.assertEquals(1, history.getLoansOfPatron("Jan Kowalski", 0, 2_000).size());
+        Assert.assertTrue(history.getLoansOfPatron("Jan Kowalski", 2_000, 10_000).isEmpty());
+        Assert.assertTrue(history.getLoansOfPatron("Ewa Nowak", 0, 10_000).isEmpty());
+    }
+
+    @Test
+    public void shouldFindLoansInSealedSegmentsAndDropOldest() {
+        LendingHistory history = new LendingHistory(100, 3, () -> 0);
+        String[] patrons = {"Jan", "Adam", "Ewa", "Anna", "Piotr", "Maria", "Tomasz"};
+        List<Loan> all = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long bookId = 1 + i % 10;
+            String patron = patrons[i % patrons.length];
+            long lentAt = 1_000_000L + i * 1_000L;
+            long returnedAt = lentAt + (i % 13) * 86_400_000L;
+            history.lent(bookId, patron, lentAt);
+            history.returned(bookId, returnedAt);
+            all.add(new Loan(Long.toString(bookId), patron, lentAt, returnedAt));
+        }
+        // 10 full segments were sealed, the newest 3 are kept
+        List<Loan> kept = all.subList(700, 1000);
+
+        Assert.assertEquals(kept.stream().filter(l -> l.getBookId().equals("3")).collect(Collectors.toList()),
+                history.getHistoryOfCopy("3"));
+        long from = 1_000_000L + 800 * 1_000L;
+        long to = 1_000_000L + 900 * 1_000L;
+        Assert.assertEquals(kept.stream()
+                        .filter(l -> l.getPatron().equals("Ewa") && l.getLentAt() >= from && l.getLentAt() < to)
+                        .collect(Collectors.toList()),
+                history.getLoansOfPatron("Ewa", from, to));
+        Assert.assertEquals(300, history.getLoans(0, Long.MAX_VALUE).size());
+    }
+
+    @Test
+    public void shouldDropPatronsOfDroppedSegments() {
+        LendingHistory history = new LendingHistory(10, 2, 4, () -> 0);
+        for (int i = 0; i < 10_000; i++) {
+            history.lent(1 + i % 100, "Patron " + i, i);
+            history.returned(1 + i % 100, i + 1);
+        }
+        history.lent(1, "Jan Kowalski", 20_000);
+
+        // kept: 2 sealed segments and the 4 active ones, and the open loan
+        Assert.assertTrue(history.getPatronCount() <= 2 * 10 + 4 * 10 + 1);
+        Assert.assertEquals(Collections.singletonList(new Loan("1", "Jan Kowalski", 20_000, Loan.NOT_RETURNED)),
+                history.getLoansOfPatron("Jan Kowalski", 0, Long.MAX_VALUE));
+        List<Loan> last = history.getHistoryOfCopy("100");
+        Assert.assertEquals("Patron 9999", last.get(last.size() - 1).getPatron());
+    }
+
+    @Test
+    public void shouldRecordLoansOfDifferentCopiesConcurrently() {
+        LendingHistory history = new LendingHistory(64, 1_000, 8, () -> 0);
+        IntStream.range(0, 8).parallel().forEach(thread -> {
+            for (int i = 0; i < 1_000; i++) {
+                long bookId = thread * 1_000 + 1 + i % 50;
+                history.lent(bookId, "Patron " + thread, i);
+                history.returned(bookId, i + 1);
+            }
+        });
+
+        Assert.assertEquals(8_000, history.getLoans(0, Long.MAX_VALUE).size());
+        Assert.assertEquals(1_000, history.getLoansOfPatron("Patron 3", 0, Long.MAX_VALUE).size());
+        Assert.assertEquals(20, history.getHistoryOfCopy("3008").size());
+    }
+}
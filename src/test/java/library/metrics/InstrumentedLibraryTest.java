@@ -0,0 +1,76 @@
+package library.metrics;
+
+import library.LibraryManager;
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+
+
+public class InstrumentedLibraryTest {
+
+    @Test
+    public void shouldReportPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1000);
+        }
+        Assert.assertEquals(10_000, histogram.getCount());
+        Assert.assertEquals(10_000_000, histogram.getMax());
+        assertClose(5_000_000, histogram.getValueAtPercentile(50));
+        assertClose(9_900_000, histogram.getValueAtPercentile(99));
+        Assert.assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+        for (int i = 0; i < 100_000; i++) {
+            Assert.assertTrue(LatencyHistogram.highestValueOf(LatencyHistogram.indexOf(i * 37L)) >= i * 37L);
+        }
+    }
+
+    @Test
+    public void shouldCountCallsErrorsAndGauges() throws Exception {
+        InstrumentedLibrary library = new InstrumentedLibrary(new LibraryManager());
+        String id = library.addNewBook("Hamlet", "William Shakespeare", 2002);
+        library.addNewBook("Odyseja", "Homer", 2001);
+        library.lendBook(id, "Jan Kowalski");
+        try {
+            library.lendBook(id, "Anna Nowak");
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+        }
+        try {
+            library.getBookById("404");
+            Assert.fail();
+        } catch (BookNotExistException e) {
+        }
+
+        LibraryMetrics metrics = library.getMetrics();
+        Assert.assertEquals(2, metrics.getOperation(Operation.ADD_NEW_BOOK).getLatency().getCount());
+        Assert.assertEquals(2, metrics.getOperation(Operation.LEND_BOOK).getLatency().getCount());
+        Assert.assertEquals(1, metrics.getOperation(Operation.LEND_BOOK).getBookAlreadyLentCount());
+        Assert.assertEquals(1, metrics.getOperation(Operation.GET_BOOK_BY_ID).getBookNotExistCount());
+        Assert.assertEquals(2, metrics.getCatalogSize());
+        Assert.assertEquals(0.5, metrics.getLentRatio(), 0.0);
+
+        metrics.setEnabled(false);
+        library.addNewBook("Dżuma", "Albert Camus", 2007);
+        Assert.assertEquals(2, metrics.getOperation(Operation.ADD_NEW_BOOK).getLatency().getCount());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = metrics.register("test");
+        try {
+            Assert.assertEquals(3L, server.getAttribute(name, "CatalogSize"));
+            CompositeData[] operations = (CompositeData[]) server.getAttribute(name, "Operations");
+            Assert.assertEquals(3, operations.length);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    private static void assertClose(long expected, long actual) {
+        Assert.assertTrue(actual + " is not close to " + expected, Math.abs(actual - expected) <= expected / 64);
+    }
+}
@@ -0,0 +1,142 @@
+package library.persistence;
+
+import library.Library;
+import library.LibraryManager;
+import library.exception.BookAlreadyLentException;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.search.SearchCriteria;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+
+public class WriteAheadLogTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void shouldRestoreLibraryFromLog() throws Exception {
+        WriteAheadLogConfig config = new WriteAheadLogConfig(folder.getRoot().toPath());
+        String hamletId;
+        String odysseyId;
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            hamletId = library.addNewBook("Hamlet", "William Shakespeare", 2002);
+            odysseyId = library.addNewBook("Odyseja", "Homer", 2001);
+            String removedId = library.addNewBook("Dżuma", "Albert Camus", 2007);
+            library.lendBook(hamletId, "Jan Kowalski");
+            library.removeBook(removedId);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            Assert.assertEquals(2, library.getAllBookDetails().size());
+            Assert.assertEquals(new BookDetails("Odyseja", "Homer", 2001), library.getBookById(odysseyId));
+            assertLent(library, hamletId);
+        }
+    }
+
+    @Test
+    public void shouldRestoreLibraryFromSnapshotAndNewerSegments() throws Exception {
+        WriteAheadLogConfig config = new WriteAheadLogConfig(folder.getRoot().toPath());
+        config.setFsyncPolicy(FsyncPolicy.NEVER);
+        config.setSegmentSize(4096);
+        String lentId;
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            library.importBooks(IntStream.range(0, 1000).mapToObj(i -> new BookDetails("Title " + (i % 10), "Author", 2000)));
+            lentId = library.addNewBook("Title 1", "Author", 2000);
+            library.lendBook(lentId, "Jan Kowalski");
+            log.sync();
+            log.compact();
+
+            library.addNewBook("Title 11", "Author", 2000);
+            library.removeBook(library.addNewBook("Title 12", "Author", 2000));
+        }
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            Assert.assertEquals(1, files.filter(p -> p.getFileName().toString().startsWith("snapshot-")).count());
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            Assert.assertEquals(11, library.getAllBookDetails().size());
+            SearchCriteria criteria = new SearchCriteria();
+            criteria.setTitle("Title 1");
+            Assert.assertEquals(101, library.getBookListByCriteria(criteria).size());
+            assertLent(library, lentId);
+        }
+    }
+
+    @Test
+    public void shouldNotGiveOutIdsOfRemovedCopiesAfterCompaction() throws Exception {
+        WriteAheadLogConfig config = new WriteAheadLogConfig(folder.getRoot().toPath());
+        String removedId;
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            library.addNewBook("Hamlet", "William Shakespeare", 2002);
+            library.addNewBook("Anonim", "Nieznany", null);
+            removedId = library.addNewBook("Dżuma", "Albert Camus", 2007);
+            library.removeBook(removedId);
+            log.compact();
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            Assert.assertNotEquals(removedId, library.addNewBook("Odyseja", "Homer", 2001));
+            SearchCriteria criteria = new SearchCriteria();
+            criteria.setTitle("Anonim");
+            Assert.assertEquals(new BookDetails("Anonim", "Nieznany", null), library.getBookListByCriteria(criteria).get(0));
+            try {
+                library.getBookById(removedId);
+                Assert.fail();
+            } catch (BookNotExistException e) {
+                // the id stays unused
+            }
+        }
+    }
+
+    @Test
+    public void shouldSkipTornRecordAtTheEndOfSegment() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        WriteAheadLogConfig config = new WriteAheadLogConfig(directory);
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            library.addNewBook("Hamlet", "William Shakespeare", 2002);
+        }
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(p -> p.getFileName().toString().startsWith("wal-")).sorted().collect(Collectors.toList());
+        }
+        Files.write(segments.get(segments.size() - 1), new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Library library = new LibraryManager(log);
+            Assert.assertEquals(1, library.getAllBookDetails().size());
+            library.addNewBook("Odyseja", "Homer", 2001);
+        }
+        try (WriteAheadLog log = new WriteAheadLog(config)) {
+            Assert.assertEquals(2, new LibraryManager(log).getAllBookDetails().size());
+        }
+    }
+
+    private static void assertLent(Library library, String id) throws BookNotExistException {
+        try {
+            library.lendBook(id, "Anna Kowalska");
+            Assert.fail();
+        } catch (BookAlreadyLentException e) {
+            // restored as lent
+        }
+    }
+}
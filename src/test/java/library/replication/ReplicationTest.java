@@ -0,0 +1,93 @@
+package library.replication;
+
+import library.LibraryManager;
+import library.exception.BookNotExistException;
+import library.model.BookDetails;
+import library.search.SearchCriteria;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+
+public class ReplicationTest {
+
+    @Test
+    public void shouldReplicateSnapshotAndChangesInProcess() throws Exception {
+        LibraryManager leaderLibrary = new LibraryManager();
+        try (ReplicationLeader leader = new ReplicationLeader(leaderLibrary)) {
+            String removedId = leaderLibrary.addNewBook("Dżuma", "Albert Camus", 2007);
+            try (LibraryFollower follower = new LibraryFollower(leader.subscribe())) {
+                assertReplicated(leaderLibrary, leader, follower, removedId);
+            }
+        }
+    }
+
+    @Test
+    public void shouldReplicateOverSocket() throws Exception {
+        LibraryManager leaderLibrary = new LibraryManager();
+        try (ReplicationLeader leader = new ReplicationLeader(leaderLibrary);
+             ReplicationServer server = new ReplicationServer(leader, 0)) {
+            String removedId = leaderLibrary.addNewBook("Dżuma", "Albert Camus", null);
+            try (LibraryFollower follower = new LibraryFollower(new SocketReplicationSource(server.getPort()))) {
+                assertReplicated(leaderLibrary, leader, follower, removedId);
+            }
+        }
+    }
+
+    @Test
+    public void shouldDropFollowerThatFellBehind() throws Exception {
+        LibraryManager leaderLibrary = new LibraryManager();
+        try (ReplicationLeader leader = new ReplicationLeader(leaderLibrary, 10)) {
+            leaderLibrary.addNewBook("Hamlet", "William Shakespeare", 2002);
+            ReplicationSource source = leader.subscribe();
+            Assert.assertNotNull(source.poll(1, TimeUnit.SECONDS).getRecord());
+            for (int i = 0; i < 11; i++) {
+                leaderLibrary.addNewBook("Title " + i, "Author", 2000);
+            }
+            try {
+                source.poll(1, TimeUnit.SECONDS);
+                Assert.fail();
+            } catch (IOException e) {
+            }
+
+            try (LibraryFollower follower = new LibraryFollower(leader.subscribe())) {
+                Assert.assertTrue(follower.awaitSequence(leader.getSequence(), 10, TimeUnit.SECONDS));
+                Assert.assertEquals(12, follower.getAllBookDetails().size());
+            }
+        }
+    }
+
+    private static void assertReplicated(LibraryManager leaderLibrary, ReplicationLeader leader,
+                                         LibraryFollower follower, String removedId) throws Exception {
+        leaderLibrary.importBooks(IntStream.range(0, 100).mapToObj(i -> new BookDetails("Title " + (i % 10), "Author", 2000)));
+        String lentId = leaderLibrary.addNewBook("Hamlet", "William Shakespeare", 2002);
+        leaderLibrary.lendBook(lentId, "Jan Kowalski");
+        leaderLibrary.removeBook(removedId);
+
+        Assert.assertTrue(follower.awaitSequence(leader.getSequence(), 10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, follower.getReplicationLag());
+        // details may get their ids in another order when books are imported in parallel
+        Assert.assertEquals(new HashSet<>(leaderLibrary.getAllBookDetails()), new HashSet<>(follower.getAllBookDetails()));
+        Assert.assertEquals(new BookDetails("Hamlet", "William Shakespeare", 2002), follower.getBookById(lentId));
+        SearchCriteria criteria = new SearchCriteria();
+        criteria.setTitle("Hamlet");
+        criteria.setAvailableOnly(true);
+        Assert.assertTrue(follower.getBookListByCriteria(criteria).isEmpty());
+        criteria.setTitle("Title 1");
+        Assert.assertEquals(10, follower.getBookListByCriteria(criteria).size());
+        try {
+            follower.getBookById(removedId);
+            Assert.fail();
+        } catch (BookNotExistException e) {
+        }
+        try {
+            follower.lendBook(lentId, "Anna Nowak");
+            Assert.fail();
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+}
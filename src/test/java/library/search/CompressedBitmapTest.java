@@ -0,0 +1,55 @@
+package library.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+
+public class CompressedBitmapTest {
+
+    @Test
+    public void shouldBehaveLikeBitSetForSparseAndDenseValues(){
+        Random random = new Random(42);
+        CompressedBitmap bitmap = new CompressedBitmap();
+        BitSet expected = new BitSet();
+        for(int i = 0; i < 200_000; i++){
+            // dense in the first container, sparse in the others
+            int value = i % 2 == 0 ? random.nextInt(65_536) : random.nextInt(10_000_000);
+            bitmap.add(value);
+            expected.set(value);
+        }
+        for(int i = 0; i < 50_000; i++){
+            int value = random.nextInt(65_536);
+            bitmap.remove(value);
+            expected.clear(value);
+        }
+
+        Assert.assertEquals(expected.cardinality(), bitmap.cardinality());
+        Assert.assertArrayEquals(expected.stream().toArray(), bitmap.toArray());
+        Assert.assertArrayEquals(expected.stream().filter(v -> v >= 70_000).limit(10).toArray(),
+                bitmap.stream(70_000).limit(10).toArray());
+    }
+
+    @Test
+    public void shouldIntersectAndMerge(){
+        CompressedBitmap evens = CompressedBitmap.of(IntStream.range(0, 100_000).map(i -> i * 2).toArray());
+        CompressedBitmap threes = CompressedBitmap.of(IntStream.range(0, 100_000).map(i -> i * 3).toArray());
+
+        CompressedBitmap both = evens.copy();
+        both.and(threes);
+        Assert.assertArrayEquals(IntStream.range(0, 33_334).map(i -> i * 6).toArray(), both.toArray());
+
+        CompressedBitmap any = evens.copy();
+        any.or(threes);
+        Assert.assertEquals(100_000 + 100_000 - 33_334, any.cardinality());
+        Assert.assertTrue(any.contains(299_997));
+        Assert.assertFalse(any.contains(299_999));
+
+        any.retainIf(v -> v < 10);
+        Assert.assertEquals(Arrays.toString(new int[]{0, 2, 3, 4, 6, 8, 9}), any.toString());
+    }
+}
@@ -0,0 +1,57 @@
+package library.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.stream.IntStream;
+
+
+public class ConcurrentBitmapTest {
+
+    @Test
+    public void shouldKeepBitsChangedConcurrentlyInOneWord(){
+        ConcurrentBitmap bitmap = new ConcurrentBitmap();
+        // every thread owns the ids with its remainder, so threads share words but not bits
+        int threads = 8;
+        IntStream.range(0, threads).parallel().forEach(thread -> {
+            for(int round = 0; round < 100; round++){
+                for(int id = thread; id < 200_000; id += threads){
+                    bitmap.add(id);
+                }
+                for(int id = thread; id < 200_000; id += threads){
+                    if(id % 3 != 0 || round == 99){
+                        bitmap.remove(id);
+                    }
+                }
+                for(int id = thread; id < 200_000; id += threads){
+                    if(id % 3 == 0){
+                        bitmap.add(id);
+                    }
+                }
+            }
+        });
+        BitSet expected = new BitSet();
+        for(int id = 0; id < 200_000; id += 3){
+            expected.set(id);
+        }
+        Assert.assertEquals(expected.cardinality(), bitmap.cardinality());
+        Assert.assertArrayEquals(expected.stream().toArray(), bitmap.toBitmap().toArray());
+        Assert.assertTrue(bitmap.contains(199_998));
+        Assert.assertFalse(bitmap.contains(199_999));
+        Assert.assertFalse(bitmap.contains(Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void shouldIntersectWithCompressedBitmap(){
+        ConcurrentBitmap bitmap = new ConcurrentBitmap();
+        bitmap.add(3);
+        bitmap.add(70_000);
+        bitmap.add(5_000_000);
+        CompressedBitmap result = CompressedBitmap.of(1, 3, 70_000, 70_001);
+
+        bitmap.and(result);
+
+        Assert.assertArrayEquals(new int[]{3, 70_000}, result.toArray());
+    }
+}
@@ -0,0 +1,54 @@
+package library.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class InvertedIndexTest {
+
+    @Test
+    public void shouldFindWordsIgnoringCaseAndDiacritics(){
+        InvertedIndex index = new InvertedIndex();
+        index.add(1, "Dżuma");
+        index.add(2, "Pan Tadeusz");
+        index.add(3, "Ogniem i mieczem");
+
+        Assert.assertArrayEquals(new int[]{1}, index.search(new TextQuery("DZUMA", MatchMode.TOKENS)));
+        Assert.assertArrayEquals(new int[]{2}, index.search(new TextQuery("tadeusz pan", MatchMode.TOKENS)));
+        Assert.assertArrayEquals(new int[0], index.search(new TextQuery("Tadeusz Mickiewicz", MatchMode.TOKENS)));
+    }
+
+    @Test
+    public void shouldFindWordsByPrefix(){
+        InvertedIndex index = new InvertedIndex();
+        index.add(1, "Stanisław Lem");
+        index.add(2, "Stanisław Wyspiański");
+        index.add(3, "Henryk Sienkiewicz");
+
+        Assert.assertArrayEquals(new int[]{1, 2}, index.search(new TextQuery("stanisl", MatchMode.PREFIX)));
+        Assert.assertArrayEquals(new int[]{2}, index.search(new TextQuery("wysp stan", MatchMode.PREFIX)));
+        Assert.assertArrayEquals(new int[0], index.search(new TextQuery("", MatchMode.PREFIX)));
+    }
+
+    @Test
+    public void shouldForgetRemovedBooks(){
+        InvertedIndex index = new InvertedIndex();
+        index.add(1, "Lalka");
+        index.add(2, "Lalka");
+        index.remove(1, "Lalka");
+
+        Assert.assertArrayEquals(new int[]{2}, index.search(new TextQuery("lalka", MatchMode.TOKENS)));
+
+        index.remove(2, "Lalka");
+        Assert.assertArrayEquals(new int[0], index.search(new TextQuery("la", MatchMode.PREFIX)));
+        Assert.assertEquals(0, index.size());
+    }
+
+    @Test
+    public void shouldMatchWholeFieldIgnoringCase(){
+        Assert.assertTrue(new TextQuery("zolte  ", MatchMode.IGNORE_CASE).matches("Żółte"));
+        Assert.assertFalse(new TextQuery("zolte", MatchMode.IGNORE_CASE).matches("Żółte kwiaty"));
+        Assert.assertTrue(new TextQuery("kwiat", MatchMode.PREFIX).matches("Żółte kwiaty"));
+        Assert.assertFalse(new TextQuery("kwiat", MatchMode.TOKENS).matches("Żółte kwiaty"));
+    }
+}
@@ -0,0 +1,40 @@
+package library.search;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+
+public class ResultCacheTest {
+
+    @Test
+    public void shouldEvictLeastRecentlyUsedEntriesOverMaximumWeight(){
+        ResultCache<String, List<Integer>> cache = new ResultCache<>(5, List::size);
+        cache.get("a", 0, () -> Arrays.asList(1, 2));
+        cache.get("b", 0, () -> Arrays.asList(3, 4));
+        cache.get("a", 0, () -> Collections.emptyList());
+        cache.get("c", 0, () -> Arrays.asList(5, 6));
+
+        Assert.assertEquals(Arrays.asList(1, 2), cache.get("a", 0, () -> Collections.emptyList()));
+        Assert.assertEquals(Collections.emptyList(), cache.get("b", 0, () -> Collections.emptyList()));
+
+        CacheStats stats = cache.getStats();
+        Assert.assertEquals(2, stats.getHitCount());
+        Assert.assertEquals(4, stats.getMissCount());
+        Assert.assertEquals(1, stats.getEvictionCount());
+        Assert.assertEquals(5, stats.getWeight());
+    }
+
+    @Test
+    public void shouldNotReturnEntriesOfOlderVersion(){
+        ResultCache<String, List<Integer>> cache = new ResultCache<>(100, List::size);
+        cache.get("a", 1, () -> Collections.singletonList(1));
+
+        Assert.assertEquals(Collections.singletonList(2), cache.get("a", 2, () -> Collections.singletonList(2)));
+        Assert.assertEquals(1, cache.getStats().getInvalidationCount());
+        Assert.assertEquals(Collections.singletonList(2), cache.get("a", 2, () -> Collections.emptyList()));
+    }
+}